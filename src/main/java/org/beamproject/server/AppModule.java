@@ -22,13 +22,21 @@ import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.SubscriberExceptionContext;
 import com.google.common.eventbus.SubscriberExceptionHandler;
 import com.google.inject.AbstractModule;
+import com.google.inject.Key;
 import com.google.inject.MembersInjector;
+import com.google.inject.PrivateModule;
+import com.google.inject.Provider;
 import com.google.inject.Provides;
 import com.google.inject.Singleton;
 import com.google.inject.TypeLiteral;
 import com.google.inject.matcher.Matchers;
+import com.google.inject.name.Named;
+import com.google.inject.name.Names;
+import com.google.inject.spi.InjectionPoint;
 import com.google.inject.spi.TypeEncounter;
 import com.google.inject.spi.TypeListener;
+import java.io.File;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.util.Properties;
 import static java.util.logging.Level.WARNING;
@@ -44,17 +52,68 @@ import org.beamproject.common.crypto.CryptoPackerPool;
 import org.beamproject.common.crypto.CryptoPackerPoolFactory;
 import org.beamproject.common.util.Executor;
 import org.beamproject.common.util.Files;
-import org.beamproject.server.carrier.HttpConnectionPoolFactory;
+import org.beamproject.server.carrier.CircuitBreaker;
+import org.beamproject.server.carrier.HttpConnectionPool;
 import org.beamproject.server.carrier.HttpServer;
+import org.beamproject.server.carrier.IngestionPipeline;
+import org.beamproject.server.carrier.MessageBatcher;
+import org.beamproject.server.carrier.Outbox;
+import org.beamproject.server.carrier.PartitionedClientCarrier;
+import org.beamproject.server.carrier.PostBodyDecoder;
 import org.beamproject.server.carrier.ServerCarrierImpl;
+import org.beamproject.server.carrier.SharedSubscription;
 import org.beamproject.server.model.ClientCarrierModelImpl;
 import org.beamproject.server.model.MainModel;
 import org.beamproject.server.model.ServerCarrierModelImpl;
+import org.beamproject.server.util.AdmissionController;
 import org.beamproject.server.util.Config;
+import static org.beamproject.server.util.Config.Key.CLIENT_ADMISSION_IN_FLIGHT;
+import static org.beamproject.server.util.Config.Key.CLIENT_ADMISSION_QUEUE_SIZE;
+import static org.beamproject.server.util.Config.Key.CLIENT_ADMISSION_TARGET_LATENCY;
+import static org.beamproject.server.util.Config.Key.CLIENT_BAD_SENDER_BLOCK_TIME;
+import static org.beamproject.server.util.Config.Key.CLIENT_BAD_SENDER_LIMIT;
+import static org.beamproject.server.util.Config.Key.CLIENT_MESSAGE_MAX_SIZE;
+import static org.beamproject.server.util.Config.Key.CLIENT_MESSAGE_MIN_SIZE;
+import static org.beamproject.server.util.Config.Key.CLIENT_PROCESSING_LANES;
+import static org.beamproject.server.util.Config.Key.CRYPTO_PACKER_LANE_AFFINE;
+import static org.beamproject.server.util.Config.Key.CRYPTO_PACKER_POOL_MAX;
+import static org.beamproject.server.util.Config.Key.CRYPTO_PACKER_POOL_MIN_IDLE;
+import static org.beamproject.server.util.Config.Key.CRYPTO_WORKER_THREADS;
+import static org.beamproject.server.util.Config.Key.HANDSHAKE_BURST_PER_PUBLIC_KEY;
+import static org.beamproject.server.util.Config.Key.HANDSHAKE_BURST_PER_USERNAME;
+import static org.beamproject.server.util.Config.Key.HANDSHAKE_RATE_PER_PUBLIC_KEY;
+import static org.beamproject.server.util.Config.Key.HANDSHAKE_RATE_PER_USERNAME;
+import static org.beamproject.server.util.Config.Key.HANDSHAKE_RESPONSE_CACHE_SIZE;
+import static org.beamproject.server.util.Config.Key.HANDSHAKE_RESPONSE_CACHE_TIME;
+import static org.beamproject.server.util.Config.Key.HTTP_BATCH_LINGER;
+import static org.beamproject.server.util.Config.Key.HTTP_BATCH_MAX_MESSAGES;
+import static org.beamproject.server.util.Config.Key.HTTP_CIRCUIT_FAILURE_RATE;
+import static org.beamproject.server.util.Config.Key.HTTP_CIRCUIT_OPEN_TIME;
+import static org.beamproject.server.util.Config.Key.HTTP_CLIENT_IDLE_TIMEOUT;
+import static org.beamproject.server.util.Config.Key.HTTP_CLIENT_MAX_CONNECTIONS;
+import static org.beamproject.server.util.Config.Key.HTTP_CLIENT_MAX_CONNECTIONS_PER_HOST;
+import static org.beamproject.server.util.Config.Key.HTTP_INGESTION_QUEUE_SIZE;
+import static org.beamproject.server.util.Config.Key.HTTP_INGESTION_WORKERS;
+import static org.beamproject.server.util.Config.Key.HTTP_MAX_BODY_SIZE;
+import static org.beamproject.server.util.Config.Key.HTTP_OUTBOX_DIRECTORY;
+import static org.beamproject.server.util.Config.Key.HTTP_OUTBOX_MAX_ATTEMPTS;
+import static org.beamproject.server.util.Config.Key.HTTP_OUTBOX_SEGMENT_SIZE;
+import static org.beamproject.server.util.Config.Key.HTTP_OUTBOX_TIME_TO_LIVE;
+import static org.beamproject.server.util.Config.Key.HTTP_RETRY_INITIAL_BACKOFF;
+import static org.beamproject.server.util.Config.Key.HTTP_RETRY_MAX_BACKOFF;
 import static org.beamproject.server.util.Config.Key.MQTT_HOST;
 import static org.beamproject.server.util.Config.Key.MQTT_PORT;
+import static org.beamproject.server.util.Config.Key.MQTT_SUBSCRIBER_PARTITIONS;
 import static org.beamproject.server.util.Config.Key.MQTT_SUBSCRIBER_TOPIC;
 import static org.beamproject.server.util.Config.Key.MQTT_USERNAME;
+import static org.beamproject.server.util.Config.Key.PARTICIPANT_CACHE_SIZE;
+import org.beamproject.server.util.CryptoExecutor;
+import org.beamproject.server.util.CryptoPackerLanes;
+import org.beamproject.server.util.HandshakeResponseCache;
+import org.beamproject.server.util.InboundFilter;
+import org.beamproject.server.util.LaneExecutor;
+import org.beamproject.server.util.ParticipantCache;
+import org.beamproject.server.util.RateLimiter;
 import org.beamproject.server.view.CommandLineView;
 
 public class AppModule extends AbstractModule {
@@ -67,9 +126,9 @@ public class AppModule extends AbstractModule {
         bind(MainModel.class);
         bind(ClientCarrierModel.class).to(ClientCarrierModelImpl.class);
         bind(ServerCarrierModel.class).to(ServerCarrierModelImpl.class);
-        bind(ClientCarrier.class).to(ClientCarrierImpl.class);
         bind(ServerCarrier.class).to(ServerCarrierImpl.class);
         bind(HttpServer.class);
+        bindClientCarriers();
 
         // Views
         bind(CommandLineView.class);
@@ -81,6 +140,30 @@ public class AppModule extends AbstractModule {
         bindListener(Matchers.any(), new LogTypeListener());
     }
 
+    /**
+     * Binds the {@link ClientCarrier}. With more than one subscriber partition,
+     * every partition gets its own {@link ClientCarrierImpl} and
+     * {@link MqttConnectionPoolFactory} in a {@link PrivateModule}, combined by
+     * the {@link PartitionedClientCarrier}.
+     */
+    private void bindClientCarriers() {
+        int partitionCount = providesConfig().getInt(MQTT_SUBSCRIBER_PARTITIONS, 1);
+
+        if (partitionCount == 1) {
+            bind(MqttConnectionPoolFactory.class)
+                    .toProvider(new MqttConnectionPoolFactoryProvider(-1))
+                    .in(Singleton.class);
+            bind(ClientCarrier.class).to(ClientCarrierImpl.class);
+            return;
+        }
+
+        for (int i = 0; i < partitionCount; i++) {
+            install(new PartitionModule(i));
+        }
+
+        bind(ClientCarrier.class).to(PartitionedClientCarrier.class);
+    }
+
     @Provides
     @Singleton
     EventBus providesEventBus() {
@@ -120,26 +203,197 @@ public class AppModule extends AbstractModule {
 
     @Provides
     @Singleton
-    MqttConnectionPoolFactory providesMqttConnectionPoolFactory() {
-        Config config = providesConfig();
+    @Named(CryptoExecutor.NAME)
+    Executor providesCryptoExecutor(Config config) {
+        return new CryptoExecutor(config.getInt(CRYPTO_WORKER_THREADS, CryptoExecutor.DEFAULT_THREAD_COUNT));
+    }
+
+    @Provides
+    @Singleton
+    LaneExecutor providesLaneExecutor(@Named(CryptoExecutor.NAME) Executor executor, Config config) {
+        return new LaneExecutor(executor, config.getInt(CLIENT_PROCESSING_LANES, LaneExecutor.DEFAULT_LANE_COUNT));
+    }
+
+    @Provides
+    @Singleton
+    AdmissionController providesAdmissionController(LaneExecutor lanes, Config config) {
+        return new AdmissionController(lanes,
+                config.getInt(CLIENT_ADMISSION_QUEUE_SIZE, AdmissionController.DEFAULT_QUEUE_SIZE),
+                config.getInt(CLIENT_ADMISSION_IN_FLIGHT, 2 * lanes.getLaneCount()),
+                config.getInt(CLIENT_ADMISSION_TARGET_LATENCY, AdmissionController.DEFAULT_TARGET_LATENCY_MILLIS));
+    }
 
-        return new MqttConnectionPoolFactory(config.get(MQTT_HOST),
-                Integer.parseInt(config.get(MQTT_PORT)),
-                config.get(MQTT_USERNAME),
-                config.get(MQTT_SUBSCRIBER_TOPIC));
+    @Provides
+    @Singleton
+    InboundFilter providesInboundFilter(Config config) {
+        return new InboundFilter(
+                config.getInt(CLIENT_MESSAGE_MIN_SIZE, InboundFilter.DEFAULT_MIN_SIZE),
+                config.getInt(CLIENT_MESSAGE_MAX_SIZE, InboundFilter.DEFAULT_MAX_SIZE),
+                config.getInt(CLIENT_BAD_SENDER_LIMIT, InboundFilter.DEFAULT_BAD_SENDER_LIMIT),
+                config.getInt(CLIENT_BAD_SENDER_BLOCK_TIME, InboundFilter.DEFAULT_BLOCK_MILLIS));
     }
 
     @Provides
     @Singleton
-    HttpConnectionPoolFactory providesHttpConnectionPoolFactory() {
-        return new HttpConnectionPoolFactory();
+    @Named(RateLimiter.USERNAME)
+    RateLimiter providesUsernameRateLimiter(Config config) {
+        return new RateLimiter(
+                config.getInt(HANDSHAKE_RATE_PER_USERNAME, RateLimiter.DEFAULT_USERNAME_RATE),
+                config.getInt(HANDSHAKE_BURST_PER_USERNAME, RateLimiter.DEFAULT_USERNAME_BURST));
     }
 
     @Provides
     @Singleton
-    CryptoPackerPool providesCryptoPackerPool() {
+    @Named(RateLimiter.PUBLIC_KEY)
+    RateLimiter providesPublicKeyRateLimiter(Config config) {
+        return new RateLimiter(
+                config.getInt(HANDSHAKE_RATE_PER_PUBLIC_KEY, RateLimiter.DEFAULT_PUBLIC_KEY_RATE),
+                config.getInt(HANDSHAKE_BURST_PER_PUBLIC_KEY, RateLimiter.DEFAULT_PUBLIC_KEY_BURST));
+    }
+
+    @Provides
+    @Singleton
+    HandshakeResponseCache providesHandshakeResponseCache(Config config) {
+        return new HandshakeResponseCache(
+                config.getInt(HANDSHAKE_RESPONSE_CACHE_SIZE, HandshakeResponseCache.DEFAULT_SIZE),
+                config.getInt(HANDSHAKE_RESPONSE_CACHE_TIME, HandshakeResponseCache.DEFAULT_EXPIRY_MILLIS));
+    }
+
+    @Provides
+    @Singleton
+    ParticipantCache providesParticipantCache(Config config) {
+        return new ParticipantCache(config.getInt(PARTICIPANT_CACHE_SIZE, ParticipantCache.DEFAULT_SIZE));
+    }
+
+    @Provides
+    @Singleton
+    HttpConnectionPool providesHttpConnectionPool(Config config) {
+        return new HttpConnectionPool(
+                config.getInt(HTTP_CLIENT_MAX_CONNECTIONS_PER_HOST, HttpConnectionPool.DEFAULT_MAX_CONNECTIONS_PER_HOST),
+                config.getInt(HTTP_CLIENT_MAX_CONNECTIONS, HttpConnectionPool.DEFAULT_MAX_CONNECTIONS),
+                config.getInt(HTTP_CLIENT_IDLE_TIMEOUT, HttpConnectionPool.DEFAULT_IDLE_TIMEOUT_MILLIS));
+    }
+
+    @Provides
+    @Singleton
+    IngestionPipeline providesIngestionPipeline(Config config) {
+        return new IngestionPipeline(
+                config.getInt(HTTP_INGESTION_WORKERS, IngestionPipeline.DEFAULT_WORKER_COUNT),
+                config.getInt(HTTP_INGESTION_QUEUE_SIZE, IngestionPipeline.DEFAULT_QUEUE_CAPACITY));
+    }
+
+    @Provides
+    @Singleton
+    PostBodyDecoder providesPostBodyDecoder(Config config) {
+        return new PostBodyDecoder(config.getInt(HTTP_MAX_BODY_SIZE, PostBodyDecoder.DEFAULT_MAX_BODY_SIZE));
+    }
+
+    @Provides
+    @Singleton
+    MessageBatcher providesMessageBatcher(Config config) {
+        return new MessageBatcher(
+                config.getInt(HTTP_BATCH_LINGER, MessageBatcher.DEFAULT_LINGER_MILLIS),
+                config.getInt(HTTP_BATCH_MAX_MESSAGES, MessageBatcher.DEFAULT_MAX_MESSAGES));
+    }
+
+    @Provides
+    @Singleton
+    Outbox providesOutbox(Config config) {
+        File directory = config.contains(HTTP_OUTBOX_DIRECTORY)
+                ? new File(config.get(HTTP_OUTBOX_DIRECTORY))
+                : new File(App.CONFIG_DIRECTORY_PATH, "outbox");
+
+        return new Outbox(directory,
+                config.getInt(HTTP_OUTBOX_SEGMENT_SIZE, Outbox.DEFAULT_SEGMENT_SIZE),
+                config.getInt(HTTP_RETRY_INITIAL_BACKOFF, Outbox.DEFAULT_INITIAL_BACKOFF_MILLIS),
+                config.getInt(HTTP_RETRY_MAX_BACKOFF, Outbox.DEFAULT_MAX_BACKOFF_MILLIS),
+                config.getInt(HTTP_OUTBOX_MAX_ATTEMPTS, Outbox.DEFAULT_MAX_ATTEMPTS),
+                config.getInt(HTTP_OUTBOX_TIME_TO_LIVE, Outbox.DEFAULT_TIME_TO_LIVE_MILLIS));
+    }
+
+    @Provides
+    @Singleton
+    CircuitBreaker providesCircuitBreaker(Config config) {
+        return new CircuitBreaker(
+                config.getInt(HTTP_CLIENT_MAX_CONNECTIONS_PER_HOST, HttpConnectionPool.DEFAULT_MAX_CONNECTIONS_PER_HOST),
+                config.getInt(HTTP_CIRCUIT_FAILURE_RATE, CircuitBreaker.DEFAULT_FAILURE_RATE_PERCENT),
+                config.getInt(HTTP_CIRCUIT_OPEN_TIME, CircuitBreaker.DEFAULT_OPEN_MILLIS));
+    }
+
+    @Provides
+    @Singleton
+    CryptoPackerPool providesCryptoPackerPool(LaneExecutor lanes, Config config) {
+        int maxTotal = config.getInt(CRYPTO_PACKER_POOL_MAX, 2 * lanes.getLaneCount());
         CryptoPackerPoolFactory factory = new CryptoPackerPoolFactory();
-        return new CryptoPackerPool(factory);
+        CryptoPackerPool pool = new CryptoPackerPool(factory);
+        pool.setMaxTotal(maxTotal);
+        pool.setMaxIdle(maxTotal);
+        pool.setMinIdle(Math.min(maxTotal, config.getInt(CRYPTO_PACKER_POOL_MIN_IDLE, lanes.getLaneCount())));
+        return pool;
+    }
+
+    @Provides
+    @Singleton
+    CryptoPackerLanes providesCryptoPackerLanes(CryptoPackerPool pool, LaneExecutor lanes, Config config) {
+        return new CryptoPackerLanes(pool, lanes.getLaneCount(), config.getBoolean(CRYPTO_PACKER_LANE_AFFINE, false));
+    }
+
+    /**
+     * Creates the {@link MqttConnectionPoolFactory} of a subscriber partition
+     * when it is needed, since the configuration may not be complete before
+     * the server has been bootstrapped.
+     */
+    private class MqttConnectionPoolFactoryProvider implements Provider<MqttConnectionPoolFactory> {
+
+        private final int partition;
+
+        /**
+         * @param partition The number of the partition, or a negative number
+         * if the topic is not partitioned.
+         */
+        MqttConnectionPoolFactoryProvider(int partition) {
+            this.partition = partition;
+        }
+
+        @Override
+        public MqttConnectionPoolFactory get() {
+            Config config = providesConfig();
+            String topic = partition < 0
+                    ? config.get(MQTT_SUBSCRIBER_TOPIC)
+                    : PartitionedClientCarrier.toTopic(config.get(MQTT_SUBSCRIBER_TOPIC), partition);
+
+            return new MqttConnectionPoolFactory(config.get(MQTT_HOST),
+                    Integer.parseInt(config.get(MQTT_PORT)),
+                    config.get(MQTT_USERNAME),
+                    SharedSubscription.toConfiguredTopic(topic, config));
+        }
+    }
+
+    /**
+     * Binds the {@link ClientCarrier} of a single subscriber partition with its
+     * own {@link MqttConnectionPoolFactory}.
+     */
+    private class PartitionModule extends PrivateModule {
+
+        private final int partition;
+
+        PartitionModule(int partition) {
+            this.partition = partition;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected void configure() {
+            Key<ClientCarrier> key = Key.get(ClientCarrier.class, Names.named(PartitionedClientCarrier.getName(partition)));
+            Constructor<ClientCarrierImpl> constructor = (Constructor<ClientCarrierImpl>) InjectionPoint
+                    .forConstructorOf(ClientCarrierImpl.class).getMember();
+
+            bind(MqttConnectionPoolFactory.class)
+                    .toProvider(new MqttConnectionPoolFactoryProvider(partition))
+                    .in(Singleton.class);
+            bind(key).toConstructor(constructor).in(Singleton.class);
+            expose(key);
+        }
     }
 
     private class LogTypeListener implements TypeListener {
@@ -36,6 +36,11 @@ public enum Event {
      * successfully generated and stored.
      */
     KEY_PAIR_STORED,
+    /**
+     * This event is sent by the {@link MainModel} when a batch of key pairs
+     * has been generated and stored.
+     */
+    KEY_PAIRS_STORED,
     /**
      * This event is sent by the {@link MainModel} when the {@link Server}
      * configuration was correctly loaded.
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.carrier;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Packs several messages into a single frame, so that they can be sent to
+ * another server with one HTTP request. Every message is prefixed with its
+ * length as 4 byte big-endian integer.
+ *
+ * @see MessageBatcher
+ */
+public class BatchFrame {
+
+    private final static int LENGTH_PREFIX_SIZE = 4;
+
+    private BatchFrame() {
+    }
+
+    /**
+     * Packs the given messages into one frame.
+     *
+     * @param messages The messages to pack.
+     * @return The frame.
+     * @throws IllegalArgumentException If the list or a message is empty.
+     */
+    public static byte[] encode(List<byte[]> messages) {
+        if (messages.isEmpty()) {
+            throw new IllegalArgumentException("A batch needs at least one message.");
+        }
+
+        int frameLength = 0;
+
+        for (byte[] message : messages) {
+            if (message.length == 0) {
+                throw new IllegalArgumentException("A batch may not contain empty messages.");
+            }
+
+            frameLength += LENGTH_PREFIX_SIZE + message.length;
+        }
+
+        ByteBuffer frame = ByteBuffer.allocate(frameLength);
+
+        for (byte[] message : messages) {
+            frame.putInt(message.length);
+            frame.put(message);
+        }
+
+        return frame.array();
+    }
+
+    /**
+     * Unpacks the messages of the given frame.
+     *
+     * @param frame The frame, created by {@link #encode(List)}.
+     * @return The messages, in the same order as they were packed.
+     * @throws IllegalArgumentException If the frame is malformed.
+     */
+    public static List<byte[]> decode(byte[] frame) {
+        List<byte[]> messages = new ArrayList<>();
+
+        for (ByteBuffer slice : slice(ByteBuffer.wrap(frame))) {
+            byte[] message = new byte[slice.remaining()];
+            slice.get(message);
+            messages.add(message);
+        }
+
+        return messages;
+    }
+
+    /**
+     * Splits the given frame into its messages without copying them.
+     *
+     * @param frame The frame, created by {@link #encode(List)}, between the
+     * position and the limit of the buffer. The position is not changed.
+     * @return Read-only views of the messages, in the same order as they were
+     * packed.
+     * @throws IllegalArgumentException If the frame is malformed.
+     */
+    public static List<ByteBuffer> slice(ByteBuffer frame) {
+        ByteBuffer buffer = frame.duplicate();
+        List<ByteBuffer> messages = new ArrayList<>();
+
+        while (buffer.hasRemaining()) {
+            if (buffer.remaining() < LENGTH_PREFIX_SIZE) {
+                throw new IllegalArgumentException("The batch frame is truncated.");
+            }
+
+            int length = buffer.getInt();
+
+            if (length < 1 || length > buffer.remaining()) {
+                throw new IllegalArgumentException("The batch frame contains an invalid length.");
+            }
+
+            ByteBuffer message = buffer.slice();
+            message.limit(length);
+            messages.add(message.asReadOnlyBuffer());
+            buffer.position(buffer.position() + length);
+        }
+
+        if (messages.isEmpty()) {
+            throw new IllegalArgumentException("The batch frame is empty.");
+        }
+
+        return messages;
+    }
+
+}
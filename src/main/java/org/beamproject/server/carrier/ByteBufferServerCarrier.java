@@ -18,27 +18,26 @@
  */
 package org.beamproject.server.carrier;
 
-import static org.junit.Assert.assertNotNull;
-import org.junit.Before;
-import org.junit.Test;
+import java.nio.ByteBuffer;
+import org.beamproject.common.carrier.ServerCarrier;
 
-public class HttpConnectionPoolFactoryTest {
-
-    private HttpConnectionPoolFactory factory;
-
-    @Before
-    public void setUp() {
-        factory = new HttpConnectionPoolFactory();
-    }
-
-    @Test
-    public void testCreate() throws Exception {
-        assertNotNull(factory.create());
-    }
+/**
+ * A {@link ServerCarrier} that can receive messages as {@link ByteBuffer}, so
+ * that they do not have to be copied into a new array on their way from the
+ * HTTP server to the model.
+ *
+ * @see ByteBufferServerCarrierModel
+ */
+public interface ByteBufferServerCarrier extends ServerCarrier {
 
-    @Test
-    public void testWrap() throws Exception {
-        assertNotNull(factory.wrap(factory.create()));
-    }
+    /**
+     * Receives the given message. The buffer is read-only and only valid
+     * during this call; its content has to be copied if it is needed later.
+     *
+     * @param message The received message, between the position and the
+     * limit of the buffer.
+     * @param path The path at which the message was received.
+     */
+    void receive(ByteBuffer message, String path);
 
 }
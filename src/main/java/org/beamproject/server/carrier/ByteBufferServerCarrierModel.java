@@ -18,24 +18,26 @@
  */
 package org.beamproject.server.carrier;
 
-import org.apache.commons.pool2.BasePooledObjectFactory;
-import org.apache.commons.pool2.PooledObject;
-import org.apache.commons.pool2.impl.DefaultPooledObject;
+import java.nio.ByteBuffer;
+import org.beamproject.common.carrier.ServerCarrierModel;
 
 /**
- * This factory class is required by the Apache Commons Pool library. It
- * provides methods to create {@link HttpConnection} objects.
+ * A {@link ServerCarrierModel} that can consume messages as
+ * {@link ByteBuffer}.
+ *
+ * @see ByteBufferServerCarrier
  */
-public class HttpConnectionPoolFactory extends BasePooledObjectFactory<HttpConnection> {
-
-    @Override
-    public HttpConnection create() throws Exception {
-        return new HttpConnection();
-    }
+public interface ByteBufferServerCarrierModel extends ServerCarrierModel {
 
-    @Override
-    public PooledObject<HttpConnection> wrap(HttpConnection obj) {
-        return new DefaultPooledObject<>(obj);
-    }
+    /**
+     * Consumes the given message. The buffer is read-only and only valid
+     * during this call; its content has to be copied if it is needed later,
+     * for example by an asynchronous task.
+     *
+     * @param message The received message, between the position and the
+     * limit of the buffer.
+     * @param path The path at which the message was received.
+     */
+    void consumeMessage(ByteBuffer message, String path);
 
 }
@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.carrier;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks the latency and the error rate of every destination server and
+ * decides how many requests may be in flight to it at the same time.
+ * <p>
+ * The limit per destination follows an additive increase, multiplicative
+ * decrease scheme: every fast response raises it by one per round of
+ * requests, every failure or response much slower than usual halves it. If
+ * the error rate exceeds a threshold, the circuit opens and no requests are
+ * sent to the destination for a while. Afterwards a single probe is allowed;
+ * its outcome closes or reopens the circuit.
+ */
+public class CircuitBreaker {
+
+    public final static int DEFAULT_FAILURE_RATE_PERCENT = 50;
+    public final static int DEFAULT_OPEN_MILLIS = 30000;
+    private final static double SMOOTHING_FACTOR = 0.2;
+    private final static double LATENCY_TOLERANCE = 2.0;
+    private final static long MIN_RETRY_DELAY_MILLIS = 10;
+    private final int maxLimit;
+    private final double failureRateThreshold;
+    private final long openMillis;
+    private final ConcurrentHashMap<String, Destination> destinations = new ConcurrentHashMap<>();
+
+    /**
+     * The states of the circuit of a destination.
+     */
+    public enum State {
+
+        /**
+         * Requests are sent within the concurrency limit.
+         */
+        CLOSED,
+        /**
+         * No requests are sent.
+         */
+        OPEN,
+        /**
+         * A single probe request is sent.
+         */
+        HALF_OPEN
+    }
+
+    /**
+     * Creates a new circuit breaker.
+     *
+     * @param maxLimit The maximum number of concurrent requests to the same
+     * destination.
+     * @param failureRatePercent The error rate in percent at which the circuit
+     * opens.
+     * @param openMillis The time in milliseconds a circuit stays open.
+     * @throws IllegalArgumentException If a parameter is out of range.
+     */
+    public CircuitBreaker(int maxLimit, int failureRatePercent, long openMillis) {
+        if (maxLimit < 1 || failureRatePercent < 1 || failureRatePercent > 100 || openMillis < 1) {
+            throw new IllegalArgumentException("The limit and the open time have to be "
+                    + "positive and the failure rate has to be between 1 and 100.");
+        }
+
+        this.maxLimit = maxLimit;
+        this.failureRateThreshold = failureRatePercent / 100.0;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * Tries to reserve a request to the given destination.
+     *
+     * @param url The destination server.
+     * @return true, if the request may be sent. In this case, its outcome has
+     * to be reported with {@link #onSuccess(String, long)},
+     * {@link #onResponse(String, int, long)} or {@link #onFailure(String)}.
+     */
+    public boolean tryAcquire(String url) {
+        return getDestination(url).tryAcquire();
+    }
+
+    /**
+     * Reports a successful request to the given destination.
+     *
+     * @param url The destination server.
+     * @param latencyMillis The time the request took.
+     */
+    public void onSuccess(String url, long latencyMillis) {
+        getDestination(url).onSuccess(latencyMillis);
+    }
+
+    /**
+     * Reports a request to the given destination that was answered with an
+     * error status. Statuses telling that the destination is overloaded or
+     * failing, like {@code 503}, count as failures. Any other status shows
+     * that the destination works and counts as success.
+     *
+     * @param url The destination server.
+     * @param statusCode The status code of the response.
+     * @param latencyMillis The time the request took.
+     */
+    public void onResponse(String url, int statusCode, long latencyMillis) {
+        if (HttpStatusException.isRetryable(statusCode)) {
+            onFailure(url);
+        } else {
+            onSuccess(url, latencyMillis);
+        }
+    }
+
+    /**
+     * Reports a failed request to the given destination.
+     *
+     * @param url The destination server.
+     */
+    public void onFailure(String url) {
+        getDestination(url).onFailure();
+    }
+
+    /**
+     * Tells after how many milliseconds a request to the given destination,
+     * that was refused by {@link #tryAcquire(String)}, should be tried again.
+     *
+     * @param url The destination server.
+     * @return The delay in milliseconds.
+     */
+    public long getRetryDelay(String url) {
+        return getDestination(url).getRetryDelay();
+    }
+
+    /**
+     * @param url The destination server.
+     * @return The current state of the circuit.
+     */
+    public State getState(String url) {
+        return getDestination(url).getState();
+    }
+
+    /**
+     * @param url The destination server.
+     * @return The current number of concurrent requests allowed.
+     */
+    public int getLimit(String url) {
+        return getDestination(url).getLimit();
+    }
+
+    private Destination getDestination(String url) {
+        Destination destination = destinations.get(url);
+
+        if (destination == null) {
+            Destination candidate = new Destination();
+            destination = destinations.putIfAbsent(url, candidate);
+
+            if (destination == null) {
+                destination = candidate;
+            }
+        }
+
+        return destination;
+    }
+
+    /**
+     * The statistics and the circuit of a single destination server.
+     */
+    private class Destination {
+
+        private State state = State.CLOSED;
+        private double limit = maxLimit;
+        private int inFlightCount;
+        private double failureRate;
+        private double latencyMillis;
+        private long openedAtMillis;
+
+        synchronized boolean tryAcquire() {
+            if (state == State.OPEN) {
+                if (System.currentTimeMillis() - openedAtMillis < openMillis) {
+                    return false;
+                }
+
+                state = State.HALF_OPEN;
+            }
+
+            if (state == State.HALF_OPEN && inFlightCount > 0 || inFlightCount >= getLimit()) {
+                return false;
+            }
+
+            inFlightCount++;
+            return true;
+        }
+
+        synchronized void onSuccess(long latency) {
+            inFlightCount = Math.max(0, inFlightCount - 1);
+            failureRate *= 1 - SMOOTHING_FACTOR;
+
+            if (latencyMillis > 0 && latency > latencyMillis * LATENCY_TOLERANCE) {
+                decreaseLimit();
+            } else {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+
+            latencyMillis = latencyMillis == 0
+                    ? latency
+                    : latencyMillis + SMOOTHING_FACTOR * (latency - latencyMillis);
+
+            if (state == State.HALF_OPEN) {
+                state = State.CLOSED;
+            }
+        }
+
+        synchronized void onFailure() {
+            inFlightCount = Math.max(0, inFlightCount - 1);
+            failureRate += SMOOTHING_FACTOR * (1 - failureRate);
+            decreaseLimit();
+
+            if (state == State.HALF_OPEN || failureRate >= failureRateThreshold) {
+                state = State.OPEN;
+                openedAtMillis = System.currentTimeMillis();
+            }
+        }
+
+        private void decreaseLimit() {
+            limit = Math.max(1, limit / 2);
+        }
+
+        synchronized long getRetryDelay() {
+            if (state == State.OPEN) {
+                return Math.max(MIN_RETRY_DELAY_MILLIS, openedAtMillis + openMillis - System.currentTimeMillis());
+            }
+
+            return Math.max(MIN_RETRY_DELAY_MILLIS, (long) latencyMillis);
+        }
+
+        synchronized State getState() {
+            return state;
+        }
+
+        synchronized int getLimit() {
+            return (int) limit;
+        }
+    }
+
+}
@@ -20,7 +20,6 @@ package org.beamproject.server.carrier;
 
 import org.beamproject.common.Participant;
 import org.beamproject.common.carrier.MessageException;
-import static org.beamproject.common.crypto.EccKeyPairGenerator.fromPublicKey;
 import org.beamproject.common.crypto.Handshake;
 import org.beamproject.common.crypto.HandshakeException;
 import org.beamproject.common.crypto.HandshakeResponder;
@@ -33,36 +32,53 @@ import org.beamproject.common.message.HandshakePublicKeyValidator;
 import org.beamproject.common.message.Message;
 import org.beamproject.common.message.MessageHandler;
 import org.beamproject.server.util.HandshakeStorage;
+import org.beamproject.server.util.ParticipantCache;
+import org.beamproject.server.util.RateLimiter;
 
 /**
  * This {@link MessageHandler} is part of the {@link Handshake} procedure.
  * <p>
  * Handles messages of type: {@link TypeValue#HS_CHALLENGE}
+ * <p>
+ * The challenges of a public key are limited by a {@link RateLimiter}, before
+ * any key agreement is done for them.
  */
 public class HandshakeChallengeHandler extends MessageHandler {
 
     private final HandshakeStorage<HandshakeResponder> handshakeStorage;
+    private final RateLimiter rateLimiter;
+    private final ParticipantCache participants;
     private HandshakeResponder handshake;
     private Participant remoteParticipant;
 
-    public HandshakeChallengeHandler(HandshakeStorage<HandshakeResponder> responders) {
+    public HandshakeChallengeHandler(HandshakeStorage<HandshakeResponder> responders, RateLimiter rateLimiter,
+            ParticipantCache participants) {
         super(new ContentFieldValidator(TYP, NONCE, PUBLIC_KEY),
                 new HandshakeNonceValidator(),
                 new HandshakePublicKeyValidator());
         this.handshakeStorage = responders;
+        this.rateLimiter = rateLimiter;
+        this.participants = participants;
     }
 
     @Override
     protected Message handleValidMessage() {
+        checkRate();
         restoreRemoteParticipant();
         createHandshake();
         return consumeChallengeAndProduceResponse();
     }
 
+    private void checkRate() {
+        if (!rateLimiter.tryAcquire(message.getContent(PUBLIC_KEY))) {
+            throw new MessageException("Too many handshakes of this participant. Ignore message.");
+        }
+    }
+
     private void restoreRemoteParticipant() {
         try {
             byte[] remotePublicKeyBytes = message.getContent(PUBLIC_KEY);
-            remoteParticipant = new Participant(fromPublicKey(remotePublicKeyBytes));
+            remoteParticipant = participants.get(remotePublicKeyBytes);
         } catch (IllegalArgumentException | IllegalStateException ex) {
             throw new MessageException("Could not restore the remote participant's public key: " + ex.getMessage());
         }
@@ -20,7 +20,6 @@ package org.beamproject.server.carrier;
 
 import org.beamproject.common.Participant;
 import org.beamproject.common.carrier.MessageException;
-import static org.beamproject.common.crypto.EccKeyPairGenerator.fromPublicKey;
 import org.beamproject.common.crypto.Handshake;
 import org.beamproject.common.crypto.HandshakeException;
 import org.beamproject.common.crypto.HandshakeResponder;
@@ -33,6 +32,7 @@ import org.beamproject.common.message.HandshakeSignatureValidator;
 import org.beamproject.common.message.Message;
 import org.beamproject.common.message.MessageHandler;
 import org.beamproject.server.util.HandshakeStorage;
+import org.beamproject.server.util.ParticipantCache;
 import org.beamproject.server.util.SessionStorage;
 
 /**
@@ -44,15 +44,18 @@ public class HandshakeSuccessHandler extends MessageHandler {
 
     private final HandshakeStorage<HandshakeResponder> handshakeStorage;
     private final SessionStorage sessionStorage;
+    private final ParticipantCache participants;
     private HandshakeResponder handshake;
     private Participant remoteParticipant;
 
-    public HandshakeSuccessHandler(HandshakeStorage<HandshakeResponder> responders, SessionStorage sessionStorage) {
+    public HandshakeSuccessHandler(HandshakeStorage<HandshakeResponder> responders, SessionStorage sessionStorage,
+            ParticipantCache participants) {
         super(new ContentFieldValidator(TYP, PUBLIC_KEY, SIGNATURE),
                 new HandshakePublicKeyValidator(),
                 new HandshakeSignatureValidator());
         this.handshakeStorage = responders;
         this.sessionStorage = sessionStorage;
+        this.participants = participants;
     }
 
     @Override
@@ -69,7 +72,7 @@ public class HandshakeSuccessHandler extends MessageHandler {
     private void restoreRemoteParticipant() {
         try {
             byte[] remotePublicKeyBytes = message.getContent(PUBLIC_KEY);
-            remoteParticipant = new Participant(fromPublicKey(remotePublicKeyBytes));
+            remoteParticipant = participants.get(remotePublicKeyBytes);
         } catch (IllegalArgumentException | IllegalStateException ex) {
             throw new MessageException("Could not restore the remote participant's public key: " + ex.getMessage());
         }
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.carrier;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Wraps a {@link SSLSocketFactory}, so that every socket it creates verifies
+ * that the certificate of the peer belongs to the host it connects to, like
+ * {@link javax.net.ssl.HttpsURLConnection} does. The host name the socket is
+ * connected to is also sent as server name indication.
+ */
+class HostVerifyingSocketFactory extends SSLSocketFactory {
+
+    private final static String ENDPOINT_IDENTIFICATION_ALGORITHM = "HTTPS";
+    private final SSLSocketFactory factory;
+
+    /**
+     * @param factory The factory creating the sockets.
+     */
+    HostVerifyingSocketFactory(SSLSocketFactory factory) {
+        this.factory = factory;
+    }
+
+    @Override
+    public String[] getDefaultCipherSuites() {
+        return factory.getDefaultCipherSuites();
+    }
+
+    @Override
+    public String[] getSupportedCipherSuites() {
+        return factory.getSupportedCipherSuites();
+    }
+
+    @Override
+    public Socket createSocket() throws IOException {
+        return verifyHost(factory.createSocket());
+    }
+
+    @Override
+    public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException {
+        return verifyHost(factory.createSocket(socket, host, port, autoClose));
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        return verifyHost(factory.createSocket(host, port));
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localAddress, int localPort) throws IOException {
+        return verifyHost(factory.createSocket(host, port, localAddress, localPort));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port) throws IOException {
+        return verifyHost(factory.createSocket(address, port));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+        return verifyHost(factory.createSocket(address, port, localAddress, localPort));
+    }
+
+    private Socket verifyHost(Socket socket) {
+        SSLSocket sslSocket = (SSLSocket) socket;
+        SSLParameters parameters = sslSocket.getSSLParameters();
+        parameters.setEndpointIdentificationAlgorithm(ENDPOINT_IDENTIFICATION_ALGORITHM);
+        sslSocket.setSSLParameters(parameters);
+        return sslSocket;
+    }
+
+}
@@ -19,96 +19,216 @@
 package org.beamproject.server.carrier;
 
 import com.google.inject.Inject;
-import java.io.DataOutputStream;
+import com.google.inject.Singleton;
 import java.io.IOException;
-import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import static java.util.logging.Level.INFO;
 import java.util.logging.Logger;
+import org.apache.http.ConnectionReuseStrategy;
+import org.apache.http.Header;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpException;
+import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.DefaultConnectionReuseStrategy;
+import org.apache.http.impl.pool.BasicPoolEntry;
+import org.apache.http.message.BasicHttpEntityEnclosingRequest;
+import org.apache.http.protocol.HttpCoreContext;
+import org.apache.http.protocol.HttpProcessor;
+import org.apache.http.protocol.HttpProcessorBuilder;
+import org.apache.http.protocol.HttpRequestExecutor;
+import org.apache.http.protocol.RequestConnControl;
+import org.apache.http.protocol.RequestContent;
+import org.apache.http.protocol.RequestTargetHost;
+import org.apache.http.protocol.RequestUserAgent;
+import org.apache.http.util.EntityUtils;
 import org.beamproject.common.carrier.CarrierException;
 import org.beamproject.common.crypto.CryptoPacker;
 import org.beamproject.common.util.Base64;
 
 /**
  * Allows to send byte arrays to recipients via HTTP and encoded using
- * {@link Base64}.
+ * {@link Base64}. The requests are sent over persistent connections, leased
+ * from a {@link HttpConnectionPool}.
+ * <p>
+ * This class is thread-safe.
  */
+@Singleton
 public class HttpConnection {
 
     private final static String USER_AGENT = "Beam";
     private final static String ENCODING = "UTF-8";
-    private final static String POST_KEY = "data";
+    private final static String ROOT_PATH = "/";
+    private final static String HEADER_RETRY_AFTER = "Retry-After";
     @Inject
     Logger log;
-    private HttpURLConnection connection;
-    private URL recipient;
-    private byte[] message;
+    private final HttpConnectionPool pool;
+    private final HttpProcessor processor;
+    private final HttpRequestExecutor requestExecutor;
+    private final ConnectionReuseStrategy reuseStrategy;
+
+    @Inject
+    public HttpConnection(HttpConnectionPool pool) {
+        this.pool = pool;
+        this.processor = HttpProcessorBuilder.create()
+                .add(new RequestContent())
+                .add(new RequestTargetHost())
+                .add(new RequestConnControl())
+                .add(new RequestUserAgent(USER_AGENT))
+                .build();
+        this.requestExecutor = new HttpRequestExecutor();
+        this.reuseStrategy = DefaultConnectionReuseStrategy.INSTANCE;
+    }
 
     /**
      * Sends the given {@code message} to the given {@link URL}. It is expected
      * that the bytes were created with {@link CryptoPacker}. Otherwise, the
      * server might reject the request.<p>
-     * The content is sent as value of the parameter named {@code value}
-     * (therefore it's {@link Base64}ed and then {@link URLEncoder}ed). This is
-     * automatically done, so the argument should be exactly the output
-     * generated by {@link CryptoPacker}.
+     * The content is sent as value of the parameter named
+     * {@link HttpServer#POST_MESSAGE_KEY} (therefore it's {@link Base64}ed and
+     * then {@link URLEncoder}ed). This is automatically done, so the argument
+     * should be exactly the output generated by {@link CryptoPacker}.
+     * <p>
+     * The response is read completely, so that the connection can be reused
+     * for the next message to the same host.
      *
      * @param recipient The {@link URL} of the target server.
      * @param message The data to send.
      * @throws IllegalArgumentException If at least one argument is null or
      * empty (zero length).
      * @throws CarrierException If a problem occurs during sending the message.
+     * @throws HttpStatusException If the server did not accept the message.
      */
     public void post(URL recipient, byte[] message) {
         verifyParameters(recipient, message);
+        send(recipient, HttpServer.POST_MESSAGE_KEY, message);
+    }
+
+    /**
+     * Sends the given messages to the given {@link URL} with a single request.
+     * The messages are packed into a {@link BatchFrame}, which is sent as
+     * value of the parameter named {@link HttpServer#POST_BATCH_KEY}. A single
+     * message is sent the same way as with {@link #post(URL, byte[])}, so that
+     * it is also understood by servers that do not support batches.
+     *
+     * @param recipient The {@link URL} of the target server.
+     * @param messages The data to send.
+     * @throws IllegalArgumentException If at least one argument is null or
+     * empty (zero length).
+     * @throws CarrierException If a problem occurs during sending the messages.
+     * @throws HttpStatusException If the server did not accept the messages.
+     */
+    public void postBatch(URL recipient, List<byte[]> messages) {
+        if (messages == null || messages.isEmpty()) {
+            throw new IllegalArgumentException("The argument may not be null nor"
+                    + " may it be empty.");
+        }
+
+        if (messages.size() == 1) {
+            post(recipient, messages.get(0));
+            return;
+        }
+
+        byte[] frame = BatchFrame.encode(messages);
+        verifyParameters(recipient, frame);
+        send(recipient, HttpServer.POST_BATCH_KEY, frame);
+    }
+
+    private void send(URL recipient, String key, byte[] value) {
+        BasicPoolEntry entry = null;
+        boolean isReusable = false;
 
         try {
-            openConnection();
-            sendRequest();
-            handleResponseCode();
-        } catch (IOException ex) {
+            entry = pool.lease(recipient);
+            HttpCoreContext context = HttpCoreContext.create();
+            HttpResponse response = sendRequest(entry.getConnection(), recipient, encodeBody(key, value), context);
+
+            EntityUtils.consume(response.getEntity());
+            isReusable = reuseStrategy.keepAlive(response, context);
+            handleResponseCode(recipient, response);
+        } catch (IOException | HttpException ex) {
             throw new CarrierException("An error occurred during sending to a "
                     + "HTTP server: " + ex.getMessage());
+        } finally {
+            if (entry != null) {
+                pool.release(entry, isReusable);
+            }
         }
     }
 
     private void verifyParameters(URL recipient, byte[] message) {
-        this.recipient = recipient;
-        this.message = message;
-
         if (recipient == null || message == null || message.length == 0) {
             throw new IllegalArgumentException("The argument may not be null nor"
                     + " may it be empty.");
         }
     }
 
-    private void openConnection() throws IOException {
-        connection = (HttpURLConnection) recipient.openConnection();
-        connection.setRequestMethod("POST");
-        connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
-        connection.setRequestProperty("Content-Length", "" + message.length);
-        connection.setRequestProperty("User-Agent", USER_AGENT);
-        connection.setDoInput(true);
-        connection.setDoOutput(true);
+    private HttpResponse sendRequest(HttpClientConnection connection, URL recipient,
+            byte[] body, HttpCoreContext context) throws IOException, HttpException {
+        BasicHttpEntityEnclosingRequest request = new BasicHttpEntityEnclosingRequest("POST", getPath(recipient));
+        request.setEntity(new ByteArrayEntity(body, ContentType.APPLICATION_FORM_URLENCODED));
+        context.setTargetHost(pool.toHost(recipient));
+
+        requestExecutor.preProcess(request, processor, context);
+        HttpResponse response = requestExecutor.execute(request, connection, context);
+        requestExecutor.postProcess(response, processor, context);
+
+        return response;
     }
 
-    private void sendRequest() throws IOException {
-        try (DataOutputStream requestStream = new DataOutputStream(connection.getOutputStream())) {
-            requestStream.writeBytes(POST_KEY + "=");
-            requestStream.writeBytes(URLEncoder.encode(Base64.encode(message), ENCODING));
-            requestStream.flush();
-        }
+    private String getPath(URL recipient) {
+        return recipient.getFile().isEmpty()
+                ? ROOT_PATH
+                : recipient.getFile();
     }
 
-    private void handleResponseCode() throws IOException {
-        if (connection.getResponseCode() != HttpStatus.SC_NO_CONTENT) {
-            log.log(INFO, "The connection {0} returned the response code {1} "
+    private byte[] encodeBody(String key, byte[] value) throws IOException {
+        String body = key + "=" + URLEncoder.encode(Base64.encode(value), ENCODING);
+        return body.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private void handleResponseCode(URL recipient, HttpResponse response) {
+        int statusCode = response.getStatusLine().getStatusCode();
+
+        if (statusCode < HttpStatus.SC_OK || statusCode >= HttpStatus.SC_MULTIPLE_CHOICES) {
+            throw new HttpStatusException(statusCode, readRetryAfter(response));
+        }
+
+        if (statusCode != HttpStatus.SC_NO_CONTENT) {
+            log.log(INFO, "The server {0} returned the response code {1} "
                     + "instead of 204.",
-                    new Object[]{connection.toString(),
-                        connection.getResponseCode()});
+                    new Object[]{recipient, statusCode});
         }
     }
 
+    /**
+     * Reads the {@code Retry-After} header given in seconds. A date is not
+     * supported and treated like a missing header.
+     */
+    private long readRetryAfter(HttpResponse response) {
+        Header header = response.getFirstHeader(HEADER_RETRY_AFTER);
+
+        if (header == null) {
+            return 0;
+        }
+
+        try {
+            return Math.max(0, Long.parseLong(header.getValue().trim()) * 1000);
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+    /**
+     * Closes all persistent connections.
+     */
+    public void close() {
+        pool.close();
+    }
+
 }
@@ -18,17 +18,185 @@
  */
 package org.beamproject.server.carrier;
 
-import com.google.inject.Inject;
-import org.apache.commons.pool2.impl.GenericObjectPool;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import java.util.concurrent.TimeoutException;
+import javax.net.ssl.SSLSocketFactory;
+import org.apache.http.HttpHost;
+import org.apache.http.config.ConnectionConfig;
+import org.apache.http.config.SocketConfig;
+import org.apache.http.impl.pool.BasicConnFactory;
+import org.apache.http.impl.pool.BasicConnPool;
+import org.apache.http.impl.pool.BasicPoolEntry;
+import org.apache.http.pool.PoolStats;
 
 /**
- * Represents a connection pool of {@link HttpConnection}.
+ * A pool of persistent HTTP/1.1 connections, used by {@link HttpConnection}.
+ * The connections are grouped by destination host, the number of connections
+ * per host and in total is limited and connections that have been idle for
+ * too long are closed in the background. Connections to https hosts verify
+ * the host name of the certificate with the
+ * {@link HostVerifyingSocketFactory}.
  */
-public class HttpConnectionPool extends GenericObjectPool<HttpConnection> {
+public class HttpConnectionPool {
 
-    @Inject
-    public HttpConnectionPool(HttpConnectionPoolFactory factory) {
-        super(factory);
+    public final static int DEFAULT_MAX_CONNECTIONS_PER_HOST = 4;
+    public final static int DEFAULT_MAX_CONNECTIONS = 64;
+    public final static int DEFAULT_IDLE_TIMEOUT_MILLIS = 30000;
+    private final static int CONNECT_TIMEOUT_MILLIS = 10000;
+    private final static int SOCKET_TIMEOUT_MILLIS = 30000;
+    private final static int LEASE_TIMEOUT_MILLIS = 30000;
+    private final static int MIN_EVICTION_INTERVAL_MILLIS = 1000;
+    private final static int VALIDATE_AFTER_INACTIVITY_MILLIS = 2000;
+    private final BasicConnPool pool;
+    private final long idleTimeoutMillis;
+    private final ScheduledExecutorService evictor;
+
+    /**
+     * Creates a new pool and starts evicting idle connections in the
+     * background.
+     *
+     * @param maxConnectionsPerHost The maximum number of connections to the
+     * same host.
+     * @param maxConnections The maximum number of connections in total.
+     * @param idleTimeoutMillis The time in milliseconds after which an unused
+     * connection is closed.
+     * @throws IllegalArgumentException If an argument is not positive.
+     */
+    public HttpConnectionPool(int maxConnectionsPerHost, int maxConnections, long idleTimeoutMillis) {
+        this(maxConnectionsPerHost, maxConnections, idleTimeoutMillis, (SSLSocketFactory) SSLSocketFactory.getDefault());
+    }
+
+    /**
+     * Creates a new pool with the given factory of https connections.
+     *
+     * @param sslSocketFactory The factory of the sockets to https hosts.
+     * @see #HttpConnectionPool(int, int, long)
+     */
+    HttpConnectionPool(int maxConnectionsPerHost, int maxConnections, long idleTimeoutMillis, SSLSocketFactory sslSocketFactory) {
+        if (maxConnectionsPerHost < 1 || maxConnections < 1 || idleTimeoutMillis < 1) {
+            throw new IllegalArgumentException("The limits of the connection pool have to be positive.");
+        }
+
+        SocketConfig socketConfig = SocketConfig.custom()
+                .setSoTimeout(SOCKET_TIMEOUT_MILLIS)
+                .setSoKeepAlive(true)
+                .setTcpNoDelay(true)
+                .build();
+
+        this.pool = new BasicConnPool(new BasicConnFactory(null, new HostVerifyingSocketFactory(sslSocketFactory),
+                CONNECT_TIMEOUT_MILLIS, socketConfig, ConnectionConfig.DEFAULT));
+        this.pool.setDefaultMaxPerRoute(maxConnectionsPerHost);
+        this.pool.setMaxTotal(maxConnections);
+        this.pool.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MILLIS);
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("http-connection-evictor-%d")
+                .setDaemon(true)
+                .build());
+
+        startEviction();
+    }
+
+    private void startEviction() {
+        long interval = Math.max(MIN_EVICTION_INTERVAL_MILLIS, idleTimeoutMillis / 2);
+
+        evictor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                evictIdleConnections();
+            }
+        }, interval, interval, MILLISECONDS);
+    }
+
+    /**
+     * Leases a connection to the host of the given {@link URL}. The connection
+     * is either reused or newly opened, so it is not necessarily connected
+     * yet. It has to be given back with
+     * {@link #release(BasicPoolEntry, boolean)}. Connections that have not
+     * been used for a while are checked for being closed by the remote side
+     * before they are handed out again.
+     *
+     * @param url The destination.
+     * @return The pool entry holding the connection.
+     * @throws IOException If no connection could be leased in time.
+     */
+    BasicPoolEntry lease(URL url) throws IOException {
+        HttpHost host = toHost(url);
+        Future<BasicPoolEntry> future = pool.lease(host, null);
+
+        try {
+            return future.get(LEASE_TIMEOUT_MILLIS, MILLISECONDS);
+        } catch (TimeoutException ex) {
+            future.cancel(true);
+            throw new IOException("Timed out while waiting for a connection to " + host);
+        } catch (InterruptedException ex) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a connection to " + host);
+        } catch (ExecutionException ex) {
+            throw new IOException("Could not lease a connection to " + host + ": " + ex.getMessage());
+        }
+    }
+
+    HttpHost toHost(URL url) {
+        int port = url.getPort() == -1
+                ? url.getDefaultPort()
+                : url.getPort();
+
+        return new HttpHost(url.getHost(), port, url.getProtocol());
+    }
+
+    /**
+     * Gives back a connection leased via {@link #lease(URL)}.
+     *
+     * @param entry The pool entry holding the connection.
+     * @param isReusable true, if the connection may be used for further
+     * requests, false if it has to be closed.
+     */
+    void release(BasicPoolEntry entry, boolean isReusable) {
+        if (!isReusable) {
+            entry.close();
+        }
+
+        pool.release(entry, isReusable);
+    }
+
+    /**
+     * Closes all connections that have been idle for longer than the
+     * configured timeout or have expired.
+     */
+    public void evictIdleConnections() {
+        pool.closeExpired();
+        pool.closeIdle(idleTimeoutMillis, MILLISECONDS);
+    }
+
+    /**
+     * @return The number of leased, available and pending connections over
+     * all hosts.
+     */
+    public PoolStats getStats() {
+        return pool.getTotalStats();
+    }
+
+    /**
+     * Closes all connections and stops the background eviction. The pool
+     * cannot be used afterwards.
+     */
+    public void close() {
+        evictor.shutdownNow();
+
+        try {
+            pool.shutdown();
+        } catch (IOException ex) {
+            // the connections are gone either way
+        }
     }
 
 }
@@ -20,18 +20,21 @@ package org.beamproject.server.carrier;
 
 import com.google.inject.Inject;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
 import java.net.SocketAddress;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import static java.util.logging.Level.WARNING;
+import java.util.logging.Logger;
 import lombok.Setter;
 import org.beamproject.common.carrier.CarrierException;
 import org.beamproject.common.carrier.ServerCarrier;
-import org.beamproject.common.util.Base64;
-import org.beamproject.common.util.Executor;
-import org.beamproject.common.util.Task;
 import org.beamproject.server.util.Config;
-import org.simpleframework.http.Query;
+import static org.beamproject.server.util.Config.Key.HTTP_SELECTOR_THREADS;
+import static org.beamproject.server.util.Config.Key.HTTP_TRANSPORT_THREADS;
+import org.simpleframework.common.buffer.FileAllocator;
 import org.simpleframework.http.Request;
 import org.simpleframework.http.Response;
 import org.simpleframework.http.Status;
@@ -52,23 +55,29 @@ import org.simpleframework.transport.connect.SocketConnection;
 public class HttpServer implements Container {
 
     public final static String POST_MESSAGE_KEY = "MSG";
-    private final static String HEADER_CONTENT_TYPE_KEY = "Content-Type";
-    private final static String HEADER_CONTENT_TYPE_VALUE = "text/plain";
-    private final static String HEADER_SERVER_KEY = "Server";
-    private final static String HEADER_SERVER_VALUE = "Server/1.0";
-    private final static String HEADER_DATE_KEY = "Date";
-    private final static String HEADER_LAST_MODIFIED_KEY = "Last-Modified";
-    private final Executor executor;
+    public final static String POST_BATCH_KEY = "BATCH";
+    private final static String HEADER_RETRY_AFTER_KEY = "Retry-After";
+    private final static String HEADER_RETRY_AFTER_VALUE = "1";
+    private final static long REJECTION_LOG_INTERVAL = 1000;
+    public final static int DEFAULT_TRANSPORT_THREADS = Runtime.getRuntime().availableProcessors();
+    public final static int DEFAULT_SELECTOR_THREADS = Math.max(1, DEFAULT_TRANSPORT_THREADS / 4);
+    @Inject
+    Logger log;
+    private final IngestionPipeline pipeline;
+    private final PostBodyDecoder decoder;
+    private final ResponseTemplate template;
     private final Config config;
     private Server server;
     private SocketAddress address;
     private Connection connection;
     @Setter
-    private ServerCarrier carrier;
+    private ByteBufferServerCarrier carrier;
 
     @Inject
-    public HttpServer(Executor executor, Config config) {
-        this.executor = executor;
+    public HttpServer(IngestionPipeline pipeline, PostBodyDecoder decoder, ResponseTemplate template, Config config) {
+        this.pipeline = pipeline;
+        this.decoder = decoder;
+        this.template = template;
         this.config = config;
     }
 
@@ -76,6 +85,10 @@ public class HttpServer implements Container {
      * Starts the server, therefor makes it listening a the configured port (in
      * the {@link Config} instance, referenced by the key
      * {@link Config.Key.SERVER_PORT}).
+     * <p>
+     * Connections are accepted by a single socket, but their requests are read
+     * by {@link Config.Key#HTTP_SELECTOR_THREADS} selector threads and parsed
+     * by {@link Config.Key#HTTP_TRANSPORT_THREADS} transport threads.
      *
      * @throws IllegalStateException If the {@link ServerCarrier} has not been
      * set.
@@ -87,9 +100,11 @@ public class HttpServer implements Container {
         }
 
         try {
-            server = new ContainerServer(this);
-            connection = new SocketConnection(server);
             address = new InetSocketAddress(getPort());
+            server = new ContainerServer(this, new FileAllocator(),
+                    config.getInt(HTTP_TRANSPORT_THREADS, DEFAULT_TRANSPORT_THREADS),
+                    config.getInt(HTTP_SELECTOR_THREADS, DEFAULT_SELECTOR_THREADS));
+            connection = new SocketConnection(server);
 
             connection.connect(address);
         } catch (IOException ex) {
@@ -111,7 +126,9 @@ public class HttpServer implements Container {
     }
 
     /**
-     * Stops the server.
+     * Stops the server, its {@link IngestionPipeline} and the clock of the
+     * {@link ResponseTemplate}. The requests already queued are still
+     * processed, but the server cannot be started again.
      *
      * @throws IllegalStateException If the server was not running before.
      * @throws CarrierException If the server could not be stopped.
@@ -125,40 +142,109 @@ public class HttpServer implements Container {
             connection.close();
         } catch (IOException ex) {
             throw new CarrierException("Could not disconnect HTTP server: " + ex.getMessage());
+        } finally {
+            pipeline.shutdown();
+            template.shutdown();
         }
     }
 
+    /**
+     * Hands the request over to the {@link IngestionPipeline}. If its queue is
+     * full, the request is answered immediately with
+     * {@code 503 Service Unavailable} and a {@code Retry-After} header instead
+     * of being buffered. Requests announcing a body larger than allowed by the
+     * {@link PostBodyDecoder} are answered with
+     * {@code 413 Request Entity Too Large} without reading the body.
+     *
+     * @param request The received request.
+     * @param response The response to the request.
+     */
     @Override
     public void handle(final Request request, final Response response) {
-        executor.runAsync(new Task() {
+        if (decoder.isTooLarge(request.getContentLength())) {
+            response.setStatus(Status.REQUEST_ENTITY_TOO_LARGE);
+            close(response);
+            return;
+        }
+
+        boolean isAccepted = pipeline.offer(new Runnable() {
             @Override
             public void run() {
-                try {
-                    long date = System.currentTimeMillis();
-
-                    response.setValue(HEADER_CONTENT_TYPE_KEY, HEADER_CONTENT_TYPE_VALUE);
-                    response.setValue(HEADER_SERVER_KEY, HEADER_SERVER_VALUE);
-                    response.setDate(HEADER_DATE_KEY, date);
-                    response.setDate(HEADER_LAST_MODIFIED_KEY, date);
-                    response.setStatus(Status.NO_CONTENT);
-
-                    carrier.receive(readPostData(request), request.getTarget());
-                } catch (Exception ex) {
-                    throw new CarrierException("Could not handle HTTP request: " + ex.getMessage());
-                } finally {
-                    try {
-                        response.close();
-                    } catch (IOException ex) {
-                        throw new CarrierException("Could not close the HTTP request: " + ex.getMessage());
-                    }
-                }
+                process(request, response);
             }
         });
+
+        if (!isAccepted) {
+            rejectOnOverload(response);
+        }
+    }
+
+    private void process(Request request, Response response) {
+        try {
+            PostBodyDecoder.PostField field = readPostData(request);
+            template.applyTo(response);
+
+            receive(field, request.getTarget());
+        } catch (IllegalArgumentException ex) {
+            response.setStatus(Status.BAD_REQUEST);
+            log.log(WARNING, "Received an invalid HTTP request: {0}", ex.getMessage());
+        } catch (Exception ex) {
+            log.log(WARNING, "Could not handle HTTP request: {0}", ex.getMessage());
+        } finally {
+            close(response);
+        }
     }
 
-    private byte[] readPostData(Request request) {
-        Query query = request.getQuery();
-        return Base64.decode(query.get(POST_MESSAGE_KEY));
+    private void rejectOnOverload(Response response) {
+        long rejectedCount = pipeline.getRejectedCount();
+
+        if (rejectedCount % REJECTION_LOG_INTERVAL == 1) {
+            log.log(WARNING, "The ingestion queue is full ({0} of {1} requests "
+                    + "queued), {2} requests rejected so far.",
+                    new Object[]{pipeline.getQueueDepth(),
+                        pipeline.getQueueCapacity(),
+                        rejectedCount});
+        }
+
+        response.setValue(HEADER_RETRY_AFTER_KEY, HEADER_RETRY_AFTER_VALUE);
+        response.setStatus(Status.SERVICE_UNAVAILABLE);
+        close(response);
+    }
+
+    private void close(Response response) {
+        try {
+            response.close();
+        } catch (IOException ex) {
+            log.log(WARNING, "Could not close the HTTP request: {0}", ex.getMessage());
+        }
+    }
+
+    private PostBodyDecoder.PostField readPostData(Request request) throws IOException {
+        try (InputStream body = request.getInputStream()) {
+            return decoder.decode(body, POST_MESSAGE_KEY, POST_BATCH_KEY);
+        }
+    }
+
+    /**
+     * Hands the received messages to the carrier as views of the decoded body,
+     * which stay valid until this thread decodes the next request.
+     */
+    private void receive(PostBodyDecoder.PostField field, String path) {
+        if (POST_BATCH_KEY.equals(field.getName())) {
+            for (ByteBuffer message : BatchFrame.slice(field.getBuffer())) {
+                carrier.receive(message, path);
+            }
+        } else {
+            carrier.receive(field.getBuffer(), path);
+        }
+    }
+
+    /**
+     * @return The {@link IngestionPipeline}, which may be used to read the
+     * current queue depth and the number of rejected requests.
+     */
+    public IngestionPipeline getPipeline() {
+        return pipeline;
     }
 
 }
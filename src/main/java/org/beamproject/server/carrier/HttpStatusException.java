@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.carrier;
+
+import lombok.Getter;
+import org.beamproject.common.carrier.CarrierException;
+
+/**
+ * Thrown by the {@link HttpConnection} if the receiving server answered with a
+ * status code other than {@code 2xx}, so the messages were not accepted.
+ * <p>
+ * Server errors ({@code 5xx}), {@code 408 Request Timeout} and
+ * {@code 429 Too Many Requests} are temporary and the messages should be sent
+ * again, not before the time given by a {@code Retry-After} header. Any other
+ * status means that the receiving server will never accept the messages.
+ */
+public class HttpStatusException extends CarrierException {
+
+    private static final long serialVersionUID = 1L;
+    @Getter
+    private final int statusCode;
+    @Getter
+    private final long retryAfterMillis;
+
+    /**
+     * Creates a new exception.
+     *
+     * @param statusCode The status code of the response.
+     * @param retryAfterMillis The delay in milliseconds requested by a
+     * {@code Retry-After} header, or 0 if there was none.
+     */
+    public HttpStatusException(int statusCode, long retryAfterMillis) {
+        super("The server returned the response code " + statusCode + ".");
+        this.statusCode = statusCode;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * @return true, if the messages may be accepted if they are sent again.
+     */
+    public boolean isRetryable() {
+        return isRetryable(statusCode);
+    }
+
+    /**
+     * @param statusCode The status code of a response.
+     * @return true, if the status means that the receiving server is
+     * temporarily unable to accept messages.
+     */
+    public static boolean isRetryable(int statusCode) {
+        return statusCode >= 500 || statusCode == 408 || statusCode == 429;
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.carrier;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded stage between the {@link HttpServer} and the threads handling the
+ * received requests. Instead of buffering an unlimited amount of work, it
+ * refuses new tasks as soon as its queue is full, so that the caller can
+ * answer right away and the memory usage stays predictable.
+ */
+public class IngestionPipeline {
+
+    public final static int DEFAULT_WORKER_COUNT = Runtime.getRuntime().availableProcessors();
+    public final static int DEFAULT_QUEUE_CAPACITY = 1024;
+    private final static long IDLE_WORKER_TIMEOUT_SECONDS = 60;
+    private final ThreadPoolExecutor workers;
+    private final int queueCapacity;
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * Creates a new pipeline. The workers are started on demand and stop
+     * again when they are idle for a while.
+     *
+     * @param workerCount The number of threads processing the queued tasks.
+     * @param queueCapacity The maximum number of tasks waiting for a worker.
+     * @throws IllegalArgumentException If an argument is not positive.
+     */
+    public IngestionPipeline(int workerCount, int queueCapacity) {
+        if (workerCount < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("The worker count and the queue"
+                    + " capacity have to be positive.");
+        }
+
+        this.queueCapacity = queueCapacity;
+        this.workers = new ThreadPoolExecutor(workerCount, workerCount,
+                IDLE_WORKER_TIMEOUT_SECONDS, SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity),
+                new ThreadFactoryBuilder()
+                .setNameFormat("http-ingestion-%d")
+                .setDaemon(true)
+                .build());
+        this.workers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Hands the given task over to a worker, if there is still space in the
+     * queue.
+     *
+     * @param task The task to run.
+     * @return true, if the task has been accepted, false if the queue is full.
+     */
+    public boolean offer(Runnable task) {
+        try {
+            workers.execute(task);
+            return true;
+        } catch (RejectedExecutionException ex) {
+            rejectedCount.incrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * @return The number of tasks currently waiting for a worker.
+     */
+    public int getQueueDepth() {
+        return workers.getQueue().size();
+    }
+
+    /**
+     * @return The maximum number of tasks that may wait for a worker.
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * @return The number of tasks that have been refused so far.
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * Stops accepting new tasks. Already queued tasks are still processed.
+     */
+    public void shutdown() {
+        workers.shutdown();
+    }
+
+}
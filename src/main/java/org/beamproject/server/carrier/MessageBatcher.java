@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.carrier;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import java.util.concurrent.atomic.AtomicLong;
+import static java.util.logging.Level.WARNING;
+import java.util.logging.Logger;
+import static java.util.logging.Logger.getLogger;
+import lombok.Setter;
+
+/**
+ * Collects messages bound for the same server for a short linger time, so
+ * that they can be sent together in one request. A batch is handed over to the
+ * {@link Sender} as soon as the linger time has passed, it contains the
+ * maximum number of messages or it reaches {@link #MAX_BATCH_BYTES}.
+ * <p>
+ * With a linger time of zero, every message is handed over immediately on its
+ * own.
+ * <p>
+ * A batch that is full is handed over on the thread adding the last message,
+ * so failures of the {@link Sender} reach the caller. A batch whose linger
+ * time has passed is handed over by a timer, which can only log and count
+ * them. After {@link #shutdown()}, messages are handed over immediately.
+ *
+ * @see BatchFrame
+ */
+public class MessageBatcher {
+
+    public final static int DEFAULT_LINGER_MILLIS = 0;
+    public final static int DEFAULT_MAX_MESSAGES = 64;
+    public final static int MAX_BATCH_BYTES = 256 * 1024;
+    private final static Logger log = getLogger(MessageBatcher.class.getName());
+    private final long lingerMillis;
+    private final int maxMessages;
+    private final ConcurrentHashMap<String, Batch> batches = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final AtomicLong failedCount = new AtomicLong();
+    @Setter
+    private Sender sender;
+
+    /**
+     * Receives the batches of a {@link MessageBatcher}.
+     */
+    public interface Sender {
+
+        /**
+         * Sends the given messages to the server of the given URL.
+         *
+         * @param url The target server.
+         * @param messages The messages, at least one.
+         */
+        void send(String url, List<byte[]> messages);
+    }
+
+    /**
+     * Creates a new batcher.
+     *
+     * @param lingerMillis The maximum time in milliseconds a message waits for
+     * further messages to the same server. Zero disables batching.
+     * @param maxMessages The maximum number of messages in a batch.
+     * @throws IllegalArgumentException If {@code lingerMillis} is negative or
+     * {@code maxMessages} is not positive.
+     */
+    public MessageBatcher(long lingerMillis, int maxMessages) {
+        if (lingerMillis < 0 || maxMessages < 1) {
+            throw new IllegalArgumentException("The linger time may not be "
+                    + "negative and the batch size has to be positive.");
+        }
+
+        this.lingerMillis = lingerMillis;
+        this.maxMessages = maxMessages;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("http-batcher-%d")
+                .setDaemon(true)
+                .build());
+    }
+
+    /**
+     * Adds the given message to the batch of the given server.
+     *
+     * @param url The target server.
+     * @param message The message to send.
+     * @throws IllegalStateException If no {@link Sender} has been set.
+     */
+    public void add(String url, byte[] message) {
+        if (sender == null) {
+            throw new IllegalStateException("The Sender has to be set.");
+        }
+
+        if (lingerMillis == 0) {
+            sender.send(url, Collections.singletonList(message));
+            return;
+        }
+
+        List<byte[]> fullBatch = getBatch(url).add(message);
+
+        if (fullBatch != null) {
+            sender.send(url, fullBatch);
+        }
+    }
+
+    private Batch getBatch(String url) {
+        Batch batch = batches.get(url);
+
+        if (batch == null) {
+            Batch candidate = new Batch(url);
+            batch = batches.putIfAbsent(url, candidate);
+
+            if (batch == null) {
+                batch = candidate;
+            }
+        }
+
+        return batch;
+    }
+
+    /**
+     * Hands all pending messages over to the {@link Sender} immediately.
+     */
+    public void flush() {
+        for (Batch batch : batches.values()) {
+            batch.flush();
+        }
+    }
+
+    /**
+     * Flushes all pending messages and stops the linger timer.
+     */
+    public void shutdown() {
+        scheduler.shutdownNow();
+        flush();
+    }
+
+    /**
+     * @return The number of messages the {@link Sender} failed to take over
+     * when they were flushed.
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * The pending messages of a single server.
+     */
+    private class Batch implements Runnable {
+
+        private final String url;
+        private List<byte[]> messages = new ArrayList<>();
+        private int byteCount;
+        private boolean isFlushScheduled;
+
+        Batch(String url) {
+            this.url = url;
+        }
+
+        synchronized List<byte[]> add(byte[] message) {
+            messages.add(message);
+            byteCount += message.length;
+
+            if (messages.size() >= maxMessages || byteCount >= MAX_BATCH_BYTES) {
+                return drain();
+            }
+
+            if (!isFlushScheduled) {
+                try {
+                    scheduler.schedule(this, lingerMillis, MILLISECONDS);
+                    isFlushScheduled = true;
+                } catch (RejectedExecutionException ex) {
+                    return drain();
+                }
+            }
+
+            return null;
+        }
+
+        private List<byte[]> drain() {
+            List<byte[]> drained = messages;
+            messages = new ArrayList<>();
+            byteCount = 0;
+            return drained;
+        }
+
+        @Override
+        public void run() {
+            flush();
+        }
+
+        void flush() {
+            List<byte[]> drained;
+
+            synchronized (this) {
+                isFlushScheduled = false;
+                drained = drain();
+            }
+
+            if (drained.isEmpty()) {
+                return;
+            }
+
+            try {
+                sender.send(url, drained);
+            } catch (RuntimeException ex) {
+                failedCount.addAndGet(drained.size());
+                log.log(WARNING, "Could not send {0} messages to {1}: {2}",
+                        new Object[]{drained.size(), url, ex.getMessage()});
+            }
+        }
+    }
+
+}
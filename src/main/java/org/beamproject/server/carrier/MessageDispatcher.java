@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.carrier;
+
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import java.util.EnumMap;
+import org.beamproject.common.carrier.MessageException;
+import org.beamproject.common.crypto.HandshakeResponder;
+import org.beamproject.common.message.Field.Cnt.Typ;
+import static org.beamproject.common.message.Field.Cnt.Typ.HS_CHALLENGE;
+import static org.beamproject.common.message.Field.Cnt.Typ.HS_SUCCESS;
+import org.beamproject.common.message.Message;
+import org.beamproject.common.message.MessageHandler;
+import org.beamproject.server.util.HandshakeStorage;
+import org.beamproject.server.util.ParticipantCache;
+import org.beamproject.server.util.RateLimiter;
+import org.beamproject.server.util.SessionStorage;
+
+/**
+ * Dispatches incoming {@link Message}s to the {@link MessageHandler}
+ * registered for their type.
+ * <p>
+ * A {@link MessageHandler} keeps the message it handles in its fields, so a
+ * handler instance is created once per thread and reused for all messages of
+ * its type handled on that thread. Its validators are therefore only built
+ * once, instead of for every message.
+ * <p>
+ * The handlers of the handshake are registered by default. Handlers for
+ * further types can be added with {@link #register(Typ, Provider)}.
+ */
+@Singleton
+public class MessageDispatcher {
+
+    private volatile EnumMap<Typ, ThreadLocal<MessageHandler>> handlers = new EnumMap<>(Typ.class);
+
+    @Inject
+    public MessageDispatcher(final HandshakeStorage<HandshakeResponder> handshakeStorage, final SessionStorage sessionStorage,
+            @Named(RateLimiter.PUBLIC_KEY) final RateLimiter rateLimiter, final ParticipantCache participants) {
+        register(HS_CHALLENGE, new Provider<MessageHandler>() {
+            @Override
+            public MessageHandler get() {
+                return new HandshakeChallengeHandler(handshakeStorage, rateLimiter, participants);
+            }
+        });
+        register(HS_SUCCESS, new Provider<MessageHandler>() {
+            @Override
+            public MessageHandler get() {
+                return new HandshakeSuccessHandler(handshakeStorage, sessionStorage, participants);
+            }
+        });
+    }
+
+    /**
+     * Registers the handlers created by the given {@link Provider} for the
+     * messages of the given type. A handler already registered for this type
+     * is replaced.
+     *
+     * @param type The type of the messages to handle.
+     * @param provider Creates a handler for each thread handling messages.
+     */
+    public synchronized void register(Typ type, final Provider<? extends MessageHandler> provider) {
+        EnumMap<Typ, ThreadLocal<MessageHandler>> copy = new EnumMap<>(handlers);
+        copy.put(type, new ThreadLocal<MessageHandler>() {
+            @Override
+            protected MessageHandler initialValue() {
+                return provider.get();
+            }
+        });
+        handlers = copy;
+    }
+
+    /**
+     * @param type The type of the messages.
+     * @return True, if a handler is registered for this type.
+     */
+    public boolean isRegistered(Typ type) {
+        return handlers.containsKey(type);
+    }
+
+    /**
+     * Handles the given message with the handler registered for its type.
+     *
+     * @param message The message to handle.
+     * @return The response of the handler, or null if there is none.
+     * @throws MessageException If the message is invalid or no handler is
+     * registered for its type.
+     */
+    public Message dispatch(Message message) {
+        ThreadLocal<MessageHandler> handler = handlers.get(message.getType());
+
+        if (handler == null) {
+            throw new MessageException("There is no handler for messages of type: " + message.getType());
+        }
+
+        return handler.get().handle(message);
+    }
+
+}
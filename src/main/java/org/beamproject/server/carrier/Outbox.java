@@ -0,0 +1,741 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.carrier;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import lombok.Getter;
+import lombok.Setter;
+import org.beamproject.common.carrier.CarrierException;
+
+/**
+ * Stores outgoing messages until the receiving server has accepted them. The
+ * messages are appended to memory-mapped segment files, so that they survive a
+ * restart of this server. A segment is deleted as soon as all its entries are
+ * acknowledged and a newer segment is in use. If only a few entries of an
+ * older segment are still pending, they are copied to the active segment, so
+ * that they do not keep the whole segment on the disk.
+ * <p>
+ * The directory is not touched before {@link #open()} is called. It is then
+ * locked, so that only a single server process uses it.
+ * <p>
+ * Entries that could not be delivered are handed to the {@link Dispatcher}
+ * again after a backoff time. The backoff is tracked per destination server,
+ * grows exponentially with every failure up to a maximum and is randomized, so
+ * that the retries of several servers do not happen at the same moment. An
+ * entry is given up after a maximum number of attempts or when it is too
+ * old.
+ */
+public class Outbox {
+
+    public final static int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+    public final static int DEFAULT_INITIAL_BACKOFF_MILLIS = 500;
+    public final static int DEFAULT_MAX_BACKOFF_MILLIS = 60000;
+    public final static int DEFAULT_MAX_ATTEMPTS = 1000;
+    public final static int DEFAULT_TIME_TO_LIVE_MILLIS = 24 * 60 * 60 * 1000;
+    private final static String SEGMENT_PREFIX = "segment-";
+    private final static String SEGMENT_SUFFIX = ".outbox";
+    private final static String LOCK_FILE_NAME = "outbox.lock";
+    private final static Charset URL_CHARSET = Charset.forName("UTF-8");
+    private final static byte STATE_PENDING = 1;
+    private final static byte STATE_ACKNOWLEDGED = 2;
+    private final static int HEADER_LENGTH = 4 + 1 + 2 + 8;
+    private final static int COMPACTION_RATIO = 4;
+    private final File directory;
+    private final int segmentSize;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final int maxAttempts;
+    private final long timeToLiveMillis;
+    private final ConcurrentHashMap<String, Destination> destinations = new ConcurrentHashMap<>();
+    private final List<Entry> recoveredEntries = new ArrayList<>();
+    private final List<Segment> segments = new ArrayList<>();
+    private final ScheduledExecutorService scheduler;
+    private FileChannel lockChannel;
+    private FileLock lock;
+    private boolean isOpen;
+    private Segment activeSegment;
+    private int nextSegmentIndex;
+    @Getter
+    private int pendingCount;
+    @Setter
+    private Dispatcher dispatcher;
+
+    /**
+     * Delivers the entries of an {@link Outbox}.
+     */
+    public interface Dispatcher {
+
+        /**
+         * Sends the given entry to its destination. The delivery has to be
+         * reported with {@link Outbox#acknowledge(Entry)},
+         * {@link Outbox#retry(Entry)} or
+         * {@link Outbox#discard(Entry, String)}.
+         *
+         * @param entry The entry to send.
+         */
+        void dispatch(Entry entry);
+
+        /**
+         * Is called when an entry has been removed without being delivered.
+         *
+         * @param entry The removed entry.
+         * @param reason Why the entry was removed.
+         */
+        void discarded(Entry entry, String reason);
+    }
+
+    /**
+     * Creates a new outbox in the given directory. It has to be opened with
+     * {@link #open()} before it is used.
+     *
+     * @param directory The directory holding the segment files. It is created
+     * when the outbox is opened, if necessary.
+     * @param segmentSize The size in bytes of a segment file.
+     * @param initialBackoffMillis The backoff after the first failure.
+     * @param maxBackoffMillis The maximum backoff.
+     * @throws IllegalArgumentException If a parameter is not positive.
+     */
+    public Outbox(File directory, int segmentSize, long initialBackoffMillis, long maxBackoffMillis) {
+        this(directory, segmentSize, initialBackoffMillis, maxBackoffMillis,
+                DEFAULT_MAX_ATTEMPTS, DEFAULT_TIME_TO_LIVE_MILLIS);
+    }
+
+    /**
+     * Creates a new outbox in the given directory. It has to be opened with
+     * {@link #open()} before it is used.
+     *
+     * @param directory The directory holding the segment files. It is created
+     * when the outbox is opened, if necessary.
+     * @param segmentSize The size in bytes of a segment file.
+     * @param initialBackoffMillis The backoff after the first failure.
+     * @param maxBackoffMillis The maximum backoff.
+     * @param maxAttempts The number of failed attempts after which an entry is
+     * discarded.
+     * @param timeToLiveMillis The age after which an entry that could not be
+     * delivered is discarded.
+     * @throws IllegalArgumentException If a parameter is not positive.
+     */
+    public Outbox(File directory, int segmentSize, long initialBackoffMillis, long maxBackoffMillis,
+            int maxAttempts, long timeToLiveMillis) {
+        if (segmentSize < HEADER_LENGTH || initialBackoffMillis < 1 || maxBackoffMillis < initialBackoffMillis
+                || maxAttempts < 1 || timeToLiveMillis < 1) {
+            throw new IllegalArgumentException("The segment size, the backoff times, the attempts "
+                    + "and the time to live have to be positive.");
+        }
+
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.maxAttempts = maxAttempts;
+        this.timeToLiveMillis = timeToLiveMillis;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("http-outbox-%d")
+                .setDaemon(true)
+                .build());
+    }
+
+    /**
+     * Creates and locks the directory and recovers the entries left over by a
+     * previous run. They can be sent again with {@link #redeliverPending()}.
+     * Calling this on an open outbox has no effect.
+     *
+     * @throws IllegalStateException If the directory or its segments could
+     * not be accessed, or if the directory is used by another process.
+     */
+    public synchronized void open() {
+        if (isOpen) {
+            return;
+        }
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalStateException("The outbox directory " + directory + " could not be created.");
+        }
+
+        lockDirectory();
+
+        try {
+            recoverSegments();
+        } catch (IllegalStateException ex) {
+            closeLockChannel();
+            throw ex;
+        }
+
+        isOpen = true;
+    }
+
+    private void lockDirectory() {
+        try {
+            lockChannel = new RandomAccessFile(new File(directory, LOCK_FILE_NAME), "rw").getChannel();
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException ex) {
+            lock = null;
+        } catch (IOException ex) {
+            throw new IllegalStateException("The outbox directory " + directory + " could not be locked: " + ex.getMessage());
+        }
+
+        if (lock == null) {
+            closeLockChannel();
+            throw new IllegalStateException("The outbox directory " + directory + " is used by another process.");
+        }
+    }
+
+    private void closeLockChannel() {
+        try {
+            lockChannel.close();
+        } catch (IOException ex) {
+            // The lock is released when the process ends.
+        }
+    }
+
+    private void recoverSegments() {
+        File[] files = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return readSegmentIndex(file) >= 0;
+            }
+        });
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File file1, File file2) {
+                return Integer.compare(readSegmentIndex(file1), readSegmentIndex(file2));
+            }
+        });
+
+        for (File file : files) {
+            Segment segment = openSegment(readSegmentIndex(file), file, (int) file.length());
+            recoverEntries(segment);
+            nextSegmentIndex = segment.index + 1;
+
+            if (segment.pendingCount == 0) {
+                deleteSegment(segment);
+            }
+        }
+
+        for (Segment segment : new ArrayList<>(segments)) {
+            if (isCompactable(segment)) {
+                compact(segment);
+            }
+        }
+    }
+
+    private static int readSegmentIndex(File file) {
+        String name = file.getName();
+
+        if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+            return -1;
+        }
+
+        try {
+            return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    private void recoverEntries(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        int offset = 0;
+
+        while (offset + HEADER_LENGTH <= buffer.capacity()) {
+            int length = buffer.getInt(offset);
+            byte state = buffer.get(offset + 4);
+
+            if (length < HEADER_LENGTH - 4 || length > buffer.capacity() - offset - 4
+                    || (state != STATE_PENDING && state != STATE_ACKNOWLEDGED)) {
+                break;
+            }
+
+            if (state == STATE_PENDING) {
+                int urlLength = buffer.getShort(offset + 5);
+
+                if (urlLength < 0 || urlLength > length - (HEADER_LENGTH - 4)) {
+                    break;
+                }
+
+                byte[] url = new byte[urlLength];
+                buffer.position(offset + HEADER_LENGTH);
+                buffer.get(url);
+                Entry entry = new Entry(segment, offset, new String(url, URL_CHARSET), buffer.getLong(offset + 7));
+                recoveredEntries.add(entry);
+                segment.add(entry, 4 + length);
+                pendingCount++;
+            }
+
+            offset += 4 + length;
+        }
+
+        segment.writePosition = offset;
+    }
+
+    /**
+     * Stores the given messages and hands them to the {@link Dispatcher}. If
+     * the destination is currently backing off, they are dispatched when the
+     * backoff has passed.
+     *
+     * @param url The destination server.
+     * @param messages The messages to send, at least one.
+     * @return The stored entry.
+     * @throws IllegalStateException If no {@link Dispatcher} has been set or
+     * if the outbox is not open.
+     * @throws CarrierException If the entry could not be stored.
+     */
+    public Entry append(String url, List<byte[]> messages) {
+        if (dispatcher == null) {
+            throw new IllegalStateException("The Dispatcher has to be set.");
+        }
+
+        Entry entry = write(url, BatchFrame.encode(messages));
+        long delayMillis = getDestination(url).getRemainingBackoff();
+
+        if (delayMillis > 0) {
+            schedule(entry, delayMillis);
+        } else {
+            dispatcher.dispatch(entry);
+        }
+
+        return entry;
+    }
+
+    private synchronized Entry write(String url, byte[] frame) {
+        if (!isOpen) {
+            throw new IllegalStateException("The outbox is not open.");
+        }
+
+        byte[] urlBytes = url.getBytes(URL_CHARSET);
+
+        if (urlBytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("The URL is too long.");
+        }
+
+        int length = HEADER_LENGTH - 4 + urlBytes.length + frame.length;
+        Segment segment = getWritableSegment(4 + length);
+        MappedByteBuffer buffer = segment.buffer;
+        int offset = segment.writePosition;
+        long createdMillis = System.currentTimeMillis();
+
+        buffer.position(offset + 4);
+        buffer.put(STATE_PENDING);
+        buffer.putShort((short) urlBytes.length);
+        buffer.putLong(createdMillis);
+        buffer.put(urlBytes);
+        buffer.put(frame);
+        buffer.putInt(offset, length);
+
+        Entry entry = new Entry(segment, offset, url, createdMillis);
+        segment.writePosition += 4 + length;
+        segment.add(entry, 4 + length);
+        pendingCount++;
+
+        return entry;
+    }
+
+    private Segment getWritableSegment(int recordLength) {
+        if (activeSegment != null && activeSegment.writePosition + recordLength <= activeSegment.buffer.capacity()) {
+            return activeSegment;
+        }
+
+        Segment previousSegment = activeSegment;
+        int index = nextSegmentIndex++;
+        File file = new File(directory, SEGMENT_PREFIX + index + SEGMENT_SUFFIX);
+        activeSegment = openSegment(index, file, Math.max(segmentSize, recordLength));
+
+        if (previousSegment != null) {
+            previousSegment.buffer.force();
+
+            if (previousSegment.pendingCount == 0) {
+                deleteSegment(previousSegment);
+            } else if (isCompactable(previousSegment)) {
+                compact(previousSegment);
+            }
+        }
+
+        return activeSegment;
+    }
+
+    private boolean isCompactable(Segment segment) {
+        return segment != activeSegment && !segment.isDeleted
+                && segment.pendingBytes * COMPACTION_RATIO <= segment.writePosition;
+    }
+
+    /**
+     * Copies the pending entries of the given segment to the active segment
+     * and deletes it. If the process ends before the segment is deleted, the
+     * copied entries are sent twice after the next start.
+     */
+    private void compact(Segment segment) {
+        for (Entry entry : new ArrayList<>(segment.entries)) {
+            int recordLength = 4 + segment.buffer.getInt(entry.offset);
+            byte[] record = new byte[recordLength - 4];
+            segment.buffer.position(entry.offset + 4);
+            segment.buffer.get(record);
+
+            Segment target = getWritableSegment(recordLength);
+            int offset = target.writePosition;
+            target.buffer.position(offset + 4);
+            target.buffer.put(record);
+            target.buffer.putInt(offset, recordLength - 4);
+            target.writePosition += recordLength;
+
+            segment.remove(entry, recordLength);
+            entry.segment = target;
+            entry.offset = offset;
+            target.add(entry, recordLength);
+        }
+
+        activeSegment.buffer.force();
+        deleteSegment(segment);
+    }
+
+    private Segment openSegment(int index, File file, int size) {
+        Segment segment = new Segment(index, file, size);
+        segments.add(segment);
+        return segment;
+    }
+
+    private void deleteSegment(Segment segment) {
+        segments.remove(segment);
+        segment.delete();
+    }
+
+    /**
+     * Reads the messages of the given entry.
+     *
+     * @param entry The entry to read.
+     * @return The stored messages.
+     * @throws IllegalArgumentException If the entry is corrupt and can never
+     * be read.
+     */
+    public synchronized List<byte[]> read(Entry entry) {
+        MappedByteBuffer buffer = entry.segment.buffer;
+        int length = buffer.getInt(entry.offset);
+        int urlLength = buffer.getShort(entry.offset + 5);
+        int frameLength = length - (HEADER_LENGTH - 4) - urlLength;
+
+        if (urlLength < 0 || frameLength < 1 || length > buffer.capacity() - entry.offset - 4) {
+            throw new IllegalArgumentException("The outbox entry is corrupt.");
+        }
+
+        byte[] frame = new byte[frameLength];
+
+        buffer.position(entry.offset + HEADER_LENGTH + urlLength);
+        buffer.get(frame);
+
+        return BatchFrame.decode(frame);
+    }
+
+    /**
+     * Marks the given entry as delivered, so that it is not sent again, and
+     * resets the backoff of its destination.
+     *
+     * @param entry The delivered entry.
+     */
+    public void acknowledge(Entry entry) {
+        getDestination(entry.url).recordSuccess();
+        remove(entry);
+    }
+
+    private synchronized void remove(Entry entry) {
+        Segment segment = entry.segment;
+
+        if (segment.isDeleted || segment.buffer.get(entry.offset + 4) != STATE_PENDING) {
+            return;
+        }
+
+        segment.buffer.put(entry.offset + 4, STATE_ACKNOWLEDGED);
+        segment.remove(entry, 4 + segment.buffer.getInt(entry.offset));
+        pendingCount--;
+
+        if (segment.pendingCount == 0 && segment != activeSegment) {
+            deleteSegment(segment);
+        } else if (isCompactable(segment)) {
+            compact(segment);
+        }
+    }
+
+    /**
+     * Schedules the given entry to be dispatched again after the backoff of
+     * its destination.
+     *
+     * @param entry The entry that could not be delivered.
+     */
+    public void retry(Entry entry) {
+        retry(entry, 0);
+    }
+
+    /**
+     * Schedules the given entry to be dispatched again after the backoff of
+     * its destination, but not before the given delay. If the entry has
+     * reached the maximum number of attempts or its time to live, it is
+     * discarded instead.
+     *
+     * @param entry The entry that could not be delivered.
+     * @param minDelayMillis The minimal delay in milliseconds, as requested by
+     * the receiving server.
+     */
+    public void retry(Entry entry, long minDelayMillis) {
+        long delayMillis = Math.max(minDelayMillis, getDestination(entry.url).recordFailure());
+        int attemptCount = entry.recordAttempt();
+
+        if (attemptCount >= maxAttempts) {
+            discard(entry, "It could not be delivered in " + attemptCount + " attempts.");
+        } else if (System.currentTimeMillis() + delayMillis - entry.createdMillis > timeToLiveMillis) {
+            discard(entry, "It could not be delivered within " + timeToLiveMillis + " ms.");
+        } else {
+            schedule(entry, delayMillis);
+        }
+    }
+
+    /**
+     * Removes the given entry without delivering it, since it will never be
+     * accepted. The {@link Dispatcher} is informed about it.
+     *
+     * @param entry The entry to remove.
+     * @param reason Why the entry is removed.
+     */
+    public void discard(Entry entry, String reason) {
+        remove(entry);
+        dispatcher.discarded(entry, reason);
+    }
+
+    /**
+     * Schedules the given entry to be dispatched again after the given delay,
+     * without changing the backoff of its destination.
+     *
+     * @param entry The entry that was not sent.
+     * @param delayMillis The delay in milliseconds.
+     */
+    public void postpone(Entry entry, long delayMillis) {
+        schedule(entry, delayMillis);
+    }
+
+    private void schedule(final Entry entry, long delayMillis) {
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                dispatcher.dispatch(entry);
+            }
+        }, delayMillis, MILLISECONDS);
+    }
+
+    /**
+     * Hands all entries recovered from a previous run to the
+     * {@link Dispatcher}.
+     *
+     * @throws IllegalStateException If no {@link Dispatcher} has been set.
+     */
+    public void redeliverPending() {
+        if (dispatcher == null) {
+            throw new IllegalStateException("The Dispatcher has to be set.");
+        }
+
+        List<Entry> entries;
+
+        synchronized (this) {
+            entries = new ArrayList<>(recoveredEntries);
+            recoveredEntries.clear();
+        }
+
+        for (Entry entry : entries) {
+            dispatcher.dispatch(entry);
+        }
+    }
+
+    private Destination getDestination(String url) {
+        Destination destination = destinations.get(url);
+
+        if (destination == null) {
+            Destination candidate = new Destination();
+            destination = destinations.putIfAbsent(url, candidate);
+
+            if (destination == null) {
+                destination = candidate;
+            }
+        }
+
+        return destination;
+    }
+
+    /**
+     * Stops the retries, writes all segments to the disk and releases the
+     * directory. Pending entries are sent again after the next start.
+     */
+    public synchronized void shutdown() {
+        scheduler.shutdownNow();
+
+        if (!isOpen) {
+            return;
+        }
+
+        isOpen = false;
+
+        for (Segment segment : segments) {
+            segment.buffer.force();
+            segment.close();
+        }
+
+        segments.clear();
+        activeSegment = null;
+
+        try {
+            lock.release();
+        } catch (IOException ex) {
+            // Closing the channel releases the lock as well.
+        }
+
+        closeLockChannel();
+    }
+
+    /**
+     * A stored set of messages for a single destination.
+     */
+    public static class Entry {
+
+        private Segment segment;
+        private int offset;
+        @Getter
+        private final String url;
+        private final long createdMillis;
+        private int attemptCount;
+
+        private Entry(Segment segment, int offset, String url, long createdMillis) {
+            this.segment = segment;
+            this.offset = offset;
+            this.url = url;
+            this.createdMillis = createdMillis;
+        }
+
+        private synchronized int recordAttempt() {
+            return ++attemptCount;
+        }
+    }
+
+    /**
+     * A memory-mapped segment file.
+     */
+    private static class Segment {
+
+        private final int index;
+        private final File file;
+        private final RandomAccessFile randomAccessFile;
+        private final MappedByteBuffer buffer;
+        private final Set<Entry> entries = new HashSet<>();
+        private int writePosition;
+        private int pendingCount;
+        private int pendingBytes;
+        private boolean isDeleted;
+
+        Segment(int index, File file, int size) {
+            this.index = index;
+            this.file = file;
+
+            try {
+                randomAccessFile = new RandomAccessFile(file, "rw");
+                buffer = randomAccessFile.getChannel().map(READ_WRITE, 0, size);
+            } catch (IOException ex) {
+                throw new IllegalStateException("The outbox segment " + file + " could not be mapped: " + ex.getMessage());
+            }
+        }
+
+        void add(Entry entry, int recordLength) {
+            entries.add(entry);
+            pendingCount++;
+            pendingBytes += recordLength;
+        }
+
+        void remove(Entry entry, int recordLength) {
+            entries.remove(entry);
+            pendingCount--;
+            pendingBytes -= recordLength;
+        }
+
+        void close() {
+            try {
+                randomAccessFile.close();
+            } catch (IOException ex) {
+                // The mapping stays valid until the buffer is collected.
+            }
+        }
+
+        void delete() {
+            isDeleted = true;
+            close();
+            file.delete();
+        }
+    }
+
+    /**
+     * The backoff state of a single destination server.
+     */
+    private class Destination {
+
+        private int failureCount;
+        private long nextAttemptMillis;
+
+        synchronized long getRemainingBackoff() {
+            return Math.max(0, nextAttemptMillis - System.currentTimeMillis());
+        }
+
+        synchronized void recordSuccess() {
+            failureCount = 0;
+            nextAttemptMillis = 0;
+        }
+
+        /**
+         * Failures of entries that were sent during the same backoff period
+         * count only once, so that many pending entries do not inflate the
+         * backoff of a single outage.
+         */
+        synchronized long recordFailure() {
+            long now = System.currentTimeMillis();
+
+            if (now >= nextAttemptMillis) {
+                failureCount = Math.min(failureCount + 1, 31);
+                long backoff = Math.min(maxBackoffMillis, initialBackoffMillis << (failureCount - 1));
+                long halfBackoff = Math.max(1, backoff / 2);
+                nextAttemptMillis = now + halfBackoff + ThreadLocalRandom.current().nextLong(halfBackoff);
+            }
+
+            return nextAttemptMillis - now;
+        }
+    }
+
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.carrier;
+
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.Singleton;
+import com.google.inject.name.Names;
+import org.beamproject.common.carrier.ClientCarrier;
+import org.beamproject.server.util.Config;
+import static org.beamproject.server.util.Config.Key.MQTT_SUBSCRIBER_PARTITIONS;
+import org.beamproject.server.util.LaneExecutor;
+
+/**
+ * Combines several {@link ClientCarrier}s, each with its own MQTT connection
+ * subscribed to one partition of the inbound topics. The topic of a partition
+ * is built from a template containing {@link #PARTITION_PLACEHOLDER}, so that
+ * clients publish to the partition given by {@link #partitionOf(String, int)}
+ * of their username.
+ * <p>
+ * Since the partition of a client is computed like its processing lane, each
+ * connection feeds its own set of lanes if the number of lanes is a multiple
+ * of the number of partitions.
+ * <p>
+ * The partition carriers are bound with the names built by
+ * {@link #getName(int)} and looked up when they are used for the first time,
+ * since they depend on the model, which depends on this carrier.
+ */
+@Singleton
+public class PartitionedClientCarrier implements ClientCarrier {
+
+    public final static String PARTITION_PLACEHOLDER = "{partition}";
+    private final static String NAME_PREFIX = "mqtt-partition-";
+    private final Injector injector;
+    private final int partitionCount;
+    private volatile ClientCarrier[] carriers;
+
+    @Inject
+    public PartitionedClientCarrier(Injector injector, Config config) {
+        this.injector = injector;
+        this.partitionCount = config.getInt(MQTT_SUBSCRIBER_PARTITIONS, 1);
+    }
+
+    /**
+     * Builds the topic of the given partition.
+     *
+     * @param topicTemplate The topic containing {@link #PARTITION_PLACEHOLDER}.
+     * @param partition The number of the partition.
+     * @return The topic of the partition.
+     * @throws IllegalStateException If the template lacks the placeholder.
+     */
+    public static String toTopic(String topicTemplate, int partition) {
+        if (topicTemplate == null || !topicTemplate.contains(PARTITION_PLACEHOLDER)) {
+            throw new IllegalStateException("The subscriber topic has to contain "
+                    + PARTITION_PLACEHOLDER + " to be partitioned: " + topicTemplate);
+        }
+
+        return topicTemplate.replace(PARTITION_PLACEHOLDER, Integer.toString(partition));
+    }
+
+    /**
+     * Tells to which partition the given client publishes. This is the
+     * partition function clients have to implement to find their topic:
+     * <ol>
+     * <li>The username is hashed over its UTF-16 code units
+     * {@code c[0..n-1]} to the signed 32-bit integer
+     * {@code h = c[0] * 31^(n-1) + ... + c[n-1]}, with two's complement
+     * overflow, like {@link String#hashCode()}.</li>
+     * <li>The upper half is mixed into the lower half:
+     * {@code h = h ^ (h >>> 16)}, with an unsigned shift.</li>
+     * <li>The partition is {@code (h & 0x7fffffff) % partitionCount}.</li>
+     * </ol>
+     * For example, {@code spock} publishes to partition 3 of 4 and to
+     * partition 5 of 7. The lanes of the {@link LaneExecutor} are computed the
+     * same way.
+     *
+     * @param username The username of the client, {@code null} is in
+     * partition 0.
+     * @param partitionCount The number of partitions.
+     * @return The number of the partition, between 0 and
+     * {@code partitionCount - 1}.
+     * @throws IllegalArgumentException If the number of partitions is not
+     * positive.
+     */
+    public static int partitionOf(String username, int partitionCount) {
+        if (partitionCount < 1) {
+            throw new IllegalArgumentException("The number of partitions has to be positive.");
+        }
+
+        if (username == null) {
+            return 0;
+        }
+
+        int hash = 0;
+
+        for (int i = 0; i < username.length(); i++) {
+            hash = 31 * hash + username.charAt(i);
+        }
+
+        hash ^= hash >>> 16;
+        return (hash & Integer.MAX_VALUE) % partitionCount;
+    }
+
+    /**
+     * @param partition The number of the partition.
+     * @return The name with which the carrier of the given partition is bound.
+     */
+    public static String getName(int partition) {
+        return NAME_PREFIX + partition;
+    }
+
+    private ClientCarrier[] getCarriers() {
+        ClientCarrier[] current = carriers;
+
+        if (current == null) {
+            current = new ClientCarrier[partitionCount];
+
+            for (int i = 0; i < partitionCount; i++) {
+                current[i] = injector.getInstance(Key.get(ClientCarrier.class, Names.named(getName(i))));
+            }
+
+            carriers = current;
+        }
+
+        return current;
+    }
+
+    private ClientCarrier getCarrier(String topic) {
+        ClientCarrier[] current = getCarriers();
+        return current[LaneExecutor.indexOf(topic, current.length)];
+    }
+
+    /**
+     * Publishes the given message over the connection selected by the topic,
+     * so that the outgoing messages are spread over all connections.
+     *
+     * @param message The message to publish.
+     * @param topic The topic to publish to.
+     */
+    @Override
+    public void deliverMessage(byte[] message, String topic) {
+        getCarrier(topic).deliverMessage(message, topic);
+    }
+
+    @Override
+    public void startReceiving() {
+        for (ClientCarrier carrier : getCarriers()) {
+            carrier.startReceiving();
+        }
+    }
+
+    @Override
+    public void stopReceiving() {
+        for (ClientCarrier carrier : getCarriers()) {
+            carrier.stopReceiving();
+        }
+    }
+
+    @Override
+    public void receive(byte[] message, String topic) {
+        getCarrier(topic).receive(message, topic);
+    }
+
+    @Override
+    public void shutdown() {
+        for (ClientCarrier carrier : getCarriers()) {
+            carrier.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.carrier;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.beamproject.common.util.Base64;
+
+/**
+ * Decodes one field of a {@code application/x-www-form-urlencoded} request body
+ * while it is read. The value of the field is expected to be
+ * {@link Base64}ed and then URL encoded, as done by {@link HttpConnection}.
+ * <p>
+ * The body is read in chunks into a buffer owned by the current thread and the
+ * value is decoded on the fly into a second buffer of the current thread, so
+ * neither an intermediate {@link String} nor a new array is created. Bodies
+ * larger than the configured maximum are refused.
+ * <p>
+ * This class is thread-safe.
+ */
+public class PostBodyDecoder {
+
+    public final static int DEFAULT_MAX_BODY_SIZE = 1024 * 1024;
+    private final static int CHUNK_SIZE = 8192;
+    private final static int INITIAL_OUTPUT_SIZE = 4096;
+    private final static byte[] SEXTETS = new byte[128];
+    private final static byte INVALID = -1;
+    private final static byte IGNORED = -2;
+    private final static byte PADDING = -3;
+
+    static {
+        Arrays.fill(SEXTETS, INVALID);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+        for (int i = 0; i < alphabet.length(); i++) {
+            SEXTETS[alphabet.charAt(i)] = (byte) i;
+        }
+
+        SEXTETS[' '] = SEXTETS['+']; // a not encoded '+' arrives as space
+        SEXTETS['\r'] = IGNORED;
+        SEXTETS['\n'] = IGNORED;
+        SEXTETS['='] = PADDING;
+    }
+    private final int maxBodySize;
+    private final ThreadLocal<byte[]> chunks = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[CHUNK_SIZE];
+        }
+    };
+    private final ThreadLocal<byte[]> outputs = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[INITIAL_OUTPUT_SIZE];
+        }
+    };
+
+    /**
+     * Creates a new decoder.
+     *
+     * @param maxBodySize The maximum number of bytes a request body may have.
+     * @throws IllegalArgumentException If {@code maxBodySize} is not positive.
+     */
+    public PostBodyDecoder(int maxBodySize) {
+        if (maxBodySize < 1) {
+            throw new IllegalArgumentException("The maximum body size has to be positive.");
+        }
+
+        this.maxBodySize = maxBodySize;
+    }
+
+    /**
+     * Tells whether a body of the given length exceeds the maximum size. This
+     * allows to refuse a request before reading its body.
+     *
+     * @param contentLength The announced length of a body, or a negative
+     * number if it is unknown.
+     * @return true, if the body is known to be too large, false otherwise.
+     */
+    public boolean isTooLarge(long contentLength) {
+        return contentLength > maxBodySize;
+    }
+
+    /**
+     * Reads the given body and decodes the value of the first field that has
+     * one of the given names. Other fields are skipped.
+     *
+     * @param body The request body to read.
+     * @param names The names of the fields to look for.
+     * @return The name and the decoded value of the field.
+     * @throws IllegalArgumentException If the body is larger than allowed,
+     * none of the fields is present or its value is not valid {@link Base64}.
+     * @throws IOException If the body could not be read.
+     */
+    public PostField decode(InputStream body, String... names) throws IOException {
+        Decoding decoding = new Decoding(names);
+        byte[] chunk = chunks.get();
+        int totalLength = 0;
+        int length;
+
+        while (!decoding.isComplete() && (length = body.read(chunk)) != -1) {
+            totalLength += length;
+
+            if (totalLength > maxBodySize) {
+                throw new IllegalArgumentException("The body exceeds the maximum size of "
+                        + maxBodySize + " bytes.");
+            }
+
+            decoding.consume(chunk, length);
+        }
+
+        return decoding.finish();
+    }
+
+    /**
+     * The state of a single decoding, so that chunks can be processed
+     * independently of where they were split.
+     */
+    private class Decoding {
+
+        private final String[] names;
+        private final boolean[] isNameMatching;
+        private byte[] output = outputs.get();
+        private int outputLength;
+        private boolean isInValue;
+        private String foundName;
+        private boolean isComplete;
+        private int keyPosition;
+        private int percentDigits = -1;
+        private int percentValue;
+        private int quartet;
+        private int quartetLength;
+        private int paddingLength;
+
+        Decoding(String[] names) {
+            this.names = names;
+            this.isNameMatching = new boolean[names.length];
+            resetKey();
+        }
+
+        boolean isComplete() {
+            return isComplete;
+        }
+
+        void consume(byte[] chunk, int length) {
+            for (int i = 0; i < length && !isComplete; i++) {
+                int current = chunk[i] & 0xff;
+
+                if (isInValue) {
+                    consumeValue(current);
+                } else {
+                    consumeKey(current);
+                }
+            }
+        }
+
+        private void consumeKey(int current) {
+            if (current == '=') {
+                isInValue = true;
+                findMatchingName();
+            } else if (current == '&') {
+                resetKey();
+            } else {
+                for (int i = 0; i < names.length; i++) {
+                    isNameMatching[i] &= keyPosition < names[i].length()
+                            && names[i].charAt(keyPosition) == current;
+                }
+
+                keyPosition++;
+            }
+        }
+
+        private void findMatchingName() {
+            for (int i = 0; i < names.length; i++) {
+                if (isNameMatching[i] && keyPosition == names[i].length()) {
+                    foundName = names[i];
+                    return;
+                }
+            }
+        }
+
+        private void resetKey() {
+            isInValue = false;
+            Arrays.fill(isNameMatching, true);
+            keyPosition = 0;
+        }
+
+        private void consumeValue(int current) {
+            if (current == '&') {
+                isComplete = foundName != null;
+                resetKey();
+            } else if (foundName == null) {
+                // skip the values of other fields
+            } else if (percentDigits >= 0) {
+                consumePercentDigit(current);
+            } else if (current == '%') {
+                percentDigits = 0;
+                percentValue = 0;
+            } else {
+                consumeCharacter(current);
+            }
+        }
+
+        private void consumePercentDigit(int current) {
+            int digit = Character.digit(current, 16);
+
+            if (digit < 0) {
+                throw new IllegalArgumentException("The body contains an invalid URL encoding.");
+            }
+
+            percentValue = percentValue * 16 + digit;
+
+            if (++percentDigits == 2) {
+                percentDigits = -1;
+                consumeCharacter(percentValue);
+            }
+        }
+
+        private void consumeCharacter(int current) {
+            byte sextet = current < SEXTETS.length ? SEXTETS[current] : INVALID;
+
+            if (sextet == IGNORED) {
+                return;
+            } else if (sextet == PADDING) {
+                paddingLength++;
+                return;
+            } else if (sextet == INVALID || paddingLength > 0) {
+                throw new IllegalArgumentException("The field value is not valid Base64.");
+            }
+
+            quartet = (quartet << 6) | sextet;
+
+            if (++quartetLength == 4) {
+                ensureCapacity(3);
+                output[outputLength++] = (byte) (quartet >> 16);
+                output[outputLength++] = (byte) (quartet >> 8);
+                output[outputLength++] = (byte) quartet;
+                quartet = 0;
+                quartetLength = 0;
+            }
+        }
+
+        private void ensureCapacity(int additionalLength) {
+            if (outputLength + additionalLength > output.length) {
+                output = Arrays.copyOf(output, Math.max(output.length * 2, outputLength + additionalLength));
+                outputs.set(output);
+            }
+        }
+
+        PostField finish() {
+            if (foundName == null || percentDigits >= 0 || (outputLength == 0 && quartetLength == 0)) {
+                throw new IllegalArgumentException("The body does not contain a valid field "
+                        + Arrays.toString(names) + ".");
+            }
+
+            ensureCapacity(2);
+
+            if (quartetLength == 2) {
+                output[outputLength++] = (byte) (quartet >> 4);
+            } else if (quartetLength == 3) {
+                output[outputLength++] = (byte) (quartet >> 10);
+                output[outputLength++] = (byte) (quartet >> 2);
+            } else if (quartetLength == 1) {
+                throw new IllegalArgumentException("The field value is not valid Base64.");
+            }
+
+            return new PostField(foundName, ByteBuffer.wrap(output, 0, outputLength).slice().asReadOnlyBuffer());
+        }
+    }
+
+    /**
+     * A decoded field of a request body. Its value is backed by a buffer of
+     * the decoding thread and is only valid until that thread decodes the next
+     * body.
+     */
+    public static class PostField {
+
+        private final String name;
+        private final ByteBuffer buffer;
+
+        PostField(String name, ByteBuffer buffer) {
+            this.name = name;
+            this.buffer = buffer;
+        }
+
+        /**
+         * @return The name of the field.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return The decoded value of the field as read-only buffer, without
+         * copying it.
+         */
+        public ByteBuffer getBuffer() {
+            return buffer.duplicate();
+        }
+
+        /**
+         * @return A copy of the decoded value of the field.
+         */
+        public byte[] getValue() {
+            byte[] value = new byte[buffer.remaining()];
+            buffer.duplicate().get(value);
+            return value;
+        }
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.carrier;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Singleton;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import org.simpleframework.http.Response;
+import org.simpleframework.http.Status;
+
+/**
+ * The headers of the {@code 204 No Content} response sent for every accepted
+ * message. All header values are prepared in advance; the value of the
+ * {@code Date} and {@code Last-Modified} headers is refreshed once per second
+ * by a background clock, so that answering a request neither reads the time
+ * nor formats or allocates strings.
+ */
+@Singleton
+public class ResponseTemplate {
+
+    private final static String HEADER_CONTENT_TYPE_KEY = "Content-Type";
+    private final static String HEADER_CONTENT_TYPE_VALUE = "text/plain";
+    private final static String HEADER_SERVER_KEY = "Server";
+    private final static String HEADER_SERVER_VALUE = "Server/1.0";
+    private final static String HEADER_DATE_KEY = "Date";
+    private final static String HEADER_LAST_MODIFIED_KEY = "Last-Modified";
+    private final static long CLOCK_INTERVAL_MILLIS = 1000;
+    private final SimpleDateFormat dateFormat;
+    private final ScheduledExecutorService clock;
+    private volatile String date;
+
+    /**
+     * Creates a new template and starts its clock.
+     */
+    public ResponseTemplate() {
+        dateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+        refresh();
+
+        clock = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("http-clock-%d")
+                .setDaemon(true)
+                .build());
+        clock.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                refresh();
+            }
+        }, CLOCK_INTERVAL_MILLIS - System.currentTimeMillis() % CLOCK_INTERVAL_MILLIS,
+                CLOCK_INTERVAL_MILLIS, MILLISECONDS);
+    }
+
+    /**
+     * Formats the current time. This is only called by the constructor and
+     * the clock, which never run concurrently.
+     */
+    final void refresh() {
+        date = dateFormat.format(new Date());
+    }
+
+    /**
+     * Sets the status and the headers of the given response to those of an
+     * accepted message.
+     *
+     * @param response The response to fill in.
+     */
+    public void applyTo(Response response) {
+        String currentDate = date;
+
+        response.setValue(HEADER_CONTENT_TYPE_KEY, HEADER_CONTENT_TYPE_VALUE);
+        response.setValue(HEADER_SERVER_KEY, HEADER_SERVER_VALUE);
+        response.setValue(HEADER_DATE_KEY, currentDate);
+        response.setValue(HEADER_LAST_MODIFIED_KEY, currentDate);
+        response.setStatus(Status.NO_CONTENT);
+    }
+
+    /**
+     * @return The current value of the {@code Date} header.
+     */
+    public String getDate() {
+        return date;
+    }
+
+    /**
+     * Stops the clock.
+     */
+    public void shutdown() {
+        clock.shutdownNow();
+    }
+
+}
@@ -21,61 +21,194 @@ package org.beamproject.server.carrier;
 import org.beamproject.common.carrier.CarrierException;
 import org.beamproject.common.carrier.ServerCarrier;
 import com.google.inject.Inject;
+import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.List;
+import static java.util.logging.Level.SEVERE;
+import java.util.logging.Logger;
 import org.beamproject.common.carrier.ServerCarrierModel;
 import org.beamproject.common.util.Executor;
 import org.beamproject.common.util.Task;
 
 /**
  * Implements the {@link ServerCarrier} interface using HTTP to communicate with
- * other servers of the Beam network.
+ * other servers of the Beam network. Outgoing messages to the same server may
+ * be combined into batches by the {@link MessageBatcher}. They are stored in
+ * the {@link Outbox} until the receiving server has accepted them, and are
+ * sent again with a backoff if it could not be reached. The
+ * {@link CircuitBreaker} limits the concurrent requests to every server, so
+ * that a slow or failing server cannot occupy the threads and connections
+ * needed for the others.
+ * <p>
+ * Received messages are passed on as {@link ByteBuffer}s if the model is a
+ * {@link ByteBufferServerCarrierModel}.
  *
  * @see ServerCarrier
  * @see ServerCarrierModel
  */
-public class ServerCarrierImpl implements ServerCarrier {
+public class ServerCarrierImpl implements ByteBufferServerCarrier, MessageBatcher.Sender, Outbox.Dispatcher {
 
+    @Inject
+    Logger log;
     private final ServerCarrierModel model;
     private final Executor executor;
-    private final HttpConnectionPool connectionPool;
+    private final HttpConnection connection;
+    private final MessageBatcher batcher;
+    private final Outbox outbox;
+    private final CircuitBreaker circuitBreaker;
     private final HttpServer httpServer;
 
     @Inject
     public ServerCarrierImpl(ServerCarrierModel model,
             Executor executor,
-            HttpConnectionPool connectionPool,
+            HttpConnection connection,
+            MessageBatcher batcher,
+            Outbox outbox,
+            CircuitBreaker circuitBreaker,
             HttpServer httpServer) {
         this.model = model;
         this.executor = executor;
-        this.connectionPool = connectionPool;
+        this.connection = connection;
+        this.batcher = batcher;
+        this.outbox = outbox;
+        this.circuitBreaker = circuitBreaker;
         this.httpServer = httpServer;
+        this.batcher.setSender(this);
+        this.outbox.setDispatcher(this);
     }
 
     /**
-     * Delivers the given message to the server of the given URL.
+     * Delivers the given message to the server of the given URL. Depending on
+     * the configuration of the {@link MessageBatcher}, the message is sent
+     * together with other messages to the same server.
      *
      * @param message The message to send. This has to be already encrypted.
      * @param url The target server of the message.
-     * @throws CarrierException If the message could not be sent.
+     * @throws CarrierException If the URL is invalid or the message could not
+     * be sent. The failures of a batch that is sent later are only logged.
+     */
+    @Override
+    public void deliverMessage(byte[] message, String url) {
+        validateUrl(url);
+        batcher.add(url, message);
+    }
+
+    /**
+     * Stores a batch of messages, collected by the {@link MessageBatcher}, in
+     * the {@link Outbox}, which dispatches it.
+     *
+     * @param url The target server of the messages.
+     * @param messages The messages to send.
+     * @throws CarrierException If the URL is invalid or the messages could not
+     * be stored.
      */
     @Override
-    public void deliverMessage(final byte[] message, final String url) {
+    public void send(String url, List<byte[]> messages) {
+        validateUrl(url);
+
+        try {
+            outbox.append(url, messages);
+        } catch (IllegalStateException ex) {
+            throw new CarrierException("The message could not be stored: " + ex.getMessage());
+        }
+    }
+
+    private void validateUrl(String url) {
+        try {
+            new URL(url);
+        } catch (MalformedURLException ex) {
+            throw new CarrierException("The message could not be sent:" + ex.getMessage());
+        }
+    }
+
+    /**
+     * Sends the given {@link Outbox} entry asynchronously. It is acknowledged
+     * if the receiving server accepted it and retried if the server could not
+     * be reached or was temporarily unable to accept it. If the server
+     * refused it for good or if it is corrupt, it is discarded. If the
+     * {@link CircuitBreaker} does not allow a further request to the receiving
+     * server, the entry is postponed without occupying a thread.
+     *
+     * @param entry The entry to send.
+     */
+    @Override
+    public void dispatch(final Outbox.Entry entry) {
+        final String url = entry.getUrl();
+        final URL recipient;
+        final List<byte[]> messages;
+
+        try {
+            recipient = new URL(url);
+            messages = outbox.read(entry);
+        } catch (MalformedURLException | IllegalArgumentException ex) {
+            outbox.discard(entry, "The stored entry is corrupt: " + ex.getMessage());
+            return;
+        }
+
+        if (!circuitBreaker.tryAcquire(url)) {
+            outbox.postpone(entry, circuitBreaker.getRetryDelay(url));
+            return;
+        }
+
         executor.runAsync(new Task() {
             @Override
             public void run() {
+                long startNanos = System.nanoTime();
+
                 try {
-                    HttpConnection connection = connectionPool.borrowObject();
-                    connection.post(new URL(url), message);
-                    connectionPool.returnObject(connection);
+                    if (messages.size() == 1) {
+                        connection.post(recipient, messages.get(0));
+                    } else {
+                        connection.postBatch(recipient, messages);
+                    }
+
+                    circuitBreaker.onSuccess(url, (System.nanoTime() - startNanos) / 1000000);
+                    outbox.acknowledge(entry);
+                } catch (HttpStatusException ex) {
+                    circuitBreaker.onResponse(url, ex.getStatusCode(), (System.nanoTime() - startNanos) / 1000000);
+
+                    if (ex.isRetryable()) {
+                        outbox.retry(entry, ex.getRetryAfterMillis());
+                    } else {
+                        outbox.discard(entry, ex.getMessage());
+                    }
                 } catch (Exception ex) {
-                    throw new CarrierException("The message could not be sent:" + ex.getMessage());
+                    circuitBreaker.onFailure(url);
+                    outbox.retry(entry);
                 }
             }
         });
     }
 
+    /**
+     * Logs the discarded {@link Outbox} entry, since its messages are lost.
+     *
+     * @param entry The discarded entry.
+     * @param reason Why the entry was discarded.
+     */
+    @Override
+    public void discarded(Outbox.Entry entry, String reason) {
+        log.log(SEVERE, "Dropped messages to {0}: {1}", new Object[]{entry.getUrl(), reason});
+    }
+
+    /**
+     * Opens the {@link Outbox}, sends the messages it kept from the previous
+     * run and starts the HTTP server.
+     *
+     * @throws CarrierException If the outbox could not be opened, for example
+     * because another server process uses it, or if the HTTP server could not
+     * be started.
+     */
     @Override
     public void startReceiving() {
+        try {
+            outbox.open();
+        } catch (IllegalStateException ex) {
+            throw new CarrierException("The outbox could not be opened: " + ex.getMessage());
+        }
+
+        outbox.redeliverPending();
         httpServer.setCarrier(this);
         httpServer.start();
     }
@@ -90,9 +223,29 @@ public class ServerCarrierImpl implements ServerCarrier {
         model.consumeMessage(message, path);
     }
 
+    /**
+     * Hands the given message to the model. If the model does not accept
+     * {@link ByteBuffer}s, the message is copied into an array.
+     *
+     * @param message The received message.
+     * @param path The path at which the message was received.
+     */
+    @Override
+    public void receive(ByteBuffer message, String path) {
+        if (model instanceof ByteBufferServerCarrierModel) {
+            ((ByteBufferServerCarrierModel) model).consumeMessage(message, path);
+        } else {
+            byte[] copy = new byte[message.remaining()];
+            message.duplicate().get(copy);
+            model.consumeMessage(copy, path);
+        }
+    }
+
     @Override
     public void shutdown() {
-        connectionPool.close();
+        batcher.shutdown();
+        outbox.shutdown();
+        connection.close();
         httpServer.stop();
     }
 
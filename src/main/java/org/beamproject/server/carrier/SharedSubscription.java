@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.carrier;
+
+import static java.util.logging.Level.WARNING;
+import java.util.logging.Logger;
+import static java.util.logging.Logger.getLogger;
+import org.beamproject.server.util.Config;
+import static org.beamproject.server.util.Config.Key.MQTT_SHARED_SUBSCRIPTION_GROUP;
+import static org.beamproject.server.util.Config.Key.MQTT_SHARED_SUBSCRIPTION_STICKY;
+
+/**
+ * Builds the topics of MQTT shared subscriptions. All servers subscribing to
+ * the same topic with the same group form a cluster: the broker delivers
+ * every message to only one of them, instead of to all.
+ * <p>
+ * The broker has to choose the receiving server by the topic or by the client,
+ * not at random, so that all messages of a client reach the same server. A
+ * handshake started on one server cannot be completed on another, since the
+ * handshakes and sessions are stored per process. This has to be confirmed
+ * with {@link Config.Key#MQTT_SHARED_SUBSCRIPTION_STICKY}.
+ */
+public class SharedSubscription {
+
+    public final static String SHARE_PREFIX = "$share/";
+    private final static String SEPARATOR = "/";
+    private final static Logger log = getLogger(SharedSubscription.class.getName());
+
+    private SharedSubscription() {
+    }
+
+    /**
+     * Builds the subscription topic for the given topic and group.
+     *
+     * @param topic The topic filter to subscribe to.
+     * @param group The name of the group, or {@code null} or an empty string
+     * to subscribe on its own.
+     * @return The topic to subscribe to.
+     * @throws IllegalArgumentException If the group contains a wildcard or a
+     * separator.
+     */
+    public static String toTopic(String topic, String group) {
+        if (group == null || group.isEmpty()) {
+            return topic;
+        }
+
+        if (group.contains(SEPARATOR) || group.contains("+") || group.contains("#")) {
+            throw new IllegalArgumentException("The subscription group may not "
+                    + "contain '/', '+' or '#': " + group);
+        }
+
+        return SHARE_PREFIX + group + SEPARATOR + topic;
+    }
+
+    /**
+     * Builds the subscription topic for the given topic and the group of the
+     * given configuration, and warns that the broker has to assign all
+     * messages of a client to the same server.
+     *
+     * @param topic The topic filter to subscribe to.
+     * @param config The configuration containing the group.
+     * @return The topic to subscribe to.
+     * @throws IllegalStateException If a group is set, but
+     * {@link Config.Key#MQTT_SHARED_SUBSCRIPTION_STICKY} is not true.
+     * @throws IllegalArgumentException If the group contains a wildcard or a
+     * separator.
+     */
+    public static String toConfiguredTopic(String topic, Config config) {
+        String group = config.get(MQTT_SHARED_SUBSCRIPTION_GROUP);
+
+        if (group == null || group.isEmpty()) {
+            return topic;
+        }
+
+        if (!config.getBoolean(MQTT_SHARED_SUBSCRIPTION_STICKY, false)) {
+            throw new IllegalStateException("The shared subscription group " + group
+                    + " requires a broker that assigns all messages of a client to the same server. Confirm this with "
+                    + MQTT_SHARED_SUBSCRIPTION_STICKY + "=true.");
+        }
+
+        log.log(WARNING, "Sharing {0} with the group {1}. Handshakes and sessions "
+                + "fail unless the broker assigns all messages of a client to this server.",
+                new Object[]{topic, group});
+        return toTopic(topic, group);
+    }
+
+    /**
+     * @param subscription A subscription topic.
+     * @return true, if the topic is a shared subscription, false otherwise.
+     */
+    public static boolean isShared(String subscription) {
+        return subscription.startsWith(SHARE_PREFIX)
+                && subscription.indexOf(SEPARATOR, SHARE_PREFIX.length()) > SHARE_PREFIX.length();
+    }
+
+    /**
+     * @param subscription A shared subscription topic.
+     * @return The name of its group.
+     * @throws IllegalArgumentException If the topic is not shared.
+     */
+    public static String getGroup(String subscription) {
+        if (!isShared(subscription)) {
+            throw new IllegalArgumentException("Not a shared subscription: " + subscription);
+        }
+
+        return subscription.substring(SHARE_PREFIX.length(), subscription.indexOf(SEPARATOR, SHARE_PREFIX.length()));
+    }
+
+    /**
+     * @param subscription A subscription topic.
+     * @return The topic filter without the group, if it is shared.
+     */
+    public static String getTopicFilter(String subscription) {
+        if (!isShared(subscription)) {
+            return subscription;
+        }
+
+        return subscription.substring(subscription.indexOf(SEPARATOR, SHARE_PREFIX.length()) + 1);
+    }
+
+}
@@ -19,27 +19,66 @@
 package org.beamproject.server.model;
 
 import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import static java.util.logging.Level.FINE;
 import static java.util.logging.Level.INFO;
 import static java.util.logging.Level.WARNING;
 import java.util.logging.Logger;
+import lombok.Getter;
 import lombok.experimental.Delegate;
+import org.beamproject.common.Session;
 import org.beamproject.common.carrier.ClientCarrier;
 import static org.beamproject.common.carrier.ClientCarrier.MQTT_OUT_TOPIC_PREFIX;
 import org.beamproject.common.carrier.ClientCarrierModel;
 import org.beamproject.common.crypto.CryptoPacker;
-import org.beamproject.common.crypto.CryptoPackerPool;
-import org.beamproject.common.crypto.HandshakeResponder;
+import static org.beamproject.common.message.Field.Cnt.Typ.HS_CHALLENGE;
+import static org.beamproject.common.message.Field.Cnt.Typ.HS_SUCCESS;
 import org.beamproject.common.message.Message;
 import org.beamproject.common.util.Executor;
 import org.beamproject.common.util.Task;
-import org.beamproject.server.carrier.HandshakeChallengeHandler;
-import org.beamproject.server.carrier.HandshakeSuccessHandler;
-import org.beamproject.server.util.HandshakeStorage;
-import org.beamproject.server.util.SessionStorage;
+import org.beamproject.server.carrier.MessageDispatcher;
+import org.beamproject.server.util.AdmissionController;
+import org.beamproject.server.util.AdmissionController.Priority;
+import static org.beamproject.server.util.AdmissionController.Priority.HIGH;
+import static org.beamproject.server.util.AdmissionController.Priority.NORMAL;
+import org.beamproject.server.util.CryptoExecutor;
+import org.beamproject.server.util.CryptoPackerLanes;
+import org.beamproject.server.util.HandshakeResponseCache;
+import org.beamproject.server.util.InboundFilter;
+import org.beamproject.server.util.RateLimiter;
+import org.beamproject.server.util.SessionPacker;
+import org.beamproject.server.util.StageStatistics;
+import static org.beamproject.server.util.StageStatistics.Stage.DECRYPT;
+import static org.beamproject.server.util.StageStatistics.Stage.ENCRYPT;
+import static org.beamproject.server.util.StageStatistics.Stage.HANDLE;
+import static org.beamproject.server.util.StageStatistics.Stage.PUBLISH;
 
 /**
  * This class implements the {@link ClientCarrierModel} interface and therefore
  * provides functionality to control a {@link ClientCarrier}.
+ * <p>
+ * Incoming messages that do not pass the {@link InboundFilter} are dropped
+ * before any cryptographic work is done. Clients that completed a handshake
+ * are reported to it, so that they cannot be blocked by others. The others are processed on the lane
+ * of their username, so that the messages of the same client, like the steps of
+ * a handshake, are handled in the order they were received. They are admitted
+ * to the lanes by the {@link AdmissionController}, which prefers clients
+ * finishing a handshake over known clients, and known clients over new ones.
+ * The high priority of a client finishing a handshake covers only its next
+ * message. Whatever their priority, all messages that are not sent in a
+ * session frame are limited by a {@link RateLimiter} per username.
+ * <p>
+ * Decrypting a message, handling it, encrypting the response and handing it to
+ * the carrier happen in a single task with the same {@link CryptoPacker}, which
+ * may be owned by the lane (see {@link CryptoPackerLanes}), and the requests
+ * are handled by the {@link MessageDispatcher}. Retransmitted challenges are
+ * answered from the {@link HandshakeResponseCache}. The duration of these
+ * stages is collected in the {@link StageStatistics}. All of this runs on the
+ * {@link CryptoExecutor}.
+ * <p>
+ * Messages of established sessions may be sent as frames of the
+ * {@link SessionPacker}. They are decrypted and their responses encrypted with
+ * the session key, without a {@link CryptoPacker}.
  */
 public class ClientCarrierModelImpl implements ClientCarrierModel {
 
@@ -47,67 +86,145 @@ public class ClientCarrierModelImpl implements ClientCarrierModel {
     Logger log;
     private final MainModel model;
     private final Executor executor;
-    private final CryptoPackerPool packerPool;
+    private final InboundFilter filter;
+    private final RateLimiter rateLimiter;
+    private final AdmissionController admission;
+    private final CryptoPackerLanes packers;
     @Delegate
     private final ClientCarrier carrier;
-    private final HandshakeStorage<HandshakeResponder> handshakeStorage;
-    private final SessionStorage sessionStorage;
+    private final MessageDispatcher dispatcher;
+    private final HandshakeResponseCache responseCache;
+    private final SessionPacker sessionPacker;
+    @Getter
+    private final StageStatistics statistics;
 
     @Inject
-    public ClientCarrierModelImpl(MainModel model, Executor executor, ClientCarrier carrier,
-            CryptoPackerPool packerPool, HandshakeStorage<HandshakeResponder> handshakeStorage,
-            SessionStorage sessionStorage) {
+    public ClientCarrierModelImpl(MainModel model, @Named(CryptoExecutor.NAME) Executor executor, InboundFilter filter,
+            @Named(RateLimiter.USERNAME) RateLimiter rateLimiter, AdmissionController admission,
+            ClientCarrier carrier, CryptoPackerLanes packers,
+            MessageDispatcher dispatcher, HandshakeResponseCache responseCache,
+            SessionPacker sessionPacker, StageStatistics statistics) {
         this.model = model;
         this.executor = executor;
+        this.filter = filter;
+        this.rateLimiter = rateLimiter;
+        this.admission = admission;
         this.carrier = carrier;
-        this.packerPool = packerPool;
-        this.handshakeStorage = handshakeStorage;
-        this.sessionStorage = sessionStorage;
+        this.packers = packers;
+        this.dispatcher = dispatcher;
+        this.responseCache = responseCache;
+        this.sessionPacker = sessionPacker;
+        this.statistics = statistics;
     }
 
     @Override
     public void consumeMessage(final byte[] ciphertext, final String username) {
-        executor.runAsync(new Task() {
+        if (!filter.accept(ciphertext, username)) {
+            log.log(FINE, "Dropped an invalid message of {0}.", username);
+            return;
+        }
+
+        final Session session = sessionPacker.findSession(ciphertext);
+
+        if (session == null && !rateLimiter.tryAcquire(username)) {
+            log.log(FINE, "Dropped a message of {0}, too many handshakes.", username);
+            return;
+        }
+
+        Priority priority = admission.claimPriority(username);
+        boolean isAdmitted = admission.submit(username, priority, new Task() {
             @Override
             public void run() {
                 CryptoPacker packer = null;
+                boolean isDecrypting = false;
 
                 try {
-                    packer = packerPool.borrowObject();
+                    if (session == null) {
+                        packer = packers.acquire(username);
+                    }
+
+                    long start = System.nanoTime();
+                    isDecrypting = true;
+                    Message request = session != null
+                            ? sessionPacker.decryptAndUnpack(ciphertext, session, username, model.getServer())
+                            : packer.decryptAndUnpack(ciphertext, model.getServer());
+
+                    isDecrypting = false;
+                    long decrypted = statistics.record(DECRYPT, start);
+
+                    if (request.getType() == HS_CHALLENGE && publishCachedResponse(request, username)) {
+                        return;
+                    }
 
-                    Message request = packer.decryptAndUnpack(ciphertext, model.getServer());
                     log.log(INFO, "Handle request of type: {0}", request.getType().toString());
-                    Message response = produceResponse(request);
+                    Message response = dispatcher.dispatch(request);
+                    long handled = statistics.record(HANDLE, decrypted);
+                    updatePriority(username, request, response);
+
+                    if (request.getType() == HS_SUCCESS) {
+                        filter.reportHandshake(username);
+                    }
 
                     if (response != null) {
                         log.log(INFO, "Send response of type: {0}", response.getType().toString());
-                        encryptAndSend(response, MQTT_OUT_TOPIC_PREFIX + username);
+                        byte[] responseCiphertext = session != null
+                                ? sessionPacker.packAndEncrypt(response, session, username)
+                                : packer.packAndEncrypt(response);
+                        long encrypted = statistics.record(ENCRYPT, handled);
+
+                        if (request.getType() == HS_CHALLENGE) {
+                            responseCache.put(request, responseCiphertext);
+                        }
+
+                        carrier.deliverMessage(responseCiphertext, MQTT_OUT_TOPIC_PREFIX + username);
+                        statistics.record(PUBLISH, encrypted);
                     }
                 } catch (Exception ex) {
+                    if (isDecrypting) {
+                        filter.reportFailure(username);
+                    }
+
                     log.log(WARNING, "Could not handle an incoming message: {0}", ex.getMessage());
                 } finally {
-                    packerPool.returnObject(packer);
+                    packers.release(username, packer);
                 }
             }
         });
+
+        if (!isAdmitted) {
+            log.log(FINE, "Dropped a message of {0}, the server is overloaded.", username);
+        }
     }
 
-    private Message produceResponse(Message message) {
-        switch (message.getType()) {
+    /**
+     * Answers a retransmitted challenge with the response that was already
+     * produced for it, without a new handshake.
+     *
+     * @return True, if there was a response.
+     */
+    private boolean publishCachedResponse(Message challenge, String username) {
+        byte[] response = responseCache.get(challenge);
 
-            case HS_CHALLENGE:
-                HandshakeChallengeHandler challengeHandler = new HandshakeChallengeHandler(handshakeStorage);
-                return challengeHandler.handle(message);
+        if (response == null) {
+            return false;
+        }
 
-            case HS_SUCCESS:
-                HandshakeSuccessHandler successHandler = new HandshakeSuccessHandler(handshakeStorage, sessionStorage);
-                return successHandler.handle(message);
+        log.log(INFO, "Send the response to a retransmitted challenge.");
+        carrier.deliverMessage(response, MQTT_OUT_TOPIC_PREFIX + username);
+        return true;
+    }
 
-            default:
-                log.log(INFO, "Received a message of unknown type - ignore it.");
+    /**
+     * Processes the next message of a client ahead of new clients once it is
+     * half-way through a handshake, and the messages of a known client once
+     * the handshake succeeded.
+     */
+    private void updatePriority(String username, Message request, Message response) {
+        if (request.getType() == HS_CHALLENGE && response != null) {
+            admission.setPriority(username, HIGH);
+        } else if (request.getType() == HS_SUCCESS) {
+            admission.setPriority(username, NORMAL);
         }
-
-        return null;
     }
 
     @Override
@@ -118,16 +235,25 @@ public class ClientCarrierModelImpl implements ClientCarrierModel {
                 CryptoPacker packer = null;
 
                 try {
-                    packer = packerPool.borrowObject();
+                    packer = packers.acquire(null);
                     byte[] ciphertext = packer.packAndEncrypt(message);
                     carrier.deliverMessage(ciphertext, topic);
                 } catch (Exception ex) {
                     log.log(WARNING, "Could not send a message: {0}", ex.getMessage());
                 } finally {
-                    packerPool.returnObject(packer);
+                    packers.release(null, packer);
                 }
             }
         });
     }
 
+    /**
+     * Shuts the carrier down and returns the packers owned by the lanes.
+     */
+    @Override
+    public void shutdown() {
+        carrier.shutdown();
+        packers.shutdown();
+    }
+
 }
@@ -19,8 +19,10 @@
 package org.beamproject.server.model;
 
 import com.google.common.eventbus.EventBus;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.google.inject.name.Named;
 import java.io.File;
 import java.io.IOException;
 import java.net.InetSocketAddress;
@@ -30,26 +32,40 @@ import java.security.KeyPair;
 import java.util.Properties;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import java.util.concurrent.atomic.AtomicInteger;
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.WARNING;
+import java.util.logging.Logger;
 import lombok.Getter;
 import lombok.Setter;
 import org.beamproject.common.Server;
 import org.beamproject.common.carrier.CarrierException;
 import org.beamproject.common.carrier.ClientCarrierModel;
 import org.beamproject.common.carrier.ServerCarrierModel;
+import org.beamproject.common.crypto.CryptoPackerPool;
 import static org.beamproject.common.crypto.BouncyCastleIntegrator.initBouncyCastleProvider;
 import static org.beamproject.common.crypto.EccKeyPairGenerator.fromBothKeys;
 import org.beamproject.common.crypto.EncryptedConfig;
 import org.beamproject.common.util.Base58;
 import org.beamproject.common.util.Executor;
 import org.beamproject.common.util.Files;
+import org.beamproject.common.util.Task;
 import org.beamproject.server.App;
 import static org.beamproject.server.Event.CARRIERS_STARTED;
 import static org.beamproject.server.Event.CARRIER_EXCEPTION;
 import static org.beamproject.server.Event.COMMAND_LINE_EXCEPTION;
+import static org.beamproject.server.Event.INVALID_COMMAND_LINE_USAGE;
 import static org.beamproject.server.Event.INVALID_CONFIG_SERVER_URL;
+import static org.beamproject.server.Event.KEY_PAIRS_STORED;
 import static org.beamproject.server.Event.KEY_PAIR_STORED;
 import static org.beamproject.server.Event.MISSING_CONFIG_ENTRIES;
 import static org.beamproject.server.Event.SERVER_CONFIGURATION_LOADED;
+import org.beamproject.server.util.AdmissionController;
 import org.beamproject.server.util.Config;
 import static org.beamproject.server.util.Config.Key.MQTT_HOST;
 import static org.beamproject.server.util.Config.Key.MQTT_PORT;
@@ -58,10 +74,17 @@ import static org.beamproject.server.util.Config.Key.MQTT_USERNAME;
 import static org.beamproject.server.util.Config.Key.PRIVATE_KEY;
 import static org.beamproject.server.util.Config.Key.PUBLIC_KEY;
 import static org.beamproject.server.util.Config.Key.SERVER_URL;
+import static org.beamproject.server.util.Config.Key.STATUS_LOG_INTERVAL;
+import org.beamproject.server.util.CryptoExecutor;
+import org.beamproject.server.util.InboundFilter;
+import org.beamproject.server.util.PoolStatistics;
+import org.beamproject.server.util.RateLimiter;
+import org.beamproject.server.util.StageStatistics;
 
 @Singleton
 public class MainModel {
 
+    public final static int DEFAULT_STATUS_LOG_INTERVAL_MILLIS = 60000;
     private final Config.Key[] REQUIRED_CONFIG_KEYS = {PUBLIC_KEY, PRIVATE_KEY,
         SERVER_URL, MQTT_HOST, MQTT_PORT,
         MQTT_USERNAME, MQTT_SUBSCRIBER_TOPIC};
@@ -77,9 +100,33 @@ public class MainModel {
     ClientCarrierModel clientCarrierModel;
     @Inject
     ServerCarrierModel serverCarrierModel;
+    @Inject
+    CryptoPackerPool packerPool;
+    @Inject
+    @Named(CryptoExecutor.NAME)
+    Executor cryptoExecutor;
+    @Inject
+    StageStatistics stageStatistics;
+    @Inject
+    @Named(RateLimiter.USERNAME)
+    RateLimiter usernameLimiter;
+    @Inject
+    @Named(RateLimiter.PUBLIC_KEY)
+    RateLimiter publicKeyLimiter;
+    @Inject
+    AdmissionController admission;
+    @Inject
+    InboundFilter filter;
+    @Inject
+    Logger log;
+    private ScheduledExecutorService statusLogger;
     @Getter
     @Setter
     private Server server;
+    @Getter
+    private int storedKeyPairCount;
+    @Getter
+    private long keyPairGenerationMillis;
 
     @Inject
     public MainModel(EventBus bus, Executor executor, Config config, Files files) {
@@ -96,7 +143,9 @@ public class MainModel {
 
         if (isConfigSufficient()) {
             restoreServer();
+            preparePackerPool();
             startCarriers();
+            startStatusLog();
         } else {
             bus.post(MISSING_CONFIG_ENTRIES);
         }
@@ -140,6 +189,67 @@ public class MainModel {
         return new InetSocketAddress(host, port);
     }
 
+    /**
+     * Creates the idle crypto packers, so that the first messages do not have
+     * to wait for them.
+     */
+    private void preparePackerPool() {
+        try {
+            packerPool.preparePool();
+        } catch (Exception ex) {
+            execptions.add("Crypto packer pool: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * @return A snapshot of the state of the crypto packer pool.
+     */
+    public PoolStatistics getPackerPoolStatistics() {
+        return new PoolStatistics(packerPool);
+    }
+
+    /**
+     * @return A snapshot of the statistics of this server.
+     */
+    public StatusReport getStatusReport() {
+        return new StatusReport(getPackerPoolStatistics(), stageStatistics,
+                usernameLimiter, publicKeyLimiter, admission, filter);
+    }
+
+    /**
+     * Logs the {@link StatusReport} periodically, unless the interval is
+     * configured to be 0.
+     */
+    private void startStatusLog() {
+        int interval = config.getInt(STATUS_LOG_INTERVAL, DEFAULT_STATUS_LOG_INTERVAL_MILLIS);
+
+        if (interval <= 0) {
+            return;
+        }
+
+        statusLogger = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("status-log-%d")
+                .setDaemon(true)
+                .build());
+        statusLogger.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                logStatus();
+            }
+        }, interval, interval, MILLISECONDS);
+    }
+
+    /**
+     * Logs the current {@link StatusReport}.
+     */
+    void logStatus() {
+        try {
+            log.log(INFO, "Status: {0}", getStatusReport());
+        } catch (RuntimeException ex) {
+            log.log(WARNING, "Could not collect the status: {0}", ex.getMessage());
+        }
+    }
+
     private void startCarriers() {
         boolean noExceptionOccurred = true;
 
@@ -176,14 +286,8 @@ public class MainModel {
     }
 
     public void generateKeyPair(String filename) {
-        Server newServer = Server.generate();
-        Properties newConfig = new Properties();
-
-        newConfig.setProperty(PUBLIC_KEY.toString(), newServer.getPublicKeyAsBase58());
-        newConfig.setProperty(PRIVATE_KEY.toString(), newServer.getPrivateKeyAsBase58());
-
         try {
-            files.storeProperies(newConfig, getCanonicalFilePath(filename));
+            storeKeyPair(Server.generate(), filename);
             bus.post(KEY_PAIR_STORED);
         } catch (IllegalArgumentException | IOException ex) {
             execptions.add("Could not write the key pair to file: " + ex.getMessage());
@@ -191,6 +295,81 @@ public class MainModel {
         }
     }
 
+    /**
+     * Generates the given number of key pairs in parallel on the crypto
+     * {@link Executor} and stores each one in its own file. The files are
+     * numbered, so {@code server.conf} becomes {@code server-1.conf},
+     * {@code server-2.conf} and so on. When all are done, the number of
+     * stored key pairs and the elapsed time are available from this model.
+     *
+     * @param filename The file name the numbered file names are built from.
+     * @param count The number of key pairs to generate.
+     */
+    public void generateKeyPairs(String filename, int count) {
+        if (count < 1) {
+            bus.post(INVALID_COMMAND_LINE_USAGE);
+            return;
+        }
+
+        final CountDownLatch done = new CountDownLatch(count);
+        final AtomicInteger storedCount = new AtomicInteger();
+        long start = System.nanoTime();
+
+        for (int number = 1; number <= count; number++) {
+            final String numberedFilename = getNumberedFilename(filename, number);
+
+            cryptoExecutor.runAsync(new Task() {
+                @Override
+                public void run() {
+                    try {
+                        storeKeyPair(Server.generate(), numberedFilename);
+                        storedCount.incrementAndGet();
+                    } catch (RuntimeException | IOException ex) {
+                        execptions.add("Could not write the key pair to file "
+                                + numberedFilename + ": " + ex.getMessage());
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+
+        try {
+            done.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        storedKeyPairCount = storedCount.get();
+        keyPairGenerationMillis = MILLISECONDS.convert(System.nanoTime() - start, NANOSECONDS);
+
+        if (!execptions.isEmpty()) {
+            bus.post(COMMAND_LINE_EXCEPTION);
+        }
+
+        bus.post(KEY_PAIRS_STORED);
+    }
+
+    private void storeKeyPair(Server newServer, String filename) throws IOException {
+        Properties newConfig = new Properties();
+
+        newConfig.setProperty(PUBLIC_KEY.toString(), newServer.getPublicKeyAsBase58());
+        newConfig.setProperty(PRIVATE_KEY.toString(), newServer.getPrivateKeyAsBase58());
+
+        files.storeProperies(newConfig, getCanonicalFilePath(filename));
+    }
+
+    private String getNumberedFilename(String filename, int number) {
+        int extensionStart = filename.lastIndexOf('.');
+
+        if (extensionStart > filename.lastIndexOf(File.separatorChar) + 1) {
+            return filename.substring(0, extensionStart) + "-" + number
+                    + filename.substring(extensionStart);
+        }
+
+        return filename + "-" + number;
+    }
+
     private String getCanonicalFilePath(String filename) throws IOException {
         if (filename.substring(0, 1).contains("~")) {
             filename = filename.replaceFirst("~", System.getProperty("user.home"));
@@ -202,12 +381,17 @@ public class MainModel {
     public void shutdown() {
         storeConfig();
 
+        if (statusLogger != null) {
+            statusLogger.shutdownNow();
+        }
+
         try {
             clientCarrierModel.shutdown();
             serverCarrierModel.shutdown();
         } catch (IllegalStateException ex) {
         }
 
+        cryptoExecutor.shutdown();
         executor.shutdown();
     }
 
@@ -19,18 +19,20 @@
 package org.beamproject.server.model;
 
 import com.google.inject.Inject;
+import java.nio.ByteBuffer;
 import lombok.experimental.Delegate;
 import org.beamproject.common.carrier.ServerCarrier;
 import org.beamproject.common.carrier.ServerCarrierModel;
 import org.beamproject.common.message.Message;
 import org.beamproject.common.util.Executor;
 import org.beamproject.common.util.Task;
+import org.beamproject.server.carrier.ByteBufferServerCarrierModel;
 
 /**
  * This class implements the {@link ServerCarrierModel} interface and therefore
  * provides functionality to control a {@link ServerCarrier}.
  */
-public class ServerCarrierModelImpl implements ServerCarrierModel {
+public class ServerCarrierModelImpl implements ByteBufferServerCarrierModel {
 
     private final MainModel model;
     private final Executor executor;
@@ -54,6 +56,19 @@ public class ServerCarrierModelImpl implements ServerCarrierModel {
         });
     }
 
+    /**
+     * Copies the given message once, since it is processed asynchronously.
+     *
+     * @param message The received message.
+     * @param path The path at which the message was received.
+     */
+    @Override
+    public void consumeMessage(ByteBuffer message, String path) {
+        byte[] copy = new byte[message.remaining()];
+        message.duplicate().get(copy);
+        consumeMessage(copy, path);
+    }
+
     @Override
     public void encryptAndSend(Message message, String path) {
         throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.model;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import lombok.Getter;
+import org.beamproject.server.util.AdmissionController;
+import org.beamproject.server.util.InboundFilter;
+import org.beamproject.server.util.PoolStatistics;
+import org.beamproject.server.util.RateLimiter;
+import org.beamproject.server.util.StageStatistics;
+import org.beamproject.server.util.StageStatistics.Stage;
+
+/**
+ * A snapshot of the statistics of this server, which the {@link MainModel}
+ * logs periodically. It combines the state of the crypto packer pool, the
+ * duration of the processing stages and the number of messages that were
+ * throttled, shed or dropped.
+ */
+public class StatusReport {
+
+    @Getter
+    private final PoolStatistics packerPool;
+    private final long[] stageCounts = new long[Stage.values().length];
+    private final long[] stageAverageMicros = new long[Stage.values().length];
+    private final long[] stageMaxMicros = new long[Stage.values().length];
+    @Getter
+    private final long throttledByUsername;
+    @Getter
+    private final long throttledByPublicKey;
+    @Getter
+    private final int queued;
+    @Getter
+    private final long shed;
+    @Getter
+    private final long dropped;
+
+    /**
+     * Takes a snapshot of the given statistics and counters.
+     *
+     * @param packerPool The state of the crypto packer pool.
+     * @param stages The durations of processing client messages.
+     * @param usernameLimiter The limiter of handshakes per username.
+     * @param publicKeyLimiter The limiter of handshakes per public key.
+     * @param admission The admission of client messages.
+     * @param filter The filter of invalid client messages.
+     */
+    public StatusReport(PoolStatistics packerPool, StageStatistics stages,
+            RateLimiter usernameLimiter, RateLimiter publicKeyLimiter,
+            AdmissionController admission, InboundFilter filter) {
+        this.packerPool = packerPool;
+
+        for (Stage stage : Stage.values()) {
+            stageCounts[stage.ordinal()] = stages.getCount(stage);
+            stageAverageMicros[stage.ordinal()] = stages.getAverage(stage, MICROSECONDS);
+            stageMaxMicros[stage.ordinal()] = stages.getMax(stage, MICROSECONDS);
+        }
+
+        this.throttledByUsername = usernameLimiter.getThrottledCount();
+        this.throttledByPublicKey = publicKeyLimiter.getThrottledCount();
+        this.queued = admission.getQueuedCount();
+        this.shed = admission.getShedCount();
+        this.dropped = filter.getDroppedCount();
+    }
+
+    /**
+     * @param stage The stage to look up.
+     * @return How often the stage had been finished.
+     */
+    public long getStageCount(Stage stage) {
+        return stageCounts[stage.ordinal()];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("packer pool: [").append(packerPool).append("]");
+
+        for (Stage stage : Stage.values()) {
+            builder.append(", ").append(stage.toString().toLowerCase())
+                    .append(": ").append(stageCounts[stage.ordinal()])
+                    .append(" (mean ").append(stageAverageMicros[stage.ordinal()])
+                    .append(" us, max ").append(stageMaxMicros[stage.ordinal()]).append(" us)");
+        }
+
+        return builder.append(", throttled by username: ").append(throttledByUsername)
+                .append(", throttled by public key: ").append(throttledByPublicKey)
+                .append(", queued: ").append(queued)
+                .append(", shed: ").append(shed)
+                .append(", dropped: ").append(dropped)
+                .toString();
+    }
+
+}
@@ -0,0 +1,365 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.beamproject.common.util.Task;
+
+/**
+ * Admits {@link Task}s to a {@link LaneExecutor} by their {@link Priority}.
+ * Only a limited number of admitted tasks are in flight at the same time, the
+ * others wait in a bounded queue per priority. Waiting tasks are admitted
+ * highest priority first.
+ * <p>
+ * When the system is overloaded, the lowest priorities are shed first: A
+ * {@link Priority#LOW} task that waited longer than the target latency is
+ * dropped, a {@link Priority#NORMAL} task after four times the target latency.
+ * {@link Priority#HIGH} tasks are only dropped when the queue is full and
+ * there is no task of lower priority left to make room for them.
+ * <p>
+ * The priority of a key, for example the username of a client, is remembered
+ * with {@link #setPriority(String, Priority)} and defaults to
+ * {@link Priority#LOW}.
+ * <p>
+ * The tasks of a key are admitted in the order they were submitted. While a
+ * key has waiting tasks, its further tasks join the same priority, even if
+ * the priority of the key changed in the meantime.
+ */
+public class AdmissionController {
+
+    public final static int DEFAULT_QUEUE_SIZE = 10000;
+    public final static int DEFAULT_TARGET_LATENCY_MILLIS = 100;
+    public final static int NORMAL_LATENCY_FACTOR = 4;
+    private final static long PRIORITY_EXPIRY_MINUTES = 10;
+    private final LaneExecutor lanes;
+    private final int queueSize;
+    private final int maxInFlight;
+    private final long targetLatencyNanos;
+    private final EnumMap<Priority, ArrayDeque<Admission>> queues = new EnumMap<>(Priority.class);
+    private final Map<String, Pin> pins = new HashMap<>();
+    private final Cache<String, Priority> priorities;
+    private final AtomicBoolean isAdmitting = new AtomicBoolean();
+    private final AtomicLong shedCount = new AtomicLong();
+    private int queuedCount;
+    private int inFlightCount;
+
+    public enum Priority {
+
+        /**
+         * Work that completes something already started, like the last step
+         * of a handshake.
+         */
+        HIGH,
+        /**
+         * Regular work of known clients.
+         */
+        NORMAL,
+        /**
+         * Work of unknown clients, like a new handshake.
+         */
+        LOW
+    }
+
+    /**
+     * Creates a new admission controller.
+     *
+     * @param lanes The lanes running the admitted tasks.
+     * @param queueSize The maximum number of waiting tasks.
+     * @param maxInFlight The maximum number of admitted tasks that did not
+     * complete yet.
+     * @param targetLatencyMillis The time a task may wait before the system is
+     * considered overloaded.
+     * @throws IllegalArgumentException If a size is not positive or the target
+     * latency is negative.
+     */
+    public AdmissionController(LaneExecutor lanes, int queueSize, int maxInFlight, long targetLatencyMillis) {
+        if (queueSize < 1 || maxInFlight < 1) {
+            throw new IllegalArgumentException("The queue size and the number of tasks in flight have to be positive.");
+        } else if (targetLatencyMillis < 0) {
+            throw new IllegalArgumentException("The target latency must not be negative.");
+        }
+
+        this.lanes = lanes;
+        this.queueSize = queueSize;
+        this.maxInFlight = maxInFlight;
+        this.targetLatencyNanos = MILLISECONDS.toNanos(targetLatencyMillis);
+        this.priorities = CacheBuilder.newBuilder()
+                .expireAfterAccess(PRIORITY_EXPIRY_MINUTES, MINUTES)
+                .build();
+
+        for (Priority priority : Priority.values()) {
+            queues.put(priority, new ArrayDeque<Admission>());
+        }
+    }
+
+    /**
+     * Submits the given task with the remembered priority of the given key.
+     *
+     * @param key The key that selects the lane and the priority.
+     * @param task The task to run.
+     * @return False, if the task was dropped since the queue is full.
+     */
+    public boolean submit(String key, Task task) {
+        return submit(key, getPriority(key), task);
+    }
+
+    /**
+     * Submits the given task. If the key has waiting tasks, the task joins
+     * their priority instead of the given one, so that it cannot overtake
+     * them. If the queue is full, the oldest task of the lowest priority below
+     * that is dropped to make room. If there is none, the given task is
+     * dropped.
+     *
+     * @param key The key that selects the lane.
+     * @param priority The priority of the task.
+     * @param task The task to run.
+     * @return False, if the given task was dropped since the queue is full.
+     */
+    public boolean submit(String key, Priority priority, Task task) {
+        synchronized (queues) {
+            Pin pin = pins.get(key);
+            Priority queued = pin == null ? priority : pin.priority;
+
+            if (queuedCount >= queueSize && !shedBelow(queued)) {
+                shedCount.incrementAndGet();
+                return false;
+            }
+
+            if (pin == null) {
+                pin = new Pin(queued);
+                pins.put(key, pin);
+            }
+
+            queues.get(queued).offer(new Admission(key, task));
+            queuedCount++;
+            pin.count++;
+        }
+
+        admit();
+        return true;
+    }
+
+    private boolean shedBelow(Priority priority) {
+        Priority[] all = Priority.values();
+
+        for (int i = all.length - 1; i > priority.ordinal(); i--) {
+            Admission admission = queues.get(all[i]).poll();
+
+            if (admission != null) {
+                dequeue(admission);
+                shedCount.incrementAndGet();
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Hands waiting tasks to the lanes as long as less than the maximum are in
+     * flight. Only one thread admits at a time, so tasks completing on the
+     * admitting thread do not recurse.
+     */
+    private void admit() {
+        while (isAdmitting.compareAndSet(false, true)) {
+            try {
+                Admission admission;
+
+                while ((admission = next()) != null) {
+                    lanes.runAsync(admission.key, admission);
+                }
+            } finally {
+                isAdmitting.set(false);
+            }
+
+            if (!isAdmissible()) {
+                return;
+            }
+        }
+    }
+
+    private Admission next() {
+        synchronized (queues) {
+            if (inFlightCount >= maxInFlight) {
+                return null;
+            }
+
+            long now = System.nanoTime();
+
+            for (Priority priority : Priority.values()) {
+                ArrayDeque<Admission> queue = queues.get(priority);
+                Admission admission;
+
+                while ((admission = queue.poll()) != null) {
+                    dequeue(admission);
+
+                    if (isExpired(admission, priority, now)) {
+                        shedCount.incrementAndGet();
+                        continue;
+                    }
+
+                    inFlightCount++;
+                    return admission;
+                }
+            }
+
+            return null;
+        }
+    }
+
+    private void dequeue(Admission admission) {
+        queuedCount--;
+        Pin pin = pins.get(admission.key);
+
+        if (--pin.count == 0) {
+            pins.remove(admission.key);
+        }
+    }
+
+    private boolean isExpired(Admission admission, Priority priority, long now) {
+        long waited = now - admission.submitted;
+
+        switch (priority) {
+            case LOW:
+                return waited > targetLatencyNanos;
+            case NORMAL:
+                return waited > targetLatencyNanos * NORMAL_LATENCY_FACTOR;
+            default:
+                return false;
+        }
+    }
+
+    private boolean isAdmissible() {
+        synchronized (queues) {
+            return queuedCount > 0 && inFlightCount < maxInFlight;
+        }
+    }
+
+    private void complete() {
+        synchronized (queues) {
+            inFlightCount--;
+        }
+
+        admit();
+    }
+
+    /**
+     * Remembers the priority of the tasks of the given key.
+     *
+     * @param key The key, for example the username of a client.
+     * @param priority The priority of its future tasks.
+     */
+    public void setPriority(String key, Priority priority) {
+        if (key != null) {
+            priorities.put(key, priority);
+        }
+    }
+
+    /**
+     * @param key The key, for example the username of a client.
+     * @return The remembered priority of the key, or {@link Priority#LOW} if
+     * there is none.
+     */
+    public Priority getPriority(String key) {
+        Priority priority = key == null ? null : priorities.getIfPresent(key);
+        return priority == null ? Priority.LOW : priority;
+    }
+
+    /**
+     * Returns the remembered priority of the given key for a single task. A
+     * {@link Priority#HIGH} priority is used up by this, so that the next
+     * tasks of the key fall back to {@link Priority#LOW}.
+     *
+     * @param key The key, for example the username of a client.
+     * @return The remembered priority of the key, or {@link Priority#LOW} if
+     * there is none.
+     */
+    public Priority claimPriority(String key) {
+        Priority priority = getPriority(key);
+
+        if (priority == Priority.HIGH && !priorities.asMap().remove(key, Priority.HIGH)) {
+            return getPriority(key);
+        }
+
+        return priority;
+    }
+
+    /**
+     * @return The number of tasks waiting to be admitted.
+     */
+    public int getQueuedCount() {
+        synchronized (queues) {
+            return queuedCount;
+        }
+    }
+
+    /**
+     * @return The number of tasks dropped so far.
+     */
+    public long getShedCount() {
+        return shedCount.get();
+    }
+
+    /**
+     * The priority the waiting tasks of a key are queued with.
+     */
+    private static class Pin {
+
+        private final Priority priority;
+        private int count;
+
+        Pin(Priority priority) {
+            this.priority = priority;
+        }
+    }
+
+    /**
+     * A task waiting to be admitted.
+     */
+    private class Admission extends Task {
+
+        private final String key;
+        private final Task task;
+        private final long submitted = System.nanoTime();
+
+        Admission(String key, Task task) {
+            this.key = key;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            try {
+                task.run();
+            } finally {
+                complete();
+            }
+        }
+    }
+
+}
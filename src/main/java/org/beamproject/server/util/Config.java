@@ -67,6 +67,253 @@ public class Config {
          * incoming messages from its clients.
          */
         MQTT_SUBSCRIBER_TOPIC,
+        /**
+         * The name of the shared subscription group of this beam-server.
+         * Servers with the same group share the messages of
+         * {@link #MQTT_SUBSCRIBER_TOPIC}, each message is handled by only one
+         * of them. The broker has to assign the messages by topic or client, so
+         * that all messages of a client reach the same server. Requires
+         * {@link #MQTT_SHARED_SUBSCRIPTION_STICKY}. Optional, if not set, this
+         * server receives all messages on its own.
+         */
+        MQTT_SHARED_SUBSCRIPTION_GROUP,
+        /**
+         * Confirms that the broker assigns all messages of a client to the
+         * same server of the {@link #MQTT_SHARED_SUBSCRIPTION_GROUP}.
+         * Handshakes and sessions are only known to the server that created
+         * them, so they fail if the broker assigns the messages round-robin or
+         * at random. The server does not start with a group unless this is
+         * true. Optional, defaults to false.
+         */
+        MQTT_SHARED_SUBSCRIPTION_STICKY,
+        /**
+         * The number of MQTT connections receiving the messages of clients.
+         * With more than one, {@link #MQTT_SUBSCRIBER_TOPIC} has to contain
+         * {@code {partition}}, which is replaced by the number of the
+         * connection, and clients publish to the partition computed from
+         * their username as documented at
+         * {@code PartitionedClientCarrier.partitionOf}. Optional, defaults to
+         * 1.
+         */
+        MQTT_SUBSCRIBER_PARTITIONS,
+        /**
+         * The number of lanes processing the messages of clients. The messages
+         * of a client are always handled by the same lane, one after another.
+         * Optional, defaults to the number of available processors.
+         */
+        CLIENT_PROCESSING_LANES,
+        /**
+         * The maximum number of messages of clients waiting to be processed.
+         * When it is reached, messages of new clients are dropped first.
+         * Optional, defaults to 10000.
+         */
+        CLIENT_ADMISSION_QUEUE_SIZE,
+        /**
+         * The maximum number of messages of clients processed at the same time.
+         * Optional, defaults to twice the number of processing lanes.
+         */
+        CLIENT_ADMISSION_IN_FLIGHT,
+        /**
+         * The time in milliseconds a message of a new client may wait to be
+         * processed before it is dropped. Messages of known clients wait four
+         * times as long, the last step of a handshake is never dropped for
+         * waiting. Optional, defaults to 100.
+         */
+        CLIENT_ADMISSION_TARGET_LATENCY,
+        /**
+         * The minimum size in bytes of a message of a client. Smaller messages
+         * are dropped before they are decrypted. Optional, defaults to 32.
+         */
+        CLIENT_MESSAGE_MIN_SIZE,
+        /**
+         * The maximum size in bytes of a message of a client. Larger messages
+         * are dropped before they are decrypted. Optional, defaults to 262144.
+         */
+        CLIENT_MESSAGE_MAX_SIZE,
+        /**
+         * The number of messages that could not be decrypted, after which the
+         * messages of a client are dropped. 0 never drops the messages of a
+         * client. Optional, defaults to 5.
+         */
+        CLIENT_BAD_SENDER_LIMIT,
+        /**
+         * The time in milliseconds after the first message that could not be
+         * decrypted, until the messages of a blocked client are accepted
+         * again. Optional, defaults to 60000.
+         */
+        CLIENT_BAD_SENDER_BLOCK_TIME,
+        /**
+         * The number of messages per minute a client may send outside of a
+         * session, like the messages of a handshake. 0 does not limit the
+         * rate. Optional, defaults to 30.
+         */
+        HANDSHAKE_RATE_PER_USERNAME,
+        /**
+         * The number of messages a client may send at once outside of a
+         * session. Optional, defaults to 5.
+         */
+        HANDSHAKE_BURST_PER_USERNAME,
+        /**
+         * The number of handshakes per minute a public key may start. 0 does
+         * not limit the rate. Optional, defaults to 10.
+         */
+        HANDSHAKE_RATE_PER_PUBLIC_KEY,
+        /**
+         * The number of handshakes a public key may start at once. Optional,
+         * defaults to 3.
+         */
+        HANDSHAKE_BURST_PER_PUBLIC_KEY,
+        /**
+         * The maximum number of responses to handshake challenges that are
+         * remembered, so that retransmitted challenges are answered without a
+         * new handshake. 0 remembers none. Optional, defaults to 10000.
+         */
+        HANDSHAKE_RESPONSE_CACHE_SIZE,
+        /**
+         * The time in milliseconds a response to a handshake challenge is
+         * remembered. Optional, defaults to 30000.
+         */
+        HANDSHAKE_RESPONSE_CACHE_TIME,
+        /**
+         * The maximum number of participants restored from public keys of
+         * clients that are remembered, so that their keys are not decoded
+         * again. 0 remembers none. Optional, defaults to 10000.
+         */
+        PARTICIPANT_CACHE_SIZE,
+        /**
+         * The number of threads decrypting, handling and encrypting the
+         * messages of clients, apart from the threads doing blocking I/O.
+         * Optional, defaults to the number of available processors.
+         */
+        CRYPTO_WORKER_THREADS,
+        /**
+         * The maximum number of crypto packers, which is the number of
+         * messages that can be encrypted or decrypted at the same time.
+         * Optional, defaults to twice the number of processing lanes.
+         */
+        CRYPTO_PACKER_POOL_MAX,
+        /**
+         * The number of crypto packers that are created when the server starts
+         * and kept idle afterwards. Optional, defaults to the number of
+         * processing lanes.
+         */
+        CRYPTO_PACKER_POOL_MIN_IDLE,
+        /**
+         * Whether every processing lane owns a crypto packer, instead of
+         * borrowing one from the pool for every message. The pool is still
+         * used for messages that are not processed on a lane. Optional,
+         * defaults to false.
+         */
+        CRYPTO_PACKER_LANE_AFFINE,
+        /**
+         * The number of worker threads handling the requests received by the
+         * HTTP server. Optional, defaults to the number of available
+         * processors.
+         */
+        HTTP_INGESTION_WORKERS,
+        /**
+         * The number of threads of the HTTP server that read and parse the
+         * requests of the accepted connections. Optional, defaults to the
+         * number of available processors.
+         */
+        HTTP_TRANSPORT_THREADS,
+        /**
+         * The number of threads of the HTTP server that wait for incoming data
+         * on the accepted connections. Optional, defaults to a quarter of the
+         * number of available processors, but at least 1.
+         */
+        HTTP_SELECTOR_THREADS,
+        /**
+         * The maximum number of received HTTP requests waiting for a worker.
+         * When this limit is reached, further requests are answered with
+         * {@code 503 Service Unavailable}. Optional, defaults to 1024.
+         */
+        HTTP_INGESTION_QUEUE_SIZE,
+        /**
+         * The maximum size in bytes of a HTTP request body. Larger requests are
+         * refused before their content is decoded. Optional, defaults to 1 MiB.
+         */
+        HTTP_MAX_BODY_SIZE,
+        /**
+         * The maximum number of persistent connections to the same remote
+         * server. Optional, defaults to 4.
+         */
+        HTTP_CLIENT_MAX_CONNECTIONS_PER_HOST,
+        /**
+         * The maximum number of persistent connections to remote servers in
+         * total. Optional, defaults to 64.
+         */
+        HTTP_CLIENT_MAX_CONNECTIONS,
+        /**
+         * The time in milliseconds after which an unused connection to a remote
+         * server is closed. Optional, defaults to 30000.
+         */
+        HTTP_CLIENT_IDLE_TIMEOUT,
+        /**
+         * The time in milliseconds an outgoing message waits for further
+         * messages to the same server, so that they can be sent together.
+         * Servers that do not support batches can only receive single
+         * messages, so this should only be enabled if all servers support it.
+         * Optional, defaults to 0 (disabled).
+         */
+        HTTP_BATCH_LINGER,
+        /**
+         * The maximum number of messages sent together to a server. Optional,
+         * defaults to 64.
+         */
+        HTTP_BATCH_MAX_MESSAGES,
+        /**
+         * The directory in which outgoing messages are stored until they are
+         * delivered. Optional, defaults to {@code outbox} in the configuration
+         * directory.
+         */
+        HTTP_OUTBOX_DIRECTORY,
+        /**
+         * The size in bytes of a single outbox segment file. Optional, defaults
+         * to 16 MiB.
+         */
+        HTTP_OUTBOX_SEGMENT_SIZE,
+        /**
+         * The number of failed attempts after which an outgoing message is
+         * dropped. Optional, defaults to 1000.
+         */
+        HTTP_OUTBOX_MAX_ATTEMPTS,
+        /**
+         * The time in milliseconds after which an outgoing message that could
+         * not be delivered is dropped. Optional, defaults to 86400000 (one
+         * day).
+         */
+        HTTP_OUTBOX_TIME_TO_LIVE,
+        /**
+         * The time in milliseconds before a message is sent again after the
+         * first failed attempt. It doubles with every further failure.
+         * Optional, defaults to 500.
+         */
+        HTTP_RETRY_INITIAL_BACKOFF,
+        /**
+         * The maximum time in milliseconds before a failed message is sent
+         * again. Optional, defaults to 60000.
+         */
+        HTTP_RETRY_MAX_BACKOFF,
+        /**
+         * The error rate in percent of the requests to a server at which no
+         * further requests are sent to it for a while. Optional, defaults to
+         * 50.
+         */
+        HTTP_CIRCUIT_FAILURE_RATE,
+        /**
+         * The time in milliseconds no requests are sent to a failing server
+         * before a single request probes it again. Optional, defaults to
+         * 30000.
+         */
+        HTTP_CIRCUIT_OPEN_TIME,
+        /**
+         * The time in milliseconds between two log entries with the
+         * statistics of this server, like the state of the crypto packer pool
+         * and the number of throttled, shed and dropped messages. 0 does not
+         * log them. Optional, defaults to 60000.
+         */
+        STATUS_LOG_INTERVAL,
     }
     @Getter
     private final Properties properties;
@@ -101,6 +348,56 @@ public class Config {
         return properties.getProperty(key.toString());
     }
 
+    /**
+     * Gets the value, stored under the given {@link Key}, as integer.
+     *
+     * @param key The key to look for.
+     * @param defaultValue The value to return if the key cannot be found in
+     * this {@link Config}.
+     * @return The value of the key/value pair or {@code defaultValue}.
+     * @throws IllegalStateException If the stored value is not a valid
+     * integer.
+     */
+    public int getInt(Key key, int defaultValue) {
+        String value = get(key);
+
+        if (value == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalStateException("The configuration entry " + key
+                    + " is not a valid integer: " + value);
+        }
+    }
+
+    /**
+     * Gets the value, stored under the given {@link Key}, as boolean.
+     *
+     * @param key The key to look for.
+     * @param defaultValue The value to return if the key cannot be found in
+     * this {@link Config}.
+     * @return The value of the key/value pair or {@code defaultValue}.
+     * @throws IllegalStateException If the stored value is neither
+     * {@code true} nor {@code false}.
+     */
+    public boolean getBoolean(Key key, boolean defaultValue) {
+        String value = get(key);
+
+        if (value == null) {
+            return defaultValue;
+        } else if (value.trim().equalsIgnoreCase("true")) {
+            return true;
+        } else if (value.trim().equalsIgnoreCase("false")) {
+            return false;
+        }
+
+        throw new IllegalStateException("The configuration entry " + key
+                + " is not a valid boolean: " + value);
+    }
+
     /**
      * Tells whether the given {@link Key} is stored in this {@link Config}.
      *
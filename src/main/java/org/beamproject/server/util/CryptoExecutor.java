@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.util;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.beamproject.common.util.Executor;
+import org.beamproject.common.util.Task;
+
+/**
+ * An {@link Executor} for CPU-bound work, like decrypting and encrypting
+ * messages and handshakes. It runs its tasks on a fixed number of threads,
+ * usually one per processor, apart from the {@link Executor} that runs
+ * blocking I/O. So crypto work does not wait behind slow peers, and does not
+ * start more threads than there are processors to run them.
+ * <p>
+ * It is bound with the name {@link #NAME}.
+ */
+public class CryptoExecutor extends Executor {
+
+    public final static String NAME = "crypto";
+    public final static int DEFAULT_THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+    private final ExecutorService workers;
+
+    /**
+     * Creates a new crypto executor.
+     *
+     * @param threadCount The number of threads.
+     * @throws IllegalArgumentException If {@code threadCount} is not positive.
+     */
+    public CryptoExecutor(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("The number of threads has to be positive.");
+        }
+
+        this.workers = Executors.newFixedThreadPool(threadCount, new ThreadFactoryBuilder()
+                .setNameFormat("crypto-worker-%d")
+                .setDaemon(true)
+                .build());
+    }
+
+    @Override
+    public void runAsync(Task task) {
+        workers.execute(task);
+    }
+
+    /**
+     * Stops accepting new tasks. Already submitted tasks are still run.
+     */
+    @Override
+    public void shutdown() {
+        workers.shutdown();
+    }
+
+}
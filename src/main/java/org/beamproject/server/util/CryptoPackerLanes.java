@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.util;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.beamproject.common.crypto.CryptoPacker;
+import org.beamproject.common.crypto.CryptoPackerPool;
+
+/**
+ * Hands out {@link CryptoPacker}s to the tasks of a {@link LaneExecutor}.
+ * <p>
+ * If lane affinity is enabled, every lane owns a packer, which it borrows from
+ * the {@link CryptoPackerPool} when it needs one for the first time and keeps
+ * for good. Since the tasks of a lane run one after another, they can share
+ * the packer without going through the locks of the pool. Tasks that do not
+ * run on a lane, and all tasks if lane affinity is disabled, borrow a packer
+ * from the pool and return it afterwards.
+ */
+public class CryptoPackerLanes {
+
+    private final CryptoPackerPool pool;
+    private final AtomicReferenceArray<CryptoPacker> packers;
+
+    /**
+     * Creates new crypto packer lanes.
+     *
+     * @param pool The pool to borrow the packers from.
+     * @param laneCount The number of lanes of the {@link LaneExecutor}.
+     * @param isLaneAffine Whether every lane owns a packer.
+     */
+    public CryptoPackerLanes(CryptoPackerPool pool, int laneCount, boolean isLaneAffine) {
+        this.pool = pool;
+        this.packers = isLaneAffine ? new AtomicReferenceArray<CryptoPacker>(laneCount) : null;
+    }
+
+    /**
+     * Gets a packer for a task with the given lane key. The packer has to be
+     * given back with {@link #release(String, CryptoPacker)}.
+     *
+     * @param laneKey The key of the lane the calling task runs on, or
+     * {@code null} if it does not run on a lane.
+     * @return The packer.
+     * @throws Exception If no packer could be borrowed from the pool.
+     */
+    public CryptoPacker acquire(String laneKey) throws Exception {
+        if (packers == null || laneKey == null) {
+            return pool.borrowObject();
+        }
+
+        int index = LaneExecutor.indexOf(laneKey, packers.length());
+        CryptoPacker packer = packers.get(index);
+
+        if (packer == null) {
+            packer = pool.borrowObject();
+            packers.set(index, packer);
+        }
+
+        return packer;
+    }
+
+    /**
+     * Gives back a packer gotten with {@link #acquire(String)}.
+     *
+     * @param laneKey The same key given to {@link #acquire(String)}.
+     * @param packer The packer, may be {@code null}.
+     */
+    public void release(String laneKey, CryptoPacker packer) {
+        if (packer == null) {
+            return;
+        }
+
+        if (packers == null || laneKey == null) {
+            pool.returnObject(packer);
+        }
+    }
+
+    /**
+     * Returns the packers owned by the lanes to the pool.
+     */
+    public void shutdown() {
+        if (packers == null) {
+            return;
+        }
+
+        for (int i = 0; i < packers.length(); i++) {
+            CryptoPacker packer = packers.getAndSet(i, null);
+
+            if (packer != null) {
+                pool.returnObject(packer);
+            }
+        }
+    }
+
+}
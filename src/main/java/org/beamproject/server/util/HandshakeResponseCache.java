@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.nio.ByteBuffer;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import java.util.concurrent.atomic.AtomicLong;
+import org.beamproject.common.crypto.Handshake;
+import static org.beamproject.common.message.Field.Cnt.NONCE;
+import static org.beamproject.common.message.Field.Cnt.PUBLIC_KEY;
+import org.beamproject.common.message.Message;
+
+/**
+ * Remembers the encrypted responses to the challenges of a {@link Handshake}
+ * for a short time. A client that does not get a response in time sends the
+ * same challenge again. Such a retransmission is answered with the response
+ * that was already produced, instead of a new handshake.
+ * <p>
+ * A challenge is identified by its public key and its nonce. The cache is
+ * bounded in size and forgets a response after a fixed time.
+ */
+public class HandshakeResponseCache {
+
+    public final static int DEFAULT_SIZE = 10000;
+    public final static int DEFAULT_EXPIRY_MILLIS = 30000;
+    private final Cache<ByteBuffer, byte[]> responses;
+    private final AtomicLong hitCount = new AtomicLong();
+
+    /**
+     * Creates a new cache.
+     *
+     * @param size The maximum number of remembered responses, 0 remembers
+     * none.
+     * @param expiryMillis The time in milliseconds a response is remembered.
+     * @throws IllegalArgumentException If a value is negative.
+     */
+    public HandshakeResponseCache(int size, long expiryMillis) {
+        if (size < 0 || expiryMillis < 0) {
+            throw new IllegalArgumentException("The size and the expiry time must not be negative.");
+        }
+
+        this.responses = CacheBuilder.newBuilder()
+                .maximumSize(size)
+                .expireAfterWrite(expiryMillis, MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * Gets the response to a challenge that was received before.
+     *
+     * @param challenge The challenge.
+     * @return The encrypted response, or null if there is none.
+     */
+    public byte[] get(Message challenge) {
+        ByteBuffer key = toKey(challenge);
+
+        if (key == null) {
+            return null;
+        }
+
+        byte[] response = responses.getIfPresent(key);
+
+        if (response != null) {
+            hitCount.incrementAndGet();
+        }
+
+        return response;
+    }
+
+    /**
+     * Remembers the response to the given challenge.
+     *
+     * @param challenge The challenge.
+     * @param response The encrypted response.
+     */
+    public void put(Message challenge, byte[] response) {
+        ByteBuffer key = toKey(challenge);
+
+        if (key != null) {
+            responses.put(key, response);
+        }
+    }
+
+    private ByteBuffer toKey(Message challenge) {
+        byte[] publicKey = challenge.getContent(PUBLIC_KEY);
+        byte[] nonce = challenge.getContent(NONCE);
+
+        if (publicKey == null || nonce == null) {
+            return null;
+        }
+
+        ByteBuffer key = ByteBuffer.allocate(4 + publicKey.length + nonce.length);
+        key.putInt(publicKey.length).put(publicKey).put(nonce).flip();
+        return key;
+    }
+
+    /**
+     * @return The number of challenges answered from this cache so far.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drops inbound messages of clients that are obviously invalid, before any
+ * cryptographic work is done for them. A message is dropped if
+ * <ul>
+ * <li>its size is out of the configured bounds,</li>
+ * <li>its username is empty, too long or contains characters that cannot be
+ * part of an MQTT topic level, or</li>
+ * <li>its sender failed too many times lately.</li>
+ * </ul>
+ * A sender is blocked after {@code badSenderLimit} messages that could not be
+ * decrypted, reported with {@link #reportFailure(String)}, within
+ * {@code blockMillis} after its first failure. The failures are counted in a
+ * fixed window, so further failures do not extend the block.
+ * <p>
+ * Since the username is taken from the topic of a message, anybody can fail
+ * in the name of another sender. A sender that completed a handshake lately,
+ * reported with {@link #reportHandshake(String)}, is therefore never blocked.
+ * Its handshakes are still limited by the {@link RateLimiter}.
+ */
+public class InboundFilter {
+
+    public final static int DEFAULT_MIN_SIZE = 32;
+    public final static int DEFAULT_MAX_SIZE = 256 * 1024;
+    public final static int DEFAULT_BAD_SENDER_LIMIT = 5;
+    public final static int DEFAULT_BLOCK_MILLIS = 60000;
+    public final static int MAX_USERNAME_LENGTH = 256;
+    private final static int MAX_TRACKED_SENDERS = 100000;
+    private final static long TRUST_MINUTES = 10;
+    private final int minSize;
+    private final int maxSize;
+    private final int badSenderLimit;
+    private final Cache<String, AtomicInteger> failures;
+    private final Cache<String, Boolean> trusted;
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    /**
+     * Creates a new filter.
+     *
+     * @param minSize The minimum size of a message in bytes.
+     * @param maxSize The maximum size of a message in bytes.
+     * @param badSenderLimit The number of failures after which a sender is
+     * blocked, 0 never blocks senders.
+     * @param blockMillis The time in milliseconds after the first failure,
+     * until the failures of a sender are forgotten.
+     * @throws IllegalArgumentException If the bounds are negative or the
+     * minimum size is greater than the maximum.
+     */
+    public InboundFilter(int minSize, int maxSize, int badSenderLimit, long blockMillis) {
+        if (minSize < 0 || maxSize < minSize) {
+            throw new IllegalArgumentException("The size bounds are invalid.");
+        } else if (badSenderLimit < 0 || blockMillis < 0) {
+            throw new IllegalArgumentException("The limit and the block time must not be negative.");
+        }
+
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.badSenderLimit = badSenderLimit;
+        this.failures = CacheBuilder.newBuilder()
+                .expireAfterWrite(blockMillis, MILLISECONDS)
+                .maximumSize(MAX_TRACKED_SENDERS)
+                .build();
+        this.trusted = CacheBuilder.newBuilder()
+                .expireAfterWrite(TRUST_MINUTES, MINUTES)
+                .maximumSize(MAX_TRACKED_SENDERS)
+                .build();
+    }
+
+    /**
+     * Tells whether the given message is worth processing.
+     *
+     * @param ciphertext The encrypted message.
+     * @param username The username of the sender.
+     * @return False, if the message should be dropped.
+     */
+    public boolean accept(byte[] ciphertext, String username) {
+        if (ciphertext == null
+                || ciphertext.length < minSize
+                || ciphertext.length > maxSize
+                || !isValidUsername(username)
+                || isBlocked(username)) {
+            droppedCount.incrementAndGet();
+            return false;
+        }
+
+        return true;
+    }
+
+    private boolean isValidUsername(String username) {
+        if (username == null || username.isEmpty() || username.length() > MAX_USERNAME_LENGTH) {
+            return false;
+        }
+
+        for (int i = 0; i < username.length(); i++) {
+            char c = username.charAt(i);
+
+            if (c == '/' || c == '+' || c == '#' || Character.isISOControl(c)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @param username The username of a sender.
+     * @return True, if the sender failed too many times lately and did not
+     * complete a handshake lately.
+     */
+    public boolean isBlocked(String username) {
+        if (badSenderLimit == 0 || trusted.getIfPresent(username) != null) {
+            return false;
+        }
+
+        AtomicInteger count = failures.getIfPresent(username);
+        return count != null && count.get() >= badSenderLimit;
+    }
+
+    /**
+     * Reports that a message of the given sender could not be decrypted.
+     *
+     * @param username The username of the sender.
+     */
+    public void reportFailure(String username) {
+        if (badSenderLimit == 0 || username == null) {
+            return;
+        }
+
+        AtomicInteger count = failures.asMap().putIfAbsent(username, new AtomicInteger(1));
+
+        if (count != null) {
+            count.incrementAndGet();
+        }
+    }
+
+    /**
+     * Reports that the given sender completed a handshake, so that it is not
+     * blocked for the next minutes.
+     *
+     * @param username The username of the sender.
+     */
+    public void reportHandshake(String username) {
+        if (username != null) {
+            trusted.put(username, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * @return The number of messages dropped so far.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.util;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.beamproject.common.util.Executor;
+import org.beamproject.common.util.Task;
+
+/**
+ * Runs {@link Task}s on a fixed number of lanes on top of an {@link Executor}.
+ * Every task is assigned to a lane by a key, for example the username of a
+ * client. The tasks of a lane run one after another in the order they were
+ * submitted, while different lanes run in parallel. So the tasks of the same
+ * key never race, without a global lock.
+ * <p>
+ * A lane does not own a thread. It occupies a thread of the {@link Executor}
+ * only while it has tasks, and gives it back after
+ * {@link #MAX_TASKS_PER_RUN} tasks, so that busy lanes do not starve others.
+ */
+public class LaneExecutor {
+
+    public final static int DEFAULT_LANE_COUNT = Runtime.getRuntime().availableProcessors();
+    public final static int MAX_TASKS_PER_RUN = 64;
+    private final Executor executor;
+    private final Lane[] lanes;
+
+    /**
+     * Creates a new lane executor.
+     *
+     * @param executor The executor running the lanes.
+     * @param laneCount The number of lanes.
+     * @throws IllegalArgumentException If {@code laneCount} is not positive.
+     */
+    public LaneExecutor(Executor executor, int laneCount) {
+        if (laneCount < 1) {
+            throw new IllegalArgumentException("The number of lanes has to be positive.");
+        }
+
+        this.executor = executor;
+        this.lanes = new Lane[laneCount];
+
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new Lane();
+        }
+    }
+
+    /**
+     * Runs the given task on the lane of the given key, after all tasks
+     * submitted before with a key of the same lane.
+     *
+     * @param key The key that selects the lane.
+     * @param task The task to run.
+     */
+    public void runAsync(String key, Task task) {
+        lanes[indexOf(key, lanes.length)].add(task);
+    }
+
+    /**
+     * Tells to which lane the given key belongs. This is the partition
+     * function documented at {@code PartitionedClientCarrier.partitionOf},
+     * which clients rely on, so it must not be changed.
+     *
+     * @param key The key, may be {@code null}.
+     * @param laneCount The number of lanes.
+     * @return The index of the lane, between 0 and {@code laneCount - 1}.
+     */
+    public static int indexOf(String key, int laneCount) {
+        if (key == null) {
+            return 0;
+        }
+
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return (hash & Integer.MAX_VALUE) % laneCount;
+    }
+
+    /**
+     * @return The number of lanes.
+     */
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    /**
+     * The tasks of a single lane.
+     */
+    private class Lane extends Task {
+
+        private final ConcurrentLinkedQueue<Task> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean isScheduled = new AtomicBoolean();
+
+        void add(Task task) {
+            tasks.offer(task);
+            schedule();
+        }
+
+        private void schedule() {
+            if (isScheduled.compareAndSet(false, true)) {
+                executor.runAsync(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                Task task;
+
+                for (int i = 0; i < MAX_TASKS_PER_RUN && (task = tasks.poll()) != null; i++) {
+                    task.run();
+                }
+            } finally {
+                isScheduled.set(false);
+
+                if (!tasks.isEmpty()) {
+                    schedule();
+                }
+            }
+        }
+    }
+
+}
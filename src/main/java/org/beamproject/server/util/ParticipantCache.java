@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.beamproject.common.Participant;
+import static org.beamproject.common.crypto.EccKeyPairGenerator.fromPublicKey;
+import org.beamproject.common.util.ComparableBytes;
+
+/**
+ * Remembers the {@link Participant}s restored from the public keys of clients,
+ * so that the key of a client that comes back is not decoded again.
+ * <p>
+ * The cache is thread-safe and bounded in size; the least recently used
+ * participants are evicted first.
+ */
+public class ParticipantCache {
+
+    public final static int DEFAULT_SIZE = 10000;
+    private final Cache<ComparableBytes, Participant> participants;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param size The maximum number of remembered participants, 0 remembers
+     * none.
+     * @throws IllegalArgumentException If the size is negative.
+     */
+    public ParticipantCache(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("The size must not be negative.");
+        }
+
+        this.participants = CacheBuilder.newBuilder()
+                .maximumSize(size)
+                .build();
+    }
+
+    /**
+     * Gets the participant with the given public key.
+     *
+     * @param publicKeyBytes The encoded public key.
+     * @return The participant, which only has a public key.
+     * @throws IllegalArgumentException If the public key could not be decoded.
+     * @throws IllegalStateException If the public key could not be decoded.
+     */
+    public Participant get(byte[] publicKeyBytes) {
+        ComparableBytes key = new ComparableBytes(publicKeyBytes);
+        Participant participant = participants.getIfPresent(key);
+
+        if (participant == null) {
+            participant = new Participant(fromPublicKey(publicKeyBytes));
+            participants.put(new ComparableBytes(publicKeyBytes.clone()), participant);
+        }
+
+        return participant;
+    }
+
+    /**
+     * @return The number of remembered participants.
+     */
+    public long size() {
+        return participants.size();
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.util;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import lombok.Getter;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+
+/**
+ * A snapshot of the state of a {@link GenericObjectPool}, like the pool of
+ * crypto packers. The rate objects are created at can be computed from two
+ * snapshots with {@link #getCreationRate(PoolStatistics)}.
+ */
+public class PoolStatistics {
+
+    @Getter
+    private final int active;
+    @Getter
+    private final int idle;
+    @Getter
+    private final int waiters;
+    @Getter
+    private final long created;
+    @Getter
+    private final long borrowed;
+    @Getter
+    private final long meanBorrowWaitMillis;
+    @Getter
+    private final long maxBorrowWaitMillis;
+    private final long takenNanos;
+
+    /**
+     * Takes a snapshot of the given pool.
+     *
+     * @param pool The pool.
+     */
+    public PoolStatistics(GenericObjectPool<?> pool) {
+        this.active = pool.getNumActive();
+        this.idle = pool.getNumIdle();
+        this.waiters = pool.getNumWaiters();
+        this.created = pool.getCreatedCount();
+        this.borrowed = pool.getBorrowedCount();
+        this.meanBorrowWaitMillis = pool.getMeanBorrowWaitTimeMillis();
+        this.maxBorrowWaitMillis = pool.getMaxBorrowWaitTimeMillis();
+        this.takenNanos = System.nanoTime();
+    }
+
+    /**
+     * @param earlier A snapshot of the same pool taken before this one.
+     * @return The number of objects created per second between both
+     * snapshots.
+     */
+    public double getCreationRate(PoolStatistics earlier) {
+        long elapsedNanos = takenNanos - earlier.takenNanos;
+
+        return elapsedNanos <= 0
+                ? 0
+                : (created - earlier.created) * (double) SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "active: " + active
+                + ", idle: " + idle
+                + ", waiters: " + waiters
+                + ", created: " + created
+                + ", borrowed: " + borrowed
+                + ", mean borrow wait: " + meanBorrowWaitMillis + " ms"
+                + ", max borrow wait: " + maxBorrowWaitMillis + " ms";
+    }
+
+}
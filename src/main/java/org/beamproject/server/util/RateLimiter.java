@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.util;
+
+import java.util.Arrays;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Limits the rate of requests per key, for example per username or per public
+ * key of a client, with a token bucket of {@code burst} tokens that refills
+ * with {@code ratePerMinute} tokens per minute.
+ * <p>
+ * The buckets are striped: A key is hashed onto one of a fixed number of
+ * buckets, so the memory used does not grow with the number of keys. Keys
+ * sharing a bucket share its tokens. A bucket is stored as the time its
+ * tokens are used up (generic cell rate algorithm) and updated with a
+ * compare-and-set, without a lock.
+ */
+public class RateLimiter {
+
+    public final static String USERNAME = "username";
+    public final static String PUBLIC_KEY = "public-key";
+    public final static int DEFAULT_STRIPE_COUNT = 4096;
+    public final static int DEFAULT_USERNAME_RATE = 30;
+    public final static int DEFAULT_USERNAME_BURST = 5;
+    public final static int DEFAULT_PUBLIC_KEY_RATE = 10;
+    public final static int DEFAULT_PUBLIC_KEY_BURST = 3;
+    private final AtomicLongArray buckets;
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final AtomicLong throttledCount = new AtomicLong();
+
+    /**
+     * Creates a new rate limiter with {@link #DEFAULT_STRIPE_COUNT} buckets.
+     *
+     * @param ratePerMinute The number of requests per key and minute, 0 does
+     * not limit the rate.
+     * @param burst The number of requests a key may make at once.
+     */
+    public RateLimiter(int ratePerMinute, int burst) {
+        this(ratePerMinute, burst, DEFAULT_STRIPE_COUNT);
+    }
+
+    /**
+     * Creates a new rate limiter.
+     *
+     * @param ratePerMinute The number of requests per key and minute, 0 does
+     * not limit the rate.
+     * @param burst The number of requests a key may make at once.
+     * @param stripeCount The number of buckets.
+     * @throws IllegalArgumentException If a value is negative, or the burst or
+     * the number of buckets are not positive.
+     */
+    public RateLimiter(int ratePerMinute, int burst, int stripeCount) {
+        if (ratePerMinute < 0 || burst < 1 || stripeCount < 1) {
+            throw new IllegalArgumentException("The rate must not be negative, the burst and the stripe count have to be positive.");
+        }
+
+        this.buckets = new AtomicLongArray(ratePerMinute == 0 ? 0 : stripeCount);
+        this.intervalNanos = ratePerMinute == 0 ? 0 : MINUTES.toNanos(1) / ratePerMinute;
+        this.toleranceNanos = intervalNanos * (burst - 1);
+    }
+
+    /**
+     * Takes a token from the bucket of the given key.
+     *
+     * @param key The key, may be {@code null}.
+     * @return False, if the key exceeded its rate.
+     */
+    public boolean tryAcquire(String key) {
+        return tryAcquire(key == null ? 0 : key.hashCode());
+    }
+
+    /**
+     * Takes a token from the bucket of the given key.
+     *
+     * @param key The key, may be {@code null}.
+     * @return False, if the key exceeded its rate.
+     */
+    public boolean tryAcquire(byte[] key) {
+        return tryAcquire(Arrays.hashCode(key));
+    }
+
+    private boolean tryAcquire(int hash) {
+        if (intervalNanos == 0) {
+            return true;
+        }
+
+        hash ^= hash >>> 16;
+        int index = (hash & Integer.MAX_VALUE) % buckets.length();
+
+        while (true) {
+            long now = System.nanoTime();
+            long usedUp = buckets.get(index);
+            long start = usedUp == 0 || usedUp - now < 0 ? now : usedUp;
+
+            if (start - now > toleranceNanos) {
+                throttledCount.incrementAndGet();
+                return false;
+            }
+
+            if (buckets.compareAndSet(index, usedUp, start + intervalNanos)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return The number of requests refused so far.
+     */
+    public long getThrottledCount() {
+        return throttledCount.get();
+    }
+
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import org.beamproject.common.Participant;
+import org.beamproject.common.Session;
+import org.beamproject.common.carrier.MessageException;
+import static org.beamproject.common.crypto.BouncyCastleIntegrator.PROVIDER_NAME;
+import org.beamproject.common.crypto.CryptoPacker;
+import org.beamproject.common.message.Field;
+import org.beamproject.common.message.Message;
+
+/**
+ * Packs and encrypts {@link Message}s of established {@link Session}s with
+ * their session key, instead of the asymmetric encryption of the
+ * {@link CryptoPacker}.
+ * <p>
+ * A session frame looks like this:
+ * <pre>
+ * | marker (1) | session id (16) | nonce (12) | AES-GCM ciphertext and tag |
+ * </pre> The session id is derived from the session key with
+ * {@link #toSessionId(byte[])}, so both sides know it after the handshake.
+ * The marker, the session id and the username of the client, which is part of
+ * the MQTT topic of the frame, are authenticated as additional data. So a
+ * frame that is published to the topic of another client cannot be decrypted.
+ * The plaintext contains the content fields of the message, each as name and
+ * value prefixed with their lengths.
+ * <p>
+ * The nonce consists of the sender, {@link #SENDER_CLIENT} or
+ * {@link #SENDER_SERVER} as 4 bytes, and a counter as 8 bytes, which each
+ * side starts at 0 and increments with every frame of the session. A frame
+ * whose counter has already been received, or which is
+ * {@link #REPLAY_WINDOW} or more frames older than the newest one, is
+ * rejected as a replay. So is a frame of the server sent back to it.
+ * <p>
+ * The ciphertext of the {@link CryptoPacker} may start with the marker too,
+ * so a frame is only taken for a session frame if its session id belongs to
+ * an existing session.
+ */
+@Singleton
+public class SessionPacker {
+
+    public final static byte MARKER = (byte) 0xB5;
+    public final static int SESSION_ID_LENGTH = 16;
+    public final static int NONCE_LENGTH = 12;
+    public final static int TAG_LENGTH = 16;
+    public final static int HEADER_LENGTH = 1 + SESSION_ID_LENGTH;
+    public final static int SENDER_CLIENT = 1;
+    public final static int SENDER_SERVER = 2;
+    public final static int REPLAY_WINDOW = 64;
+    private final static String CIPHER = "AES/GCM/NoPadding";
+    private final static Charset UTF_8 = Charset.forName("UTF-8");
+    private final static byte[] ID_LABEL = "beam-session-id".getBytes(UTF_8);
+    private final static byte[] KEY_LABEL = "beam-session-key".getBytes(UTF_8);
+    private final static Map<String, Field.Cnt> FIELDS = new HashMap<>();
+    private final SessionStorage sessionStorage;
+    private final Cache<Session, Counters> counters = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build();
+    private final ThreadLocal<Cipher> ciphers = new ThreadLocal<Cipher>() {
+        @Override
+        protected Cipher initialValue() {
+            try {
+                return Cipher.getInstance(CIPHER, PROVIDER_NAME);
+            } catch (GeneralSecurityException ex) {
+                throw new IllegalStateException("The cipher " + CIPHER + " is not available: " + ex.getMessage());
+            }
+        }
+    };
+
+    static {
+        for (Field.Cnt field : Field.Cnt.values()) {
+            FIELDS.put(field.toString(), field);
+        }
+    }
+
+    @Inject
+    public SessionPacker(SessionStorage sessionStorage) {
+        this.sessionStorage = sessionStorage;
+    }
+
+    /**
+     * Tells whether the given frame is a session frame and looks up its
+     * session.
+     *
+     * @param frame The received frame.
+     * @return The session of the frame, or null if it is not a session frame.
+     */
+    public Session findSession(byte[] frame) {
+        if (frame == null
+                || frame.length < HEADER_LENGTH + NONCE_LENGTH + TAG_LENGTH
+                || frame[0] != MARKER) {
+            return null;
+        }
+
+        return sessionStorage.getSessionById(Arrays.copyOfRange(frame, 1, HEADER_LENGTH));
+    }
+
+    /**
+     * Decrypts and authenticates the given session frame and unpacks the
+     * message in it.
+     *
+     * @param frame The session frame.
+     * @param session The session found with {@link #findSession(byte[])}.
+     * @param username The username of the client, taken from the topic.
+     * @param recipient The recipient of the message.
+     * @return The message.
+     * @throws MessageException If the frame could not be decrypted or
+     * authenticated, has not been sent by a client or for another username,
+     * has been replayed, or the message is malformed.
+     */
+    public Message decryptAndUnpack(byte[] frame, Session session, String username, Participant recipient) {
+        ByteBuffer nonce = ByteBuffer.wrap(frame, HEADER_LENGTH, NONCE_LENGTH);
+
+        if (nonce.getInt() != SENDER_CLIENT) {
+            throw new MessageException("The session frame has not been sent by a client.");
+        }
+
+        try {
+            Cipher cipher = ciphers.get();
+            cipher.init(Cipher.DECRYPT_MODE, toKey(session), new GCMParameterSpec(TAG_LENGTH * 8, frame, HEADER_LENGTH, NONCE_LENGTH));
+            updateAAD(cipher, frame, username);
+            int offset = HEADER_LENGTH + NONCE_LENGTH;
+            byte[] plaintext = cipher.doFinal(frame, offset, frame.length - offset);
+
+            if (!getCounters(session).tryReceive(nonce.getLong())) {
+                throw new MessageException("The session frame has been replayed.");
+            }
+
+            return unpack(plaintext, recipient);
+        } catch (GeneralSecurityException ex) {
+            throw new MessageException("Could not decrypt the session frame: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Packs the given message and encrypts it with the key of the given
+     * session.
+     *
+     * @param message The message.
+     * @param session The session.
+     * @param username The username of the client, taken from the topic.
+     * @return The session frame.
+     * @throws IllegalStateException If the message could not be encrypted.
+     */
+    public byte[] packAndEncrypt(Message message, Session session, String username) {
+        return packAndEncrypt(message, session, username, SENDER_SERVER);
+    }
+
+    /**
+     * Packs the given message and encrypts it as the given sender, like a
+     * client does.
+     */
+    byte[] packAndEncrypt(Message message, Session session, String username, int sender) {
+        try {
+            byte[] plaintext = pack(message);
+            byte[] frame = new byte[HEADER_LENGTH + NONCE_LENGTH + plaintext.length + TAG_LENGTH];
+            frame[0] = MARKER;
+            System.arraycopy(toSessionId(session.getKey()), 0, frame, 1, SESSION_ID_LENGTH);
+            byte[] nonce = ByteBuffer.allocate(NONCE_LENGTH)
+                    .putInt(sender)
+                    .putLong(getCounters(session).sent.getAndIncrement())
+                    .array();
+            System.arraycopy(nonce, 0, frame, HEADER_LENGTH, NONCE_LENGTH);
+
+            Cipher cipher = ciphers.get();
+            cipher.init(Cipher.ENCRYPT_MODE, toKey(session), new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+            updateAAD(cipher, frame, username);
+            cipher.doFinal(plaintext, 0, plaintext.length, frame, HEADER_LENGTH + NONCE_LENGTH);
+
+            return frame;
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("Could not encrypt the session frame: " + ex.getMessage());
+        }
+    }
+
+    private void updateAAD(Cipher cipher, byte[] frame, String username) {
+        cipher.updateAAD(frame, 0, HEADER_LENGTH);
+        cipher.updateAAD(username.getBytes(UTF_8));
+    }
+
+    private byte[] pack(Message message) {
+        Map<String, byte[]> content = message.getContent();
+        int length = 4;
+
+        for (Map.Entry<String, byte[]> entry : content.entrySet()) {
+            length += 2 + entry.getKey().getBytes(UTF_8).length + 4 + entry.getValue().length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.putInt(content.size());
+
+        for (Map.Entry<String, byte[]> entry : content.entrySet()) {
+            byte[] name = entry.getKey().getBytes(UTF_8);
+            buffer.putShort((short) name.length).put(name);
+            buffer.putInt(entry.getValue().length).put(entry.getValue());
+        }
+
+        return buffer.array();
+    }
+
+    private Message unpack(byte[] plaintext, Participant recipient) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(plaintext);
+            Message message = new Message();
+            int count = buffer.getInt();
+
+            for (int i = 0; i < count; i++) {
+                byte[] name = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(name);
+                byte[] value = new byte[buffer.getInt()];
+                buffer.get(value);
+                Field.Cnt field = FIELDS.get(new String(name, UTF_8));
+
+                if (field == null) {
+                    throw new MessageException("The session frame contains an unknown field.");
+                }
+
+                message.putContent(field, value);
+            }
+
+            message.setRecipient(recipient);
+            return message;
+        } catch (BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException ex) {
+            throw new MessageException("The session frame is malformed.");
+        }
+    }
+
+    private Counters getCounters(Session session) {
+        Counters current = counters.getIfPresent(session);
+
+        if (current == null) {
+            Counters created = new Counters();
+            current = counters.asMap().putIfAbsent(session, created);
+            return current == null ? created : current;
+        }
+
+        return current;
+    }
+
+    private SecretKeySpec toKey(Session session) throws GeneralSecurityException {
+        return new SecretKeySpec(digest(KEY_LABEL, session.getKey()), "AES");
+    }
+
+    /**
+     * Derives the id of a session from its key.
+     *
+     * @param sessionKey The session key.
+     * @return The first {@link #SESSION_ID_LENGTH} bytes of the SHA-256 hash
+     * of a label and the key.
+     */
+    public static byte[] toSessionId(byte[] sessionKey) {
+        try {
+            return Arrays.copyOf(digest(ID_LABEL, sessionKey), SESSION_ID_LENGTH);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("SHA-256 is not available: " + ex.getMessage());
+        }
+    }
+
+    private static byte[] digest(byte[] label, byte[] key) throws GeneralSecurityException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(label);
+        return digest.digest(key);
+    }
+
+    /**
+     * The counter of the frames sent in a session, and the counters of the
+     * last {@link #REPLAY_WINDOW} frames received.
+     */
+    private static class Counters {
+
+        private final AtomicLong sent = new AtomicLong();
+        private long highestReceived = -1;
+        private long receivedBits;
+
+        /**
+         * Records the counter of a received frame.
+         *
+         * @return False, if the counter has been received before or is too
+         * old to tell.
+         */
+        synchronized boolean tryReceive(long counter) {
+            if (counter < 0) {
+                return false;
+            } else if (counter > highestReceived) {
+                long shift = counter - highestReceived;
+                receivedBits = shift >= REPLAY_WINDOW ? 1 : receivedBits << shift | 1;
+                highestReceived = counter;
+                return true;
+            }
+
+            long age = highestReceived - counter;
+
+            if (age >= REPLAY_WINDOW || (receivedBits & 1L << age) != 0) {
+                return false;
+            }
+
+            receivedBits |= 1L << age;
+            return true;
+        }
+    }
+
+}
@@ -18,6 +18,7 @@
  */
 package org.beamproject.server.util;
 
+import com.google.inject.Singleton;
 import java.util.concurrent.ConcurrentHashMap;
 import org.beamproject.common.Participant;
 import org.beamproject.common.Session;
@@ -25,13 +26,17 @@ import org.beamproject.common.util.ComparableBytes;
 
 /**
  * A {@link SessionStorage} stores {@link Session}s in a thread-safe way.
+ * Sessions can be looked up by their key and by their id, which is derived from
+ * the key with {@link SessionPacker#toSessionId(byte[])}.
  *
  * @see Session
  */
+@Singleton
 public class SessionStorage {
 
     private static final long serialVersionUID = 1L;
     final ConcurrentHashMap<ComparableBytes, Session> sessions = new ConcurrentHashMap<>();
+    final ConcurrentHashMap<ComparableBytes, Session> sessionsById = new ConcurrentHashMap<>();
 
     /**
      * Tells whether a {@link Session} for the the given session key is existing
@@ -56,7 +61,9 @@ public class SessionStorage {
      * @param sessionKey The session key to set.
      */
     public void setSession(Participant remoteParticipant, byte[] sessionKey) {
-        sessions.put(new ComparableBytes(sessionKey), new Session(remoteParticipant, sessionKey));
+        Session session = new Session(remoteParticipant, sessionKey);
+        sessions.put(new ComparableBytes(sessionKey), session);
+        sessionsById.put(new ComparableBytes(SessionPacker.toSessionId(sessionKey)), session);
     }
 
     /**
@@ -75,6 +82,20 @@ public class SessionStorage {
         throw new IllegalStateException("Could not find a session with the given session key.");
     }
 
+    /**
+     * Gets the {@link Session} with this id.
+     *
+     * @param sessionId The id of the session.
+     * @return The {@link Session} object, or null if there is none.
+     */
+    public Session getSessionById(byte[] sessionId) {
+        if (sessionId == null) {
+            return null;
+        }
+
+        return sessionsById.get(new ComparableBytes(sessionId));
+    }
+
     /**
      * Removes an active {@link Session} with the given key from the storage and
      * invalidates the key and participant of the {@link Session} object.
@@ -85,6 +106,7 @@ public class SessionStorage {
         Session session = sessions.remove(new ComparableBytes(sessionKey));
 
         if (session != null) {
+            sessionsById.remove(new ComparableBytes(SessionPacker.toSessionId(sessionKey)), session);
             session.invalidateSession();
         }
     }
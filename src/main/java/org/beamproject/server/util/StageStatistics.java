@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.util;
+
+import com.google.inject.Singleton;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Collects how often and how long the stages of processing a client message
+ * took. This class is thread-safe and lock-free.
+ */
+@Singleton
+public class StageStatistics {
+
+    private final AtomicLongArray counts = new AtomicLongArray(Stage.values().length);
+    private final AtomicLongArray totalNanos = new AtomicLongArray(Stage.values().length);
+    private final AtomicLongArray maxNanos = new AtomicLongArray(Stage.values().length);
+
+    /**
+     * The stages of processing a message.
+     */
+    public enum Stage {
+
+        /**
+         * Decrypting and unpacking the incoming message.
+         */
+        DECRYPT,
+        /**
+         * Handling the message and producing a response.
+         */
+        HANDLE,
+        /**
+         * Packing and encrypting the response.
+         */
+        ENCRYPT,
+        /**
+         * Handing the response over to the carrier.
+         */
+        PUBLISH
+    }
+
+    /**
+     * Records that the given stage has been finished now.
+     *
+     * @param stage The finished stage.
+     * @param startNanos The value of {@link System#nanoTime()} when the stage
+     * was started.
+     * @return The current value of {@link System#nanoTime()}, which can be
+     * used as start of the next stage.
+     */
+    public long record(Stage stage, long startNanos) {
+        long now = System.nanoTime();
+        long duration = now - startNanos;
+        int index = stage.ordinal();
+        long max;
+
+        counts.incrementAndGet(index);
+        totalNanos.addAndGet(index, duration);
+
+        while (duration > (max = maxNanos.get(index))
+                && !maxNanos.compareAndSet(index, max, duration)) {
+            // retry with the updated maximum
+        }
+
+        return now;
+    }
+
+    /**
+     * @param stage The stage to look up.
+     * @return How often the stage has been finished.
+     */
+    public long getCount(Stage stage) {
+        return counts.get(stage.ordinal());
+    }
+
+    /**
+     * @param stage The stage to look up.
+     * @param unit The unit of the result.
+     * @return The average duration of the stage, or zero if it has never been
+     * finished.
+     */
+    public long getAverage(Stage stage, TimeUnit unit) {
+        long count = getCount(stage);
+
+        return count == 0
+                ? 0
+                : unit.convert(totalNanos.get(stage.ordinal()) / count, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param stage The stage to look up.
+     * @param unit The unit of the result.
+     * @return The longest duration of the stage.
+     */
+    public long getMax(Stage stage, TimeUnit unit) {
+        return unit.convert(maxNanos.get(stage.ordinal()), TimeUnit.NANOSECONDS);
+    }
+
+}
@@ -43,6 +43,8 @@ public class CommandLineView {
 
     private final static String[] OPTION_g = {"g", "generate-key-pair",
         "generate a new key pair and stored it in FILE", "FILE"};
+    private final static String[] OPTION_n = {"n", "count",
+        "generate COUNT key pairs in parallel with -g, stored in numbered files", "COUNT"};
     private final static String[] OPTION_h = {"h", "help", "show this help"};
 
     private final MainModel model;
@@ -73,6 +75,12 @@ public class CommandLineView {
                 .hasArg()
                 .withArgName(OPTION_g[3])
                 .create(OPTION_g[0]));
+        options.addOption(OptionBuilder
+                .withLongOpt(OPTION_n[1])
+                .withDescription(OPTION_n[2])
+                .hasArg()
+                .withArgName(OPTION_n[3])
+                .create(OPTION_n[0]));
         options.addOption(OPTION_h[0], OPTION_h[1], false, OPTION_h[2]);
     }
 
@@ -110,7 +118,15 @@ public class CommandLineView {
         if (commandLine.hasOption(OPTION_g[0])) {
             hasOptions = true;
             String filename = commandLine.getOptionValue(OPTION_g[0]);
-            model.generateKeyPair(filename);
+
+            if (commandLine.hasOption(OPTION_n[0])) {
+                generateKeyPairs(filename, commandLine.getOptionValue(OPTION_n[0]));
+            } else {
+                model.generateKeyPair(filename);
+            }
+        } else if (commandLine.hasOption(OPTION_n[0])) {
+            hasOptions = true;
+            printCommandLineMisusage();
         }
 
         if (commandLine.hasOption(OPTION_h[0])) {
@@ -123,6 +139,14 @@ public class CommandLineView {
         }
     }
 
+    private void generateKeyPairs(String filename, String count) {
+        try {
+            model.generateKeyPairs(filename, Integer.parseInt(count));
+        } catch (NumberFormatException ex) {
+            printCommandLineMisusage();
+        }
+    }
+
     @Subscribe
     public void printMessage(Event event) {
         switch (event) {
@@ -141,6 +165,9 @@ public class CommandLineView {
             case KEY_PAIR_STORED:
                 printKeyPairStoredMessage();
                 break;
+            case KEY_PAIRS_STORED:
+                printKeyPairsStoredMessage();
+                break;
             case CARRIER_EXCEPTION:
                 System.out.println(model.getExecptions().poll());
                 break;
@@ -190,6 +217,15 @@ public class CommandLineView {
         System.out.println(" - " + PRIVATE_KEY + ": The private key encoded as PKCS8, represented as Base58 string.");
     }
 
+    private void printKeyPairsStoredMessage() {
+        long millis = Math.max(1, model.getKeyPairGenerationMillis());
+        System.out.println(model.getStoredKeyPairCount() + " key pairs generated and stored in "
+                + millis + " ms (" + (model.getStoredKeyPairCount() * 1000L / millis)
+                + " key pairs per second).");
+        System.out.println(" - " + PUBLIC_KEY + ": The public key encoded as X509, represented as Base58 string.");
+        System.out.println(" - " + PRIVATE_KEY + ": The private key encoded as PKCS8, represented as Base58 string.");
+    }
+
     private void printServerConfigurationLoaded() {
         System.out.println("Server configruation is complete. Beam address is:");
         System.out.println(model.getServer().getAddress());
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.beamproject.server.carrier.SharedSubscription;
+
+/**
+ * An in-process stand-in for a MQTT broker supporting shared subscriptions.
+ * A message is delivered to every plain subscriber of a matching topic filter,
+ * and to one member of every matching shared group. The member is chosen by
+ * the hash of the topic, as brokers do with a topic-hashing strategy.
+ */
+public class MqttBrokerFake {
+
+    private final List<Subscription> plainSubscriptions = new ArrayList<>();
+    private final Map<String, List<Subscription>> groups = new LinkedHashMap<>();
+
+    public interface Subscriber {
+
+        void receive(byte[] message, String topic);
+    }
+
+    public void subscribe(String subscription, Subscriber subscriber) {
+        Subscription entry = new Subscription(SharedSubscription.getTopicFilter(subscription), subscriber);
+
+        if (SharedSubscription.isShared(subscription)) {
+            String key = SharedSubscription.getGroup(subscription) + " " + entry.filter;
+
+            if (!groups.containsKey(key)) {
+                groups.put(key, new ArrayList<Subscription>());
+            }
+
+            groups.get(key).add(entry);
+        } else {
+            plainSubscriptions.add(entry);
+        }
+    }
+
+    public void publish(String topic, byte[] message) {
+        for (Subscription subscription : plainSubscriptions) {
+            if (matches(subscription.filter, topic)) {
+                subscription.subscriber.receive(message, topic);
+            }
+        }
+
+        for (List<Subscription> members : groups.values()) {
+            if (matches(members.get(0).filter, topic)) {
+                int index = (topic.hashCode() & Integer.MAX_VALUE) % members.size();
+                members.get(index).subscriber.receive(message, topic);
+            }
+        }
+    }
+
+    static boolean matches(String filter, String topic) {
+        String[] filterLevels = filter.split("/", -1);
+        String[] topicLevels = topic.split("/", -1);
+
+        for (int i = 0; i < filterLevels.length; i++) {
+            if (filterLevels[i].equals("#")) {
+                return true;
+            } else if (i >= topicLevels.length) {
+                return false;
+            } else if (!filterLevels[i].equals("+") && !filterLevels[i].equals(topicLevels[i])) {
+                return false;
+            }
+        }
+
+        return filterLevels.length == topicLevels.length;
+    }
+
+    private static class Subscription {
+
+        private final String filter;
+        private final Subscriber subscriber;
+
+        Subscription(String filter, Subscriber subscriber) {
+            this.filter = filter;
+            this.subscriber = subscriber;
+        }
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.carrier;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class BatchFrameTest {
+
+    private final byte[] FIRST = "first".getBytes();
+    private final byte[] SECOND = "the second message".getBytes();
+
+    @Test
+    public void testEncodeAndDecode() {
+        List<byte[]> messages = BatchFrame.decode(BatchFrame.encode(Arrays.asList(FIRST, SECOND)));
+
+        assertEquals(2, messages.size());
+        assertArrayEquals(FIRST, messages.get(0));
+        assertArrayEquals(SECOND, messages.get(1));
+    }
+
+    @Test
+    public void testSlice() {
+        ByteBuffer frame = ByteBuffer.wrap(BatchFrame.encode(Arrays.asList(FIRST, SECOND)));
+        List<ByteBuffer> messages = BatchFrame.slice(frame);
+
+        assertEquals(0, frame.position());
+        assertEquals(2, messages.size());
+        assertEquals(ByteBuffer.wrap(FIRST), messages.get(0));
+        assertEquals(ByteBuffer.wrap(SECOND), messages.get(1));
+        assertTrue(messages.get(1).isReadOnly());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSliceOnTooLongLength() {
+        byte[] frame = BatchFrame.encode(Arrays.asList(FIRST));
+        BatchFrame.slice(ByteBuffer.wrap(frame, 0, frame.length - 1));
+    }
+
+    @Test
+    public void testEncode() {
+        byte[] frame = BatchFrame.encode(Arrays.asList(FIRST));
+
+        assertEquals(4 + FIRST.length, frame.length);
+        assertEquals(FIRST.length, frame[3]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEncodeOnEmptyList() {
+        BatchFrame.encode(new ArrayList<byte[]>());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEncodeOnEmptyMessage() {
+        BatchFrame.encode(Arrays.asList(FIRST, new byte[0]));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecodeOnEmptyFrame() {
+        BatchFrame.decode(new byte[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecodeOnTruncatedPrefix() {
+        BatchFrame.decode(new byte[]{0, 0, 1});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecodeOnTooLongLength() {
+        byte[] frame = BatchFrame.encode(Arrays.asList(FIRST));
+        BatchFrame.decode(Arrays.copyOf(frame, frame.length - 1));
+    }
+
+}
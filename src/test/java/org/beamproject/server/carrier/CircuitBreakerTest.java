@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.carrier;
+
+import static org.beamproject.server.carrier.CircuitBreaker.State.CLOSED;
+import static org.beamproject.server.carrier.CircuitBreaker.State.HALF_OPEN;
+import static org.beamproject.server.carrier.CircuitBreaker.State.OPEN;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+
+    private final String URL = "http://localhost";
+    private final String OTHER_URL = "http://otherhost";
+    private CircuitBreaker breaker;
+
+    @Before
+    public void setUp() {
+        breaker = new CircuitBreaker(4, 50, 60000);
+    }
+
+    private void fail(String url, int times) {
+        for (int i = 0; i < times; i++) {
+            assertTrue(breaker.tryAcquire(url));
+            breaker.onFailure(url);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorOnInvalidFailureRate() {
+        breaker = new CircuitBreaker(4, 101, 1000);
+    }
+
+    @Test
+    public void testTryAcquire() {
+        for (int i = 0; i < 4; i++) {
+            assertTrue(breaker.tryAcquire(URL));
+        }
+
+        assertFalse(breaker.tryAcquire(URL));
+        assertTrue(breaker.tryAcquire(OTHER_URL));
+
+        breaker.onSuccess(URL, 10);
+        assertTrue(breaker.tryAcquire(URL));
+    }
+
+    @Test
+    public void testOnFailure() {
+        fail(URL, 1);
+        assertEquals(2, breaker.getLimit(URL));
+        assertEquals(CLOSED, breaker.getState(URL));
+
+        fail(URL, 3);
+        assertEquals(1, breaker.getLimit(URL));
+        assertEquals(OPEN, breaker.getState(URL));
+        assertFalse(breaker.tryAcquire(URL));
+        assertTrue(breaker.getRetryDelay(URL) > 1000);
+        assertEquals(CLOSED, breaker.getState(OTHER_URL));
+    }
+
+    @Test
+    public void testOnSuccess() {
+        fail(URL, 2);
+        assertEquals(1, breaker.getLimit(URL));
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(breaker.tryAcquire(URL));
+            breaker.onSuccess(URL, 10);
+        }
+
+        assertEquals(4, breaker.getLimit(URL));
+    }
+
+    @Test
+    public void testOnResponseOnServerError() {
+        for (int i = 0; i < 4; i++) {
+            assertTrue(breaker.tryAcquire(URL));
+            breaker.onResponse(URL, 503, 10);
+        }
+
+        assertEquals(OPEN, breaker.getState(URL));
+    }
+
+    @Test
+    public void testOnResponseOnClientError() {
+        for (int i = 0; i < 10; i++) {
+            assertTrue(breaker.tryAcquire(URL));
+            breaker.onResponse(URL, 400, 10);
+        }
+
+        assertEquals(CLOSED, breaker.getState(URL));
+        assertEquals(4, breaker.getLimit(URL));
+    }
+
+    @Test
+    public void testOnSuccessOnSlowResponse() {
+        assertTrue(breaker.tryAcquire(URL));
+        breaker.onSuccess(URL, 10);
+
+        assertTrue(breaker.tryAcquire(URL));
+        breaker.onSuccess(URL, 100);
+
+        assertEquals(2, breaker.getLimit(URL));
+    }
+
+    @Test
+    public void testHalfOpen() throws InterruptedException {
+        breaker = new CircuitBreaker(4, 50, 5);
+        fail(URL, 4);
+        Thread.sleep(10);
+
+        assertTrue(breaker.tryAcquire(URL));
+        assertEquals(HALF_OPEN, breaker.getState(URL));
+        assertFalse(breaker.tryAcquire(URL));
+
+        breaker.onFailure(URL);
+        assertEquals(OPEN, breaker.getState(URL));
+        Thread.sleep(10);
+
+        assertTrue(breaker.tryAcquire(URL));
+        breaker.onSuccess(URL, 10);
+        assertEquals(CLOSED, breaker.getState(URL));
+    }
+
+}
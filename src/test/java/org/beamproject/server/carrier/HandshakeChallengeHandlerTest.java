@@ -29,6 +29,8 @@ import static org.beamproject.common.message.Field.Cnt.TYP;
 import static org.beamproject.common.message.Field.Cnt.Typ.HS_RESPONSE;
 import org.beamproject.common.message.Message;
 import org.beamproject.server.util.HandshakeStorage;
+import org.beamproject.server.util.ParticipantCache;
+import org.beamproject.server.util.RateLimiter;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import org.junit.Before;
@@ -49,7 +51,7 @@ public class HandshakeChallengeHandlerTest {
         handshakeStorage = new HandshakeStorage<>();
 
         challenger = new HandshakeChallenger(user);
-        handler = new HandshakeChallengeHandler(handshakeStorage);
+        handler = new HandshakeChallengeHandler(handshakeStorage, new RateLimiter(0, 1), new ParticipantCache(16));
     }
 
     @Test(expected = MessageException.class)
@@ -85,4 +87,12 @@ public class HandshakeChallengeHandlerTest {
         challenger.produceSuccess(); // expect no exception to be thrown        
     }
 
+    @Test(expected = MessageException.class)
+    public void testHandleOnExceededRate() {
+        handler = new HandshakeChallengeHandler(handshakeStorage, new RateLimiter(1, 1), new ParticipantCache(16));
+        handler.handle(challenger.produceChallenge(server));
+
+        response = handler.handle(challenger.produceChallenge(server));
+    }
+
 }
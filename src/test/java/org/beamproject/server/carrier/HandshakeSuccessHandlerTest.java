@@ -28,6 +28,7 @@ import static org.beamproject.common.crypto.EccKeyPairGenerator.fromPublicKey;
 import org.beamproject.common.crypto.HandshakeChallenger;
 import org.beamproject.common.crypto.HandshakeResponder;
 import org.beamproject.server.util.HandshakeStorage;
+import org.beamproject.server.util.ParticipantCache;
 import org.beamproject.server.util.SessionStorage;
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -52,7 +53,7 @@ public class HandshakeSuccessHandlerTest {
 
         challenger = new HandshakeChallenger(user);
         responder = new HandshakeResponder(server);
-        handler = new HandshakeSuccessHandler(handshakeStorage, sessionStorage);
+        handler = new HandshakeSuccessHandler(handshakeStorage, sessionStorage, new ParticipantCache(16));
 
         setUpSuccess();
     }
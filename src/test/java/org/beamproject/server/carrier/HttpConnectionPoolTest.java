@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.carrier;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLHandshakeException;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.impl.pool.BasicPoolEntry;
+import org.apache.http.message.BasicHttpRequest;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HttpConnectionPoolTest {
+
+    private final char[] KEY_STORE_PASSWORD = "changeit".toCharArray();
+    private ServerSocket serverSocket;
+    private URL url;
+    private HttpConnectionPool pool;
+
+    @Before
+    public void setUp() throws IOException {
+        serverSocket = new ServerSocket(0, 10, InetAddress.getByName("127.0.0.1"));
+        url = new URL("http://127.0.0.1:" + serverSocket.getLocalPort() + "/");
+        pool = new HttpConnectionPool(2, 2, 60000);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        pool.close();
+        serverSocket.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorOnZeroConnectionsPerHost() {
+        pool = new HttpConnectionPool(0, 1, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorOnZeroIdleTimeout() {
+        pool = new HttpConnectionPool(1, 1, 0);
+    }
+
+    @Test(expected = IOException.class)
+    public void testLeaseOnUnsupportedProtocol() throws IOException {
+        pool.lease(new URL("ftp://127.0.0.1:" + serverSocket.getLocalPort() + "/"));
+    }
+
+    @Test
+    public void testLeaseAndReleaseOnReusableConnection() throws IOException {
+        BasicPoolEntry entry = pool.lease(url);
+        assertEquals(1, pool.getStats().getLeased());
+
+        pool.release(entry, true);
+        assertEquals(0, pool.getStats().getLeased());
+        assertEquals(1, pool.getStats().getAvailable());
+
+        BasicPoolEntry secondEntry = pool.lease(url);
+        assertSame(entry.getConnection(), secondEntry.getConnection());
+        pool.release(secondEntry, true);
+    }
+
+    @Test
+    public void testReleaseOnNotReusableConnection() throws IOException {
+        BasicPoolEntry entry = pool.lease(url);
+        pool.release(entry, false);
+
+        assertEquals(0, pool.getStats().getLeased());
+        assertEquals(0, pool.getStats().getAvailable());
+    }
+
+    @Test
+    public void testEvictIdleConnections() throws IOException, InterruptedException {
+        pool.close();
+        pool = new HttpConnectionPool(1, 1, 1);
+        pool.release(pool.lease(url), true);
+        Thread.sleep(20);
+
+        pool.evictIdleConnections();
+
+        assertEquals(0, pool.getStats().getAvailable());
+    }
+
+    @Test
+    public void testLeaseOnHttpsHost() throws Exception {
+        BasicPoolEntry entry = leaseHttps("127.0.0.1");
+
+        sendRequest(entry.getConnection());
+
+        pool.release(entry, false);
+    }
+
+    @Test(expected = SSLHandshakeException.class)
+    public void testLeaseOnMismatchedCertificate() throws Exception {
+        BasicPoolEntry entry = leaseHttps("localhost");
+
+        sendRequest(entry.getConnection());
+    }
+
+    /**
+     * Leases a connection to a TLS server, whose certificate is trusted, but
+     * only issued for {@code wrong.example.org} and {@code 127.0.0.1}.
+     */
+    private BasicPoolEntry leaseHttps(String host) throws IOException, GeneralSecurityException {
+        SSLContext context = createContext();
+        serverSocket.close();
+        serverSocket = context.getServerSocketFactory().createServerSocket(0, 10, InetAddress.getByName("127.0.0.1"));
+        pool.close();
+        pool = new HttpConnectionPool(1, 1, 60000, context.getSocketFactory());
+        acceptHandshakes();
+
+        return pool.lease(new URL("https://" + host + ":" + serverSocket.getLocalPort() + "/"));
+    }
+
+    private SSLContext createContext() throws IOException, GeneralSecurityException {
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+
+        try (InputStream stream = getClass().getResourceAsStream("test-server.jks")) {
+            keyStore.load(stream, KEY_STORE_PASSWORD);
+        }
+
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(keyStore, KEY_STORE_PASSWORD);
+        TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagers.init(keyStore);
+
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(keyManagers.getKeyManagers(), trustManagers.getTrustManagers(), null);
+        return context;
+    }
+
+    private void acceptHandshakes() {
+        Thread acceptor = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        SSLSocket socket = (SSLSocket) serverSocket.accept();
+
+                        try {
+                            socket.startHandshake();
+                            socket.getInputStream().read();
+                        } catch (IOException ex) {
+                            // the client refused the certificate
+                        }
+                    }
+                } catch (IOException ex) {
+                    // the server socket has been closed
+                }
+            }
+        };
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    private void sendRequest(HttpClientConnection connection) throws Exception {
+        connection.sendRequestHeader(new BasicHttpRequest("GET", "/"));
+        connection.flush();
+    }
+
+}
@@ -18,9 +18,22 @@
  */
 package org.beamproject.server.carrier;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
 import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 import org.beamproject.common.Server;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -28,14 +41,21 @@ public class HttpConnectionTest {
 
     private final URL SERVER_URL = Server.generate().getHttpUrl();
     private final byte[] MESSAGE = "myMessage".getBytes();
+    private HttpConnectionPool pool;
     private HttpConnection connection;
 
     @Before
     public void setUp() {
-        connection = new HttpConnection();
+        pool = new HttpConnectionPool(1, 1, 1000);
+        connection = new HttpConnection(pool);
         connection.log = Logger.getGlobal();
     }
 
+    @After
+    public void tearDown() {
+        connection.close();
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testPostOnNulls() {
         connection.post(null, null);
@@ -51,4 +71,126 @@ public class HttpConnectionTest {
         connection.post(SERVER_URL, null);
     }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void testPostOnEmptyMessage() {
+        connection.post(SERVER_URL, new byte[0]);
+    }
+
+    @Test
+    public void testPostOnReusingConnection() throws IOException {
+        try (KeepAliveServer server = new KeepAliveServer()) {
+            connection.post(server.url, MESSAGE);
+            connection.post(server.url, MESSAGE);
+            connection.post(server.url, MESSAGE);
+
+            assertEquals(1, server.acceptedConnections.get());
+            assertEquals(3, server.receivedRequests.get());
+        }
+    }
+
+    @Test
+    public void testPostOnServiceUnavailable() throws IOException {
+        try (KeepAliveServer server = new KeepAliveServer("HTTP/1.1 503 Service Unavailable\r\n"
+                + "Retry-After: 2\r\nContent-Length: 0\r\n\r\n")) {
+            connection.post(server.url, MESSAGE);
+            fail("The response code has to be reported.");
+        } catch (HttpStatusException ex) {
+            assertEquals(503, ex.getStatusCode());
+            assertEquals(2000, ex.getRetryAfterMillis());
+            assertTrue(ex.isRetryable());
+        }
+    }
+
+    @Test
+    public void testPostOnBadRequest() throws IOException {
+        try (KeepAliveServer server = new KeepAliveServer("HTTP/1.1 400 Bad Request\r\n"
+                + "Content-Length: 0\r\n\r\n")) {
+            connection.post(server.url, MESSAGE);
+            fail("The response code has to be reported.");
+        } catch (HttpStatusException ex) {
+            assertEquals(400, ex.getStatusCode());
+            assertFalse(ex.isRetryable());
+        }
+    }
+
+    /**
+     * Answers every request with the given response, 204 by default, and
+     * keeps the connections open.
+     */
+    private static class KeepAliveServer extends Thread implements AutoCloseable {
+
+        final AtomicInteger acceptedConnections = new AtomicInteger();
+        final AtomicInteger receivedRequests = new AtomicInteger();
+        final ServerSocket serverSocket;
+        final URL url;
+        final String response;
+
+        KeepAliveServer() throws IOException {
+            this("HTTP/1.1 204 No Content\r\n\r\n");
+        }
+
+        KeepAliveServer(String response) throws IOException {
+            this.response = response;
+            serverSocket = new ServerSocket(0, 10, InetAddress.getByName("127.0.0.1"));
+            url = new URL("http://127.0.0.1:" + serverSocket.getLocalPort() + "/beam");
+            setDaemon(true);
+            start();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    final Socket socket = serverSocket.accept();
+                    acceptedConnections.incrementAndGet();
+                    Thread handler = new Thread() {
+                        @Override
+                        public void run() {
+                            serve(socket);
+                        }
+                    };
+                    handler.setDaemon(true);
+                    handler.start();
+                }
+            } catch (IOException ex) {
+                // closed
+            }
+        }
+
+        private void serve(Socket socket) {
+            try (Socket closing = socket) {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+                OutputStream writer = socket.getOutputStream();
+                String line;
+
+                while ((line = reader.readLine()) != null) {
+                    int contentLength = 0;
+
+                    while (!line.isEmpty()) {
+                        if (line.toLowerCase().startsWith("content-length:")) {
+                            contentLength = Integer.parseInt(line.substring(15).trim());
+                        }
+
+                        line = reader.readLine();
+                    }
+
+                    for (int i = 0; i < contentLength; i++) {
+                        reader.read();
+                    }
+
+                    receivedRequests.incrementAndGet();
+                    writer.write(response.getBytes("US-ASCII"));
+                    writer.flush();
+                }
+            } catch (IOException ex) {
+                // connection closed
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverSocket.close();
+        }
+    }
+
 }
@@ -18,26 +18,34 @@
  */
 package org.beamproject.server.carrier;
 
-import org.beamproject.common.carrier.ServerCarrier;
-import org.beamproject.server.ExecutorFake;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Properties;
 import org.beamproject.server.util.Config;
+import static org.beamproject.server.util.Config.Key.SERVER_URL;
 import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertFalse;
 import org.junit.Before;
 import org.junit.Test;
 
 public class HttpServerTest {
 
-    private ServerCarrier carrier;
-    private ExecutorFake executorFake;
+    private ByteBufferServerCarrier carrier;
+    private IngestionPipeline pipeline;
+    private ResponseTemplate template;
     private Config config;
     private HttpServer server;
 
     @Before
     public void setUp() {
-        carrier = createMock(ServerCarrier.class);
+        carrier = createMock(ByteBufferServerCarrier.class);
 
-        executorFake = new ExecutorFake();
-        server = new HttpServer(executorFake, config);
+        pipeline = new IngestionPipeline(1, 1);
+        template = new ResponseTemplate();
+        server = new HttpServer(pipeline, new PostBodyDecoder(1024), template, config);
     }
 
     @Test(expected = IllegalStateException.class)
@@ -56,4 +64,36 @@ public class HttpServerTest {
         server.stop();
     }
 
+    @Test
+    public void testStop() throws IOException {
+        template = createMock(ResponseTemplate.class);
+        template.shutdown();
+        expectLastCall();
+        replay(template);
+        startOnFreePort();
+
+        server.stop();
+
+        verify(template);
+        assertFalse(pipeline.offer(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }));
+    }
+
+    private void startOnFreePort() throws IOException {
+        int port;
+
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        config = new Config(new Properties());
+        config.set(SERVER_URL, "http://localhost:" + port);
+        server = new HttpServer(pipeline, new PostBodyDecoder(1024), template, config);
+        server.setCarrier(carrier);
+        server.start();
+    }
+
 }
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.carrier;
+
+import java.util.concurrent.CountDownLatch;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class IngestionPipelineTest {
+
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final Runnable noop = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+    private final Runnable blocking = new Runnable() {
+        @Override
+        public void run() {
+            started.countDown();
+
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    };
+    private IngestionPipeline pipeline;
+
+    @Before
+    public void setUp() {
+        pipeline = new IngestionPipeline(1, 1);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        pipeline.shutdown();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorOnZeroWorkers() {
+        pipeline = new IngestionPipeline(0, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorOnZeroCapacity() {
+        pipeline = new IngestionPipeline(1, 0);
+    }
+
+    @Test
+    public void testOffer() throws InterruptedException {
+        assertTrue(pipeline.offer(blocking));
+        started.await();
+
+        assertTrue(pipeline.offer(noop));
+        assertEquals(1, pipeline.getQueueDepth());
+        assertEquals(0, pipeline.getRejectedCount());
+    }
+
+    @Test
+    public void testOfferOnFullQueue() throws InterruptedException {
+        assertTrue(pipeline.offer(blocking));
+        started.await();
+        assertTrue(pipeline.offer(noop));
+
+        assertFalse(pipeline.offer(noop));
+        assertFalse(pipeline.offer(noop));
+        assertEquals(1, pipeline.getQueueDepth());
+        assertEquals(1, pipeline.getQueueCapacity());
+        assertEquals(2, pipeline.getRejectedCount());
+    }
+
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.carrier;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MessageBatcherTest {
+
+    private final String URL = "http://localhost";
+    private final String OTHER_URL = "http://otherhost";
+    private final byte[] MESSAGE = "myMessage".getBytes();
+    private final List<String> sentUrls = new CopyOnWriteArrayList<>();
+    private final List<List<byte[]>> sentBatches = new CopyOnWriteArrayList<>();
+    private CountDownLatch sent;
+    private MessageBatcher batcher;
+
+    @Before
+    public void setUp() {
+        sent = new CountDownLatch(1);
+        batcher = createBatcher(0, 1);
+    }
+
+    @After
+    public void tearDown() {
+        batcher.shutdown();
+    }
+
+    private MessageBatcher createBatcher(long lingerMillis, int maxMessages) {
+        MessageBatcher newBatcher = new MessageBatcher(lingerMillis, maxMessages);
+        newBatcher.setSender(new MessageBatcher.Sender() {
+            @Override
+            public void send(String url, List<byte[]> messages) {
+                sentUrls.add(url);
+                sentBatches.add(messages);
+                sent.countDown();
+            }
+        });
+        return newBatcher;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorOnNegativeLinger() {
+        batcher = new MessageBatcher(-1, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorOnZeroMessages() {
+        batcher = new MessageBatcher(1, 0);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAddOnMissingSender() {
+        batcher = new MessageBatcher(0, 1);
+        batcher.add(URL, MESSAGE);
+    }
+
+    @Test
+    public void testAddOnDisabledBatching() {
+        batcher.add(URL, MESSAGE);
+        batcher.add(URL, MESSAGE);
+
+        assertEquals(2, sentBatches.size());
+        assertEquals(1, sentBatches.get(0).size());
+        assertSame(MESSAGE, sentBatches.get(0).get(0));
+    }
+
+    @Test
+    public void testAddOnFullBatch() {
+        batcher = createBatcher(60000, 3);
+
+        batcher.add(URL, MESSAGE);
+        batcher.add(OTHER_URL, MESSAGE);
+        batcher.add(URL, MESSAGE);
+        assertTrue(sentBatches.isEmpty());
+
+        batcher.add(URL, MESSAGE);
+        assertEquals(1, sentBatches.size());
+        assertEquals(URL, sentUrls.get(0));
+        assertEquals(3, sentBatches.get(0).size());
+    }
+
+    @Test
+    public void testAddOnLingerTimeout() throws InterruptedException {
+        batcher = createBatcher(5, 100);
+
+        batcher.add(URL, MESSAGE);
+        batcher.add(URL, MESSAGE);
+
+        assertTrue(sent.await(5, SECONDS));
+        assertEquals(1, sentBatches.size());
+        assertEquals(2, sentBatches.get(0).size());
+    }
+
+    @Test
+    public void testAddOnFailingSender() throws InterruptedException {
+        batcher = new MessageBatcher(5, 100);
+        batcher.setSender(new MessageBatcher.Sender() {
+            @Override
+            public void send(String url, List<byte[]> messages) {
+                throw new IllegalStateException("The outbox is full.");
+            }
+        });
+
+        batcher.add(URL, MESSAGE);
+        batcher.add(URL, MESSAGE);
+
+        for (int i = 0; i < 500 && batcher.getFailedCount() < 2; i++) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(2, batcher.getFailedCount());
+    }
+
+    @Test
+    public void testAddAfterShutdown() {
+        batcher = createBatcher(60000, 100);
+        batcher.shutdown();
+
+        batcher.add(URL, MESSAGE);
+
+        assertEquals(1, sentBatches.size());
+        assertSame(MESSAGE, sentBatches.get(0).get(0));
+    }
+
+    @Test
+    public void testFlush() {
+        batcher = createBatcher(60000, 100);
+        batcher.add(URL, MESSAGE);
+        batcher.add(OTHER_URL, MESSAGE);
+
+        batcher.flush();
+
+        assertEquals(2, sentBatches.size());
+        batcher.flush();
+        assertEquals(2, sentBatches.size());
+    }
+
+}
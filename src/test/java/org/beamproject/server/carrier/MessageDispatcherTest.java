@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.carrier;
+
+import com.google.inject.Provider;
+import org.beamproject.common.Participant;
+import org.beamproject.common.carrier.MessageException;
+import org.beamproject.common.crypto.HandshakeChallenger;
+import org.beamproject.common.crypto.HandshakeResponder;
+import static org.beamproject.common.message.Field.Cnt.Typ.FORWARD;
+import static org.beamproject.common.message.Field.Cnt.Typ.HS_CHALLENGE;
+import static org.beamproject.common.message.Field.Cnt.Typ.HS_RESPONSE;
+import static org.beamproject.common.message.Field.Cnt.Typ.HS_SUCCESS;
+import org.beamproject.common.message.Message;
+import org.beamproject.common.message.MessageHandler;
+import org.beamproject.server.util.HandshakeStorage;
+import org.beamproject.server.util.ParticipantCache;
+import org.beamproject.server.util.RateLimiter;
+import org.beamproject.server.util.SessionStorage;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MessageDispatcherTest {
+
+    private MessageDispatcher dispatcher;
+    private HandshakeStorage<HandshakeResponder> handshakeStorage;
+    private Participant server;
+    private int createdHandlers;
+
+    @Before
+    public void setUp() {
+        handshakeStorage = new HandshakeStorage<>();
+        dispatcher = new MessageDispatcher(handshakeStorage, new SessionStorage(), new RateLimiter(0, 1), new ParticipantCache(16));
+        server = Participant.generate();
+        createdHandlers = 0;
+    }
+
+    @Test
+    public void testDefaultHandlers() {
+        assertTrue(dispatcher.isRegistered(HS_CHALLENGE));
+        assertTrue(dispatcher.isRegistered(HS_SUCCESS));
+        assertFalse(dispatcher.isRegistered(FORWARD));
+    }
+
+    @Test
+    public void testDispatchChallenge() {
+        HandshakeChallenger challenger = new HandshakeChallenger(Participant.generate());
+        Message challenge = challenger.produceChallenge(server);
+
+        Message response = dispatcher.dispatch(challenge);
+
+        assertEquals(HS_RESPONSE, response.getType());
+    }
+
+    @Test(expected = MessageException.class)
+    public void testDispatchOnUnknownType() {
+        dispatcher.dispatch(new Message(FORWARD, server));
+    }
+
+    @Test
+    public void testRegisterReusesHandlerOnSameThread() {
+        dispatcher.register(FORWARD, new HandlerProvider());
+
+        dispatcher.dispatch(new Message(FORWARD, server));
+        dispatcher.dispatch(new Message(FORWARD, server));
+
+        assertEquals(1, createdHandlers);
+    }
+
+    @Test
+    public void testRegisterCreatesHandlerPerThread() throws InterruptedException {
+        dispatcher.register(FORWARD, new HandlerProvider());
+        dispatcher.dispatch(new Message(FORWARD, server));
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                dispatcher.dispatch(new Message(FORWARD, server));
+            }
+        });
+        thread.start();
+        thread.join();
+
+        assertEquals(2, createdHandlers);
+    }
+
+    @Test
+    public void testRegisterReplacesHandler() {
+        final Message response = new Message(HS_RESPONSE, server);
+        dispatcher.register(HS_CHALLENGE, new Provider<MessageHandler>() {
+            @Override
+            public MessageHandler get() {
+                return new MessageHandler() {
+                    @Override
+                    protected Message handleValidMessage() {
+                        return response;
+                    }
+                };
+            }
+        });
+
+        assertSame(response, dispatcher.dispatch(new Message(HS_CHALLENGE, server)));
+    }
+
+    private class HandlerProvider implements Provider<MessageHandler> {
+
+        @Override
+        public synchronized MessageHandler get() {
+            createdHandlers++;
+            return new MessageHandler() {
+                @Override
+                protected Message handleValidMessage() {
+                    return null;
+                }
+            };
+        }
+    }
+
+}
@@ -0,0 +1,340 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.carrier;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class OutboxTest {
+
+    private final String URL = "http://localhost";
+    private final byte[] MESSAGE = "myMessage".getBytes();
+    private final byte[] OTHER_MESSAGE = "otherMessage".getBytes();
+    private final List<Outbox.Entry> dispatched = new CopyOnWriteArrayList<>();
+    private final List<Outbox.Entry> discarded = new CopyOnWriteArrayList<>();
+    private CountDownLatch dispatchLatch;
+    private File directory;
+    private Outbox outbox;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("outbox", "");
+        directory.delete();
+        dispatchLatch = new CountDownLatch(1);
+        outbox = createOutbox(1024, 60000);
+    }
+
+    @After
+    public void tearDown() {
+        outbox.shutdown();
+
+        if (directory.isDirectory()) {
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+        }
+
+        directory.delete();
+    }
+
+    private Outbox createOutbox(int segmentSize, long initialBackoffMillis) {
+        return createOutbox(segmentSize, initialBackoffMillis, Outbox.DEFAULT_MAX_ATTEMPTS, Outbox.DEFAULT_TIME_TO_LIVE_MILLIS);
+    }
+
+    private Outbox createOutbox(int segmentSize, long initialBackoffMillis, int maxAttempts, long timeToLiveMillis) {
+        if (outbox != null) {
+            outbox.shutdown();
+        }
+
+        Outbox newOutbox = new Outbox(directory, segmentSize, initialBackoffMillis, initialBackoffMillis * 4,
+                maxAttempts, timeToLiveMillis);
+        newOutbox.setDispatcher(new Outbox.Dispatcher() {
+            @Override
+            public void dispatch(Outbox.Entry entry) {
+                dispatched.add(entry);
+                dispatchLatch.countDown();
+            }
+
+            @Override
+            public void discarded(Outbox.Entry entry, String reason) {
+                discarded.add(entry);
+            }
+        });
+        newOutbox.open();
+        return newOutbox;
+    }
+
+    private int countSegments() {
+        return directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.getName().startsWith("segment-");
+            }
+        }).length;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorOnInvalidBackoff() {
+        outbox = new Outbox(directory, 1024, 100, 10);
+    }
+
+    @Test
+    public void testConstructor() {
+        outbox.shutdown();
+        tearDown();
+
+        outbox = new Outbox(directory, 1024, 1, 1);
+
+        assertFalse(directory.exists());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testOpenOnLockedDirectory() {
+        Outbox otherOutbox = new Outbox(directory, 1024, 1, 1);
+
+        otherOutbox.open();
+    }
+
+    @Test
+    public void testOpenAfterShutdown() {
+        outbox.shutdown();
+        Outbox otherOutbox = new Outbox(directory, 1024, 1, 1);
+
+        otherOutbox.open();
+        otherOutbox.shutdown();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAppendOnClosedOutbox() {
+        outbox.shutdown();
+
+        outbox.append(URL, Arrays.asList(MESSAGE));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAppendOnMissingDispatcher() {
+        outbox = new Outbox(directory, 1024, 1, 1);
+        outbox.append(URL, Arrays.asList(MESSAGE));
+    }
+
+    @Test
+    public void testAppend() {
+        Outbox.Entry entry = outbox.append(URL, Arrays.asList(MESSAGE, OTHER_MESSAGE));
+
+        assertEquals(1, dispatched.size());
+        assertEquals(entry, dispatched.get(0));
+        assertEquals(URL, entry.getUrl());
+        assertEquals(1, outbox.getPendingCount());
+
+        List<byte[]> messages = outbox.read(entry);
+        assertEquals(2, messages.size());
+        assertArrayEquals(MESSAGE, messages.get(0));
+        assertArrayEquals(OTHER_MESSAGE, messages.get(1));
+    }
+
+    @Test
+    public void testAppendOnLargeEntry() {
+        outbox = createOutbox(16, 60000);
+        byte[] largeMessage = new byte[1000];
+        largeMessage[999] = 42;
+
+        Outbox.Entry entry = outbox.append(URL, Arrays.asList(largeMessage));
+
+        assertArrayEquals(largeMessage, outbox.read(entry).get(0));
+    }
+
+    @Test
+    public void testAcknowledge() {
+        Outbox.Entry entry = outbox.append(URL, Arrays.asList(MESSAGE));
+
+        outbox.acknowledge(entry);
+        outbox.acknowledge(entry);
+
+        assertEquals(0, outbox.getPendingCount());
+    }
+
+    @Test
+    public void testAcknowledgeOnCompaction() {
+        outbox = createOutbox(16, 60000);
+        Outbox.Entry first = outbox.append(URL, Arrays.asList(MESSAGE));
+        Outbox.Entry second = outbox.append(URL, Arrays.asList(MESSAGE));
+        Outbox.Entry third = outbox.append(URL, Arrays.asList(MESSAGE));
+        assertEquals(3, countSegments());
+
+        outbox.acknowledge(first);
+        outbox.acknowledge(third);
+        assertEquals(2, countSegments());
+
+        outbox.acknowledge(second);
+        assertEquals(1, countSegments());
+    }
+
+    @Test
+    public void testAcknowledgeOnMostlyAcknowledgedSegment() {
+        outbox = createOutbox(5 * 44, 60000);
+        List<Outbox.Entry> entries = new ArrayList<>();
+
+        for (int i = 0; i < 6; i++) {
+            entries.add(outbox.append(URL, Arrays.asList(MESSAGE)));
+        }
+
+        assertEquals(2, countSegments());
+
+        for (int i = 0; i < 4; i++) {
+            outbox.acknowledge(entries.get(i));
+        }
+
+        assertEquals(1, countSegments());
+        assertEquals(2, outbox.getPendingCount());
+        assertArrayEquals(MESSAGE, outbox.read(entries.get(4)).get(0));
+
+        outbox.acknowledge(entries.get(4));
+        outbox = createOutbox(5 * 44, 60000);
+        assertEquals(1, outbox.getPendingCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testReadOnCorruptEntry() throws IOException {
+        outbox.append(URL, Arrays.asList(MESSAGE));
+        outbox.shutdown();
+        corruptFirstEntry();
+        dispatched.clear();
+        outbox = createOutbox(1024, 60000);
+        outbox.redeliverPending();
+
+        outbox.read(dispatched.get(0));
+    }
+
+    /**
+     * Overwrites the length of the first message of the first entry.
+     */
+    private void corruptFirstEntry() throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(new File(directory, "segment-0.outbox"), "rw")) {
+            file.seek(4 + 1 + 2 + 8 + URL.length());
+            file.writeInt(Integer.MAX_VALUE);
+        }
+    }
+
+    @Test
+    public void testRedeliverPending() {
+        Outbox.Entry delivered = outbox.append(URL, Arrays.asList(MESSAGE));
+        outbox.append(URL, Arrays.asList(OTHER_MESSAGE));
+        outbox.acknowledge(delivered);
+        outbox.shutdown();
+        dispatched.clear();
+
+        outbox = createOutbox(1024, 60000);
+        assertEquals(1, outbox.getPendingCount());
+        assertTrue(dispatched.isEmpty());
+
+        outbox.redeliverPending();
+
+        assertEquals(1, dispatched.size());
+        assertEquals(URL, dispatched.get(0).getUrl());
+        assertArrayEquals(OTHER_MESSAGE, outbox.read(dispatched.get(0)).get(0));
+    }
+
+    @Test
+    public void testRetry() throws InterruptedException {
+        outbox = createOutbox(1024, 5);
+        Outbox.Entry entry = outbox.append(URL, Arrays.asList(MESSAGE));
+        dispatchLatch = new CountDownLatch(1);
+
+        outbox.retry(entry);
+
+        assertTrue(dispatchLatch.await(5, SECONDS));
+        assertEquals(2, dispatched.size());
+        assertEquals(entry, dispatched.get(1));
+    }
+
+    @Test
+    public void testRetryOnMinDelay() throws InterruptedException {
+        outbox = createOutbox(1024, 1);
+        Outbox.Entry entry = outbox.append(URL, Arrays.asList(MESSAGE));
+        dispatchLatch = new CountDownLatch(1);
+
+        outbox.retry(entry, 60000);
+
+        assertFalse(dispatchLatch.await(100, MILLISECONDS));
+        assertEquals(1, dispatched.size());
+        assertEquals(1, outbox.getPendingCount());
+    }
+
+    @Test
+    public void testRetryOnMaxAttempts() {
+        outbox = createOutbox(1024, 60000, 2, 60000);
+        Outbox.Entry entry = outbox.append(URL, Arrays.asList(MESSAGE));
+
+        outbox.retry(entry);
+        assertTrue(discarded.isEmpty());
+
+        outbox.retry(entry);
+        assertEquals(Arrays.asList(entry), discarded);
+        assertEquals(0, outbox.getPendingCount());
+    }
+
+    @Test
+    public void testRetryOnTimeToLive() {
+        outbox = createOutbox(1024, 60000, 10, 1000);
+        Outbox.Entry entry = outbox.append(URL, Arrays.asList(MESSAGE));
+
+        outbox.retry(entry);
+
+        assertEquals(Arrays.asList(entry), discarded);
+        assertEquals(0, outbox.getPendingCount());
+    }
+
+    @Test
+    public void testDiscard() {
+        Outbox.Entry entry = outbox.append(URL, Arrays.asList(MESSAGE));
+
+        outbox.discard(entry, "refused");
+
+        assertEquals(0, outbox.getPendingCount());
+        assertEquals(Arrays.asList(entry), discarded);
+    }
+
+    @Test
+    public void testAppendOnBackoff() {
+        outbox.retry(outbox.append(URL, Arrays.asList(MESSAGE)));
+
+        outbox.append(URL, Arrays.asList(OTHER_MESSAGE));
+        outbox.append("http://otherhost", Arrays.asList(OTHER_MESSAGE));
+
+        assertEquals(2, dispatched.size());
+        assertEquals("http://otherhost", dispatched.get(1).getUrl());
+    }
+
+}
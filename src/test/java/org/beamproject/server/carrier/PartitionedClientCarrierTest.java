@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.carrier;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.name.Names;
+import java.util.Properties;
+import org.beamproject.common.carrier.ClientCarrier;
+import org.beamproject.server.util.Config;
+import static org.beamproject.server.util.Config.Key.MQTT_SUBSCRIBER_PARTITIONS;
+import org.beamproject.server.util.LaneExecutor;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PartitionedClientCarrierTest {
+
+    private final byte[] MESSAGE = "myMessage".getBytes();
+    private ClientCarrier first;
+    private ClientCarrier second;
+    private PartitionedClientCarrier carrier;
+
+    @Before
+    public void setUp() {
+        first = createMock(ClientCarrier.class);
+        second = createMock(ClientCarrier.class);
+
+        Injector injector = Guice.createInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                bind(ClientCarrier.class).annotatedWith(Names.named(PartitionedClientCarrier.getName(0))).toInstance(first);
+                bind(ClientCarrier.class).annotatedWith(Names.named(PartitionedClientCarrier.getName(1))).toInstance(second);
+            }
+        });
+
+        Config config = new Config(new Properties());
+        config.set(MQTT_SUBSCRIBER_PARTITIONS, "2");
+        carrier = new PartitionedClientCarrier(injector, config);
+    }
+
+    @Test
+    public void testToTopic() {
+        assertEquals("in/3/+", PartitionedClientCarrier.toTopic("in/{partition}/+", 3));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testToTopicOnMissingPlaceholder() {
+        PartitionedClientCarrier.toTopic("in/+", 3);
+    }
+
+    @Test
+    public void testPartitionOf() {
+        for (int i = 0; i < 100; i++) {
+            String username = "user" + i;
+            assertEquals(LaneExecutor.indexOf(username, 8) % 4, PartitionedClientCarrier.partitionOf(username, 4));
+        }
+    }
+
+    @Test
+    public void testPartitionOfOnKnownUsernames() {
+        assertEquals(3, PartitionedClientCarrier.partitionOf("spock", 4));
+        assertEquals(5, PartitionedClientCarrier.partitionOf("spock", 7));
+        assertEquals(1, PartitionedClientCarrier.partitionOf("kirk", 4));
+        assertEquals(5, PartitionedClientCarrier.partitionOf("kirk", 16));
+        assertEquals(0, PartitionedClientCarrier.partitionOf("uhura", 4));
+        assertEquals(10, PartitionedClientCarrier.partitionOf("chekov", 16));
+        assertEquals(1, PartitionedClientCarrier.partitionOf("zo\u00eb", 7));
+        assertEquals(2, PartitionedClientCarrier.partitionOf("user42", 4));
+        assertEquals(0, PartitionedClientCarrier.partitionOf("", 4));
+        assertEquals(0, PartitionedClientCarrier.partitionOf(null, 4));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPartitionOfOnInvalidCount() {
+        PartitionedClientCarrier.partitionOf("spock", 0);
+    }
+
+    @Test
+    public void testStartReceiving() {
+        first.startReceiving();
+        expectLastCall();
+        second.startReceiving();
+        expectLastCall();
+        replay(first, second);
+
+        carrier.startReceiving();
+
+        verify(first, second);
+    }
+
+    @Test
+    public void testDeliverMessage() {
+        String firstTopic = findTopic(0);
+        String secondTopic = findTopic(1);
+        first.deliverMessage(MESSAGE, firstTopic);
+        expectLastCall();
+        second.deliverMessage(MESSAGE, secondTopic);
+        expectLastCall();
+        replay(first, second);
+
+        carrier.deliverMessage(MESSAGE, firstTopic);
+        carrier.deliverMessage(MESSAGE, secondTopic);
+
+        verify(first, second);
+    }
+
+    @Test
+    public void testShutdown() {
+        first.shutdown();
+        expectLastCall();
+        second.shutdown();
+        expectLastCall();
+        replay(first, second);
+
+        carrier.shutdown();
+
+        verify(first, second);
+    }
+
+    private String findTopic(int partition) {
+        for (int i = 0;; i++) {
+            String topic = "out/user" + i;
+
+            if (LaneExecutor.indexOf(topic, 2) == partition) {
+                return topic;
+            }
+        }
+    }
+
+}
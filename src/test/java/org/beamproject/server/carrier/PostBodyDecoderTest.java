@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.carrier;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import org.beamproject.common.util.Base64;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PostBodyDecoderTest {
+
+    private final String KEY = "MSG";
+    private final byte[] MESSAGE = {109, 121, 32, (byte) 0xff, (byte) 0xfe, (byte) 0xfb, 0, 63, 62, 47, 43};
+    private PostBodyDecoder decoder;
+
+    @Before
+    public void setUp() {
+        decoder = new PostBodyDecoder(1024);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorOnZeroSize() {
+        decoder = new PostBodyDecoder(0);
+    }
+
+    @Test
+    public void testIsTooLarge() {
+        assertFalse(decoder.isTooLarge(-1));
+        assertFalse(decoder.isTooLarge(1024));
+        assertTrue(decoder.isTooLarge(1025));
+    }
+
+    @Test
+    public void testDecode() throws IOException {
+        assertArrayEquals(MESSAGE, decoder.decode(body(KEY + "=" + encode(MESSAGE)), KEY).getValue());
+    }
+
+    @Test
+    public void testDecodeOnBuffer() throws IOException {
+        ByteBuffer buffer = decoder.decode(body(KEY + "=" + encode(MESSAGE)), KEY).getBuffer();
+
+        assertTrue(buffer.isReadOnly());
+        assertEquals(ByteBuffer.wrap(MESSAGE), buffer);
+    }
+
+    @Test
+    public void testDecodeOnAllPaddingLengths() throws IOException {
+        for (int length = 1; length <= 5; length++) {
+            byte[] message = new byte[length];
+
+            for (int i = 0; i < length; i++) {
+                message[i] = (byte) (250 + i);
+            }
+
+            assertArrayEquals(message, decoder.decode(body(KEY + "=" + encode(message)), KEY).getValue());
+        }
+    }
+
+    @Test
+    public void testDecodeOnMultipleFields() throws IOException {
+        String body = "other=value&MSGX=abcd&" + KEY + "=" + encode(MESSAGE) + "&last=x";
+        assertArrayEquals(MESSAGE, decoder.decode(body(body), KEY).getValue());
+    }
+
+    @Test
+    public void testDecodeOnNotUrlEncodedValue() throws IOException {
+        byte[] message = {(byte) 0xfb, (byte) 0xef, (byte) 0xff};
+        String body = KEY + "=" + Base64.encode(message);
+        assertArrayEquals(message, decoder.decode(body(body), KEY).getValue());
+    }
+
+    @Test
+    public void testDecodeOnSmallChunks() throws IOException {
+        final byte[] body = (KEY + "=" + encode(MESSAGE)).getBytes();
+        InputStream oneByteAtATime = new ByteArrayInputStream(body) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 1));
+            }
+        };
+
+        assertArrayEquals(MESSAGE, decoder.decode(oneByteAtATime, KEY).getValue());
+    }
+
+    @Test
+    public void testDecodeOnConsecutiveCalls() throws IOException {
+        decoder.decode(body(KEY + "=" + encode(new byte[500])), KEY);
+        assertArrayEquals(MESSAGE, decoder.decode(body(KEY + "=" + encode(MESSAGE)), KEY).getValue());
+    }
+
+    @Test
+    public void testDecodeOnAlternativeNames() throws IOException {
+        String body = "other=value&" + KEY + "=" + encode(MESSAGE);
+        PostBodyDecoder.PostField field = decoder.decode(body(body), "BATCH", KEY);
+
+        assertEquals(KEY, field.getName());
+        assertArrayEquals(MESSAGE, field.getValue());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecodeOnMissingField() throws IOException {
+        decoder.decode(body("other=" + encode(MESSAGE)), KEY);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecodeOnEmptyValue() throws IOException {
+        decoder.decode(body(KEY + "="), KEY);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecodeOnInvalidCharacters() throws IOException {
+        decoder.decode(body(KEY + "=ab!d"), KEY);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecodeOnInvalidUrlEncoding() throws IOException {
+        decoder.decode(body(KEY + "=ab%zzcd"), KEY);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecodeOnTooLargeBody() throws IOException {
+        decoder.decode(body(KEY + "=" + encode(new byte[1024])), KEY);
+    }
+
+    private String encode(byte[] message) throws IOException {
+        return URLEncoder.encode(Base64.encode(message), "UTF-8");
+    }
+
+    private InputStream body(String body) {
+        return new ByteArrayInputStream(body.getBytes());
+    }
+
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.carrier;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ResponseTemplateTest {
+
+    private ResponseTemplate template;
+
+    @Before
+    public void setUp() {
+        template = new ResponseTemplate();
+    }
+
+    @After
+    public void tearDown() {
+        template.shutdown();
+    }
+
+    @Test
+    public void testGetDate() throws Exception {
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        long date = format.parse(template.getDate()).getTime();
+
+        assertTrue(template.getDate().endsWith(" GMT"));
+        assertTrue(Math.abs(System.currentTimeMillis() - date) < 5000);
+    }
+
+    @Test
+    public void testGetDateOnCachedValue() {
+        assertSame(template.getDate(), template.getDate());
+    }
+
+    @Test
+    public void testRefresh() throws InterruptedException {
+        String date = template.getDate();
+        Thread.sleep(1100);
+
+        template.refresh();
+
+        assertTrue(!date.equals(template.getDate()));
+    }
+
+}
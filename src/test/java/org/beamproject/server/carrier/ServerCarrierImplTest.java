@@ -18,15 +18,32 @@
  */
 package org.beamproject.server.carrier;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.logging.Logger;
 import org.beamproject.common.Server;
+import org.beamproject.common.carrier.CarrierException;
 import org.beamproject.common.carrier.ServerCarrierModel;
 import org.beamproject.server.ExecutorFake;
+import static org.beamproject.server.carrier.CircuitBreaker.State.CLOSED;
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.aryEq;
 import static org.easymock.EasyMock.createMock;
-import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.eq;
 import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.getCurrentArguments;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
+import org.easymock.IAnswer;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -37,37 +54,173 @@ public class ServerCarrierImplTest {
     private final String URL = "http://localhost";
     private final String PATH = "/myPath";
     private ExecutorFake executorFake;
-    private HttpConnectionPool connectionPool;
     private HttpConnection connection;
+    private MessageBatcher batcher;
+    private File outboxDirectory;
+    private Outbox outbox;
+    private CircuitBreaker circuitBreaker;
     private HttpServer httpServer;
     private ServerCarrierModel model;
     private ServerCarrierImpl carrier;
 
     @Before
-    public void setUp() {
+    public void setUp() throws IOException {
         executorFake = new ExecutorFake();
-        connectionPool = createMock(HttpConnectionPool.class);
         connection = createMock(HttpConnection.class);
         httpServer = createMock(HttpServer.class);
         model = createMock(ServerCarrierModel.class);
-        carrier = new ServerCarrierImpl(model, executorFake, connectionPool, httpServer);
+        batcher = new MessageBatcher(0, 1);
+        outboxDirectory = File.createTempFile("outbox", "");
+        outboxDirectory.delete();
+        outbox = new Outbox(outboxDirectory, 1024, 60000, 60000);
+        outbox.open();
+        circuitBreaker = new CircuitBreaker(1, 50, 60000);
+        carrier = new ServerCarrierImpl(model, executorFake, connection, batcher, outbox, circuitBreaker, httpServer);
+        carrier.log = Logger.getGlobal();
+    }
+
+    @After
+    public void tearDown() {
+        outbox.shutdown();
+
+        if (outboxDirectory.isDirectory()) {
+            for (File file : outboxDirectory.listFiles()) {
+                file.delete();
+            }
+        }
+
+        outboxDirectory.delete();
     }
 
     @Test
     public void testDeliverMessage() throws Exception {
-        expect(connectionPool.borrowObject()).andReturn(connection);
         connection.post(new URL(URL), MESSAGE);
         expectLastCall();
-        connectionPool.returnObject(connection);
-        replay(connectionPool, connection);
+        replay(connection);
+
+        carrier.deliverMessage(MESSAGE, URL);
+
+        verify(connection);
+        assertEquals(0, outbox.getPendingCount());
+    }
+
+    @Test
+    public void testDeliverMessageOnFailure() throws Exception {
+        connection.post(new URL(URL), MESSAGE);
+        expectLastCall().andThrow(new CarrierException("The server is not reachable."));
+        replay(connection);
 
         carrier.deliverMessage(MESSAGE, URL);
 
-        verify(connectionPool, connection);
+        verify(connection);
+        assertEquals(1, outbox.getPendingCount());
+    }
+
+    @Test
+    public void testDeliverMessageOnServiceUnavailable() throws Exception {
+        connection.post(new URL(URL), MESSAGE);
+        expectLastCall().andThrow(new HttpStatusException(503, 1000));
+        replay(connection);
+
+        carrier.deliverMessage(MESSAGE, URL);
+
+        verify(connection);
+        assertEquals(1, outbox.getPendingCount());
+    }
+
+    @Test
+    public void testDeliverMessageOnServerError() throws Exception {
+        circuitBreaker = new CircuitBreaker(4, 50, 60000);
+        carrier = new ServerCarrierImpl(model, executorFake, connection, batcher, outbox, circuitBreaker, httpServer);
+        connection.post(new URL(URL), MESSAGE);
+        expectLastCall().andThrow(new HttpStatusException(500, 0));
+        replay(connection);
+
+        carrier.deliverMessage(MESSAGE, URL);
+
+        verify(connection);
+        assertEquals(2, circuitBreaker.getLimit(URL));
+    }
+
+    @Test
+    public void testDeliverMessageOnRefusal() throws Exception {
+        connection.post(new URL(URL), MESSAGE);
+        expectLastCall().andThrow(new HttpStatusException(400, 0));
+        replay(connection);
+
+        carrier.deliverMessage(MESSAGE, URL);
+
+        verify(connection);
+        assertEquals(0, outbox.getPendingCount());
+        assertEquals(CLOSED, circuitBreaker.getState(URL));
+    }
+
+    @Test
+    public void testDeliverMessageOnOpenCircuit() throws Exception {
+        while (circuitBreaker.tryAcquire(URL)) {
+            circuitBreaker.onFailure(URL);
+        }
+        replay(connection);
+
+        carrier.deliverMessage(MESSAGE, URL);
+
+        verify(connection);
+        assertEquals(1, outbox.getPendingCount());
+    }
+
+    @Test(expected = CarrierException.class)
+    public void testDeliverMessageOnInvalidUrl() {
+        carrier.deliverMessage(MESSAGE, "invalid url");
+    }
+
+    @Test(expected = CarrierException.class)
+    public void testDeliverMessageOnInvalidUrlAndBatch() {
+        batcher = new MessageBatcher(60000, 2);
+        carrier = new ServerCarrierImpl(model, executorFake, connection, batcher, outbox, circuitBreaker, httpServer);
+
+        carrier.deliverMessage(MESSAGE, "invalid url");
+    }
+
+    @Test
+    public void testDeliverMessageOnBatch() throws Exception {
+        batcher = new MessageBatcher(60000, 2);
+        carrier = new ServerCarrierImpl(model, executorFake, connection, batcher, outbox, circuitBreaker, httpServer);
+        final byte[] otherMessage = "otherMessage".getBytes();
+        connection.postBatch(eq(new URL(URL)), anyObject(List.class));
+        expectLastCall().andAnswer(new IAnswer<Object>() {
+            @Override
+            public Object answer() {
+                List<?> messages = (List<?>) getCurrentArguments()[1];
+
+                assertEquals(2, messages.size());
+                assertArrayEquals(MESSAGE, (byte[]) messages.get(0));
+                assertArrayEquals(otherMessage, (byte[]) messages.get(1));
+                return null;
+            }
+        });
+        replay(connection);
+
+        carrier.deliverMessage(MESSAGE, URL);
+        carrier.deliverMessage(otherMessage, URL);
+
+        verify(connection);
+    }
+
+    @Test
+    public void testConstructorOnClosedOutbox() {
+        tearDown();
+        outbox = new Outbox(outboxDirectory, 1024, 60000, 60000);
+
+        carrier = new ServerCarrierImpl(model, executorFake, connection, batcher, outbox, circuitBreaker, httpServer);
+
+        assertFalse(outboxDirectory.exists());
     }
 
     @Test
     public void testStartReceiving() {
+        tearDown();
+        outbox = new Outbox(outboxDirectory, 1024, 60000, 60000);
+        carrier = new ServerCarrierImpl(model, executorFake, connection, batcher, outbox, circuitBreaker, httpServer);
         httpServer.setCarrier(carrier);
         expectLastCall();
         httpServer.start();
@@ -77,6 +230,44 @@ public class ServerCarrierImplTest {
         carrier.startReceiving();
 
         verify(httpServer);
+        assertTrue(outboxDirectory.isDirectory());
+    }
+
+    @Test
+    public void testStartReceivingOnCorruptEntry() throws IOException {
+        connection.post(new URL(URL), MESSAGE);
+        expectLastCall().andThrow(new CarrierException("The server is not reachable."));
+        replay(connection);
+        carrier.deliverMessage(MESSAGE, URL);
+        outbox.shutdown();
+
+        try (RandomAccessFile file = new RandomAccessFile(new File(outboxDirectory, "segment-0.outbox"), "rw")) {
+            file.seek(4 + 1 + 2 + 8 + URL.length());
+            file.writeInt(Integer.MAX_VALUE);
+        }
+
+        outbox = new Outbox(outboxDirectory, 1024, 60000, 60000);
+        carrier = new ServerCarrierImpl(model, executorFake, connection, batcher, outbox, circuitBreaker, httpServer);
+        carrier.log = Logger.getGlobal();
+        httpServer.setCarrier(carrier);
+        expectLastCall();
+        httpServer.start();
+        expectLastCall();
+        replay(httpServer);
+
+        carrier.startReceiving();
+
+        verify(connection, httpServer);
+        assertEquals(0, outbox.getPendingCount());
+    }
+
+    @Test(expected = CarrierException.class)
+    public void testStartReceivingOnLockedOutbox() {
+        Outbox otherOutbox = new Outbox(outboxDirectory, 1024, 60000, 60000);
+        carrier = new ServerCarrierImpl(model, executorFake, connection, batcher, otherOutbox, circuitBreaker, httpServer);
+        replay(httpServer);
+
+        carrier.startReceiving();
     }
 
     @Test
@@ -101,17 +292,42 @@ public class ServerCarrierImplTest {
         verify(model);
     }
 
+    @Test
+    public void testReceiveOnByteBuffer() {
+        model.consumeMessage(aryEq(MESSAGE), eq(PATH));
+        expectLastCall();
+        replay(model);
+
+        carrier.receive(ByteBuffer.wrap(MESSAGE).asReadOnlyBuffer(), PATH);
+
+        verify(model);
+    }
+
+    @Test
+    public void testReceiveOnByteBufferModel() {
+        ByteBufferServerCarrierModel bufferModel = createMock(ByteBufferServerCarrierModel.class);
+        carrier = new ServerCarrierImpl(bufferModel, executorFake, connection, batcher, outbox, circuitBreaker, httpServer);
+        ByteBuffer message = ByteBuffer.wrap(MESSAGE).asReadOnlyBuffer();
+        bufferModel.consumeMessage(message, PATH);
+        expectLastCall();
+        replay(bufferModel);
+
+        carrier.receive(message, PATH);
+
+        verify(bufferModel);
+    }
+
     @Test
     public void testShutdown() {
-        connectionPool.close();
+        connection.close();
         expectLastCall();
         httpServer.stop();
         expectLastCall();
-        replay(connectionPool, httpServer);
+        replay(connection, httpServer);
 
         carrier.shutdown();
 
-        verify(connectionPool, httpServer);
+        verify(connection, httpServer);
     }
 
 }
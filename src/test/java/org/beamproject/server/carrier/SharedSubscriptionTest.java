@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.carrier;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import org.beamproject.server.MqttBrokerFake;
+import org.beamproject.server.util.Config;
+import static org.beamproject.server.util.Config.Key.MQTT_SHARED_SUBSCRIPTION_GROUP;
+import static org.beamproject.server.util.Config.Key.MQTT_SHARED_SUBSCRIPTION_STICKY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SharedSubscriptionTest {
+
+    private final String TOPIC = "in/+";
+    private final String GROUP = "beam";
+    private final byte[] MESSAGE = "myMessage".getBytes();
+    private MqttBrokerFake broker;
+    private Config config;
+
+    @Before
+    public void setUp() {
+        broker = new MqttBrokerFake();
+        config = new Config(new Properties());
+    }
+
+    @Test
+    public void testToTopic() {
+        assertEquals("$share/beam/in/+", SharedSubscription.toTopic(TOPIC, GROUP));
+        assertEquals(TOPIC, SharedSubscription.toTopic(TOPIC, null));
+        assertEquals(TOPIC, SharedSubscription.toTopic(TOPIC, ""));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testToTopicOnInvalidGroup() {
+        SharedSubscription.toTopic(TOPIC, "beam/servers");
+    }
+
+    @Test
+    public void testToConfiguredTopic() {
+        assertEquals(TOPIC, SharedSubscription.toConfiguredTopic(TOPIC, config));
+
+        config.set(MQTT_SHARED_SUBSCRIPTION_GROUP, GROUP);
+        config.set(MQTT_SHARED_SUBSCRIPTION_STICKY, "true");
+
+        assertEquals("$share/beam/in/+", SharedSubscription.toConfiguredTopic(TOPIC, config));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testToConfiguredTopicOnMissingSticky() {
+        config.set(MQTT_SHARED_SUBSCRIPTION_GROUP, GROUP);
+        SharedSubscription.toConfiguredTopic(TOPIC, config);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testToConfiguredTopicOnNotSticky() {
+        config.set(MQTT_SHARED_SUBSCRIPTION_GROUP, GROUP);
+        config.set(MQTT_SHARED_SUBSCRIPTION_STICKY, "false");
+        SharedSubscription.toConfiguredTopic(TOPIC, config);
+    }
+
+    @Test
+    public void testIsShared() {
+        assertTrue(SharedSubscription.isShared("$share/beam/in/+"));
+        assertFalse(SharedSubscription.isShared(TOPIC));
+        assertFalse(SharedSubscription.isShared("$share//in/+"));
+    }
+
+    @Test
+    public void testGetGroupAndTopicFilter() {
+        String subscription = SharedSubscription.toTopic(TOPIC, GROUP);
+
+        assertEquals(GROUP, SharedSubscription.getGroup(subscription));
+        assertEquals(TOPIC, SharedSubscription.getTopicFilter(subscription));
+        assertEquals(TOPIC, SharedSubscription.getTopicFilter(TOPIC));
+    }
+
+    @Test
+    public void testSubscribeOnSeparateServers() {
+        ServerFake first = new ServerFake();
+        ServerFake second = new ServerFake();
+        broker.subscribe(SharedSubscription.toTopic(TOPIC, null), first);
+        broker.subscribe(SharedSubscription.toTopic(TOPIC, null), second);
+
+        publishFromUsers(100);
+
+        assertEquals(100, first.count);
+        assertEquals(100, second.count);
+    }
+
+    @Test
+    public void testSubscribeOnSharedGroup() {
+        ServerFake first = new ServerFake();
+        ServerFake second = new ServerFake();
+        broker.subscribe(SharedSubscription.toTopic(TOPIC, GROUP), first);
+        broker.subscribe(SharedSubscription.toTopic(TOPIC, GROUP), second);
+
+        publishFromUsers(100);
+        publishFromUsers(100);
+
+        assertEquals(200, first.count + second.count);
+        assertTrue(first.count > 0);
+        assertTrue(second.count > 0);
+
+        for (String topic : first.topics.keySet()) {
+            assertFalse(second.topics.containsKey(topic));
+            assertEquals(2, (int) first.topics.get(topic));
+        }
+    }
+
+    private void publishFromUsers(int userCount) {
+        for (int i = 0; i < userCount; i++) {
+            broker.publish("in/user" + i, MESSAGE);
+        }
+    }
+
+    private static class ServerFake implements MqttBrokerFake.Subscriber {
+
+        private final Map<String, Integer> topics = new HashMap<>();
+        private int count;
+
+        @Override
+        public void receive(byte[] message, String topic) {
+            Integer previous = topics.get(topic);
+            topics.put(topic, previous == null ? 1 : previous + 1);
+            count++;
+        }
+    }
+
+}
@@ -18,22 +18,42 @@
  */
 package org.beamproject.server.model;
 
+import com.google.inject.Provider;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Logger;
 import org.beamproject.common.message.Message;
+import org.beamproject.common.message.MessageHandler;
 import static org.beamproject.common.message.Field.Cnt.*;
 import static org.beamproject.common.message.Field.Cnt.Typ.*;
 import org.beamproject.common.Participant;
 import org.beamproject.common.Server;
 import org.beamproject.common.User;
 import org.beamproject.common.carrier.ClientCarrier;
+import static org.beamproject.common.carrier.ClientCarrier.MQTT_OUT_TOPIC_PREFIX;
 import org.beamproject.common.crypto.CryptoPacker;
 import org.beamproject.common.crypto.CryptoPackerPool;
 import org.beamproject.common.crypto.CryptoPackerPoolFactory;
 import static org.beamproject.common.crypto.EccKeyPairGenerator.fromPublicKey;
+import org.beamproject.common.crypto.HandshakeChallenger;
 import org.beamproject.common.crypto.HandshakeResponder;
+import org.beamproject.common.util.Executor;
+import org.beamproject.common.util.Task;
 import org.beamproject.server.ExecutorFake;
+import org.beamproject.server.MqttBrokerFake;
+import org.beamproject.server.carrier.MessageDispatcher;
+import org.beamproject.server.carrier.SharedSubscription;
+import org.beamproject.server.util.AdmissionController;
+import org.beamproject.server.util.CryptoPackerLanes;
+import org.beamproject.server.util.HandshakeResponseCache;
 import org.beamproject.server.util.HandshakeStorage;
+import org.beamproject.server.util.ParticipantCache;
+import org.beamproject.server.util.InboundFilter;
+import org.beamproject.server.util.LaneExecutor;
+import org.beamproject.server.util.RateLimiter;
+import org.beamproject.server.util.SessionPacker;
 import org.beamproject.server.util.SessionStorage;
+import org.beamproject.server.util.StageStatistics;
 import static org.easymock.EasyMock.*;
 import org.easymock.IAnswer;
 import static org.junit.Assert.*;
@@ -48,10 +68,13 @@ public class ClientCarrierModelImplTest {
     private final Server SERVER = Server.generate();
     private final String TOPIC = "out/spock";
     private final String USERNAME = "spock";
+    private final String IN_TOPIC_PREFIX = "in/";
     private MainModel mainModel;
     private ClientCarrier carrier;
     private HandshakeStorage<HandshakeResponder> handshakeStorage;
     private SessionStorage sessionStorage;
+    private RateLimiter rateLimiter;
+    private AdmissionController admission;
     private ClientCarrierModelImpl model;
     private Message message;
 
@@ -62,13 +85,30 @@ public class ClientCarrierModelImplTest {
         handshakeStorage = new HandshakeStorage<>();
         sessionStorage = new SessionStorage();
 
-        model = new ClientCarrierModelImpl(mainModel,
+        rateLimiter = new RateLimiter(1, 2);
+        admission = new AdmissionController(new LaneExecutor(new ExecutorFake(), 4), 16, 4, 100);
+        model = createModel(carrier, handshakeStorage, sessionStorage);
+    }
+
+    private ClientCarrierModelImpl createModel(ClientCarrier carrier,
+            HandshakeStorage<HandshakeResponder> handshakeStorage, SessionStorage sessionStorage) {
+        return createModel(carrier, new MessageDispatcher(handshakeStorage, sessionStorage, new RateLimiter(0, 1), new ParticipantCache(16)), sessionStorage);
+    }
+
+    private ClientCarrierModelImpl createModel(ClientCarrier carrier, MessageDispatcher dispatcher, SessionStorage sessionStorage) {
+        ClientCarrierModelImpl model = new ClientCarrierModelImpl(mainModel,
                 new ExecutorFake(),
+                new InboundFilter(0, Integer.MAX_VALUE, 0, 0),
+                rateLimiter,
+                admission,
                 carrier,
-                getPackerPool(),
-                handshakeStorage,
-                sessionStorage);
+                new CryptoPackerLanes(getPackerPool(), 4, true),
+                dispatcher,
+                new HandshakeResponseCache(16, 60000),
+                new SessionPacker(sessionStorage),
+                new StageStatistics());
         model.log = Logger.getGlobal();
+        return model;
     }
 
     private CryptoPackerPool getPackerPool() {
@@ -127,6 +167,143 @@ public class ClientCarrierModelImplTest {
         verify(carrier);
     }
 
+    @Test
+    public void testConsumeMessageOnHighPriority() {
+        admission.setPriority(USERNAME, AdmissionController.Priority.HIGH);
+        expect(mainModel.getServer()).andReturn(SERVER).anyTimes();
+        replay(mainModel, carrier);
+
+        for (int i = 0; i < 3; i++) {
+            model.consumeMessage(new byte[64], USERNAME);
+        }
+
+        assertEquals(1, rateLimiter.getThrottledCount());
+        assertEquals(AdmissionController.Priority.LOW, admission.getPriority(USERNAME));
+        verify(carrier);
+    }
+
+    @Test
+    public void testConsumeMessageOnSharedSubscription() {
+        final MqttBrokerFake broker = new MqttBrokerFake();
+        ClientCarrier brokerCarrier = createMock(ClientCarrier.class);
+        brokerCarrier.deliverMessage(anyObject(byte[].class), anyObject(String.class));
+        expectLastCall().andAnswer(new IAnswer<Object>() {
+            @Override
+            public Object answer() {
+                broker.publish((String) getCurrentArguments()[1], (byte[]) getCurrentArguments()[0]);
+                return null;
+            }
+        }).anyTimes();
+        expect(mainModel.getServer()).andReturn(SERVER).anyTimes();
+        replay(mainModel, brokerCarrier);
+
+        List<SessionStorage> sessionStorages = new ArrayList<>();
+
+        for (int i = 0; i < 2; i++) {
+            SessionStorage storage = new SessionStorage();
+            final ClientCarrierModelImpl server = createModel(brokerCarrier, new HandshakeStorage<HandshakeResponder>(), storage);
+            sessionStorages.add(storage);
+            broker.subscribe(SharedSubscription.toTopic(IN_TOPIC_PREFIX + "+", "beam"), new MqttBrokerFake.Subscriber() {
+                @Override
+                public void receive(byte[] message, String topic) {
+                    server.consumeMessage(message, topic.substring(IN_TOPIC_PREFIX.length()));
+                }
+            });
+        }
+
+        final HandshakeChallenger challenger = new HandshakeChallenger(USER);
+        broker.subscribe(MQTT_OUT_TOPIC_PREFIX + USERNAME, new MqttBrokerFake.Subscriber() {
+            @Override
+            public void receive(byte[] message, String topic) {
+                challenger.consumeResponse(PACKER.decryptAndUnpack(message, USER));
+            }
+        });
+
+        broker.publish(IN_TOPIC_PREFIX + USERNAME, encrypt(challenger.produceChallenge(SERVER)));
+        broker.publish(IN_TOPIC_PREFIX + USERNAME, encrypt(challenger.produceSuccess()));
+
+        // the handshake completed on exactly one of the servers
+        assertTrue(sessionStorages.get(0).isSessionExisting(challenger.getSessionKey())
+                ^ sessionStorages.get(1).isSessionExisting(challenger.getSessionKey()));
+        verify(mainModel, brokerCarrier);
+    }
+
+    @Test
+    public void testConsumeMessageOnOrder() {
+        final List<Task> pendingTasks = new ArrayList<>();
+        final List<String> published = new ArrayList<>();
+        rateLimiter = new RateLimiter(0, 16);
+        admission = new AdmissionController(new LaneExecutor(new Executor() {
+            @Override
+            public void runAsync(Task task) {
+                pendingTasks.add(task);
+            }
+        }, 4), 16, 1, 60000);
+        MessageDispatcher dispatcher = new MessageDispatcher(handshakeStorage, sessionStorage, new RateLimiter(0, 1), new ParticipantCache(16));
+        dispatcher.register(FORWARD, new Provider<MessageHandler>() {
+            @Override
+            public MessageHandler get() {
+                return new MessageHandler() {
+                    @Override
+                    protected Message handleValidMessage() {
+                        Message response = new Message(FORWARD, USER_WITH_ONLY_PUBLIC_KEY);
+                        response.putContent(MSG, message.getContent(MSG));
+                        return response;
+                    }
+                };
+            }
+        });
+        model = createModel(carrier, dispatcher, sessionStorage);
+
+        carrier.deliverMessage(anyObject(byte[].class), anyObject(String.class));
+        expectLastCall().andAnswer(new IAnswer<Object>() {
+            @Override
+            public Object answer() {
+                Message response = PACKER.decryptAndUnpack((byte[]) getCurrentArguments()[0], USER);
+                published.add(getCurrentArguments()[1] + ":" + new String(response.getContent(MSG)));
+                return null;
+            }
+        }).anyTimes();
+        expect(mainModel.getServer()).andReturn(SERVER).anyTimes();
+        replay(mainModel, carrier);
+
+        model.consumeMessage(encrypt(createForward("running")), "kirk");
+        model.consumeMessage(encrypt(createForward("1")), USERNAME);
+        admission.setPriority(USERNAME, AdmissionController.Priority.HIGH);
+        model.consumeMessage(encrypt(createForward("2")), USERNAME);
+        admission.setPriority(USERNAME, AdmissionController.Priority.NORMAL);
+        model.consumeMessage(encrypt(createForward("3")), USERNAME);
+        model.consumeMessage(encrypt(createForward("4")), USERNAME);
+
+        while (!pendingTasks.isEmpty()) {
+            pendingTasks.remove(0).run();
+        }
+
+        assertEquals(5, published.size());
+        assertEquals(TOPIC + ":1", published.get(1));
+        assertEquals(TOPIC + ":2", published.get(2));
+        assertEquals(TOPIC + ":3", published.get(3));
+        assertEquals(TOPIC + ":4", published.get(4));
+        verify(mainModel, carrier);
+    }
+
+    @Test
+    public void testShutdown() {
+        carrier.shutdown();
+        expectLastCall();
+        replay(carrier);
+
+        model.shutdown();
+
+        verify(carrier);
+    }
+
+    private Message createForward(String content) {
+        Message forward = new Message(FORWARD, SERVER);
+        forward.putContent(MSG, content);
+        return forward;
+    }
+
     private byte[] encrypt(Message message) {
         CryptoPacker packer = new CryptoPacker();
         return packer.packAndEncrypt(message);
@@ -19,23 +19,34 @@
 package org.beamproject.server.model;
 
 import java.security.Security;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
 import org.beamproject.common.Server;
 import org.beamproject.common.carrier.CarrierException;
 import org.beamproject.common.carrier.ClientCarrierModel;
 import org.beamproject.common.carrier.ServerCarrierModel;
 import static org.beamproject.common.crypto.BouncyCastleIntegrator.PROVIDER_NAME;
+import org.beamproject.common.crypto.CryptoPackerPool;
+import org.beamproject.common.crypto.CryptoPackerPoolFactory;
+import org.beamproject.common.util.Executor;
 import org.beamproject.common.util.Files;
 import org.beamproject.server.App;
 import org.beamproject.server.BusFake;
+import org.beamproject.server.ExecutorFake;
 import static org.beamproject.server.Event.CARRIERS_STARTED;
 import static org.beamproject.server.Event.CARRIER_EXCEPTION;
 import static org.beamproject.server.Event.COMMAND_LINE_EXCEPTION;
+import static org.beamproject.server.Event.INVALID_COMMAND_LINE_USAGE;
 import static org.beamproject.server.Event.INVALID_CONFIG_SERVER_URL;
+import static org.beamproject.server.Event.KEY_PAIRS_STORED;
 import static org.beamproject.server.Event.KEY_PAIR_STORED;
 import static org.beamproject.server.Event.MISSING_CONFIG_ENTRIES;
 import static org.beamproject.server.Event.SERVER_CONFIGURATION_LOADED;
-import org.beamproject.server.ExecutorFake;
+import org.beamproject.server.util.AdmissionController;
 import org.beamproject.server.util.Config;
 import static org.beamproject.server.util.Config.Key.MQTT_HOST;
 import static org.beamproject.server.util.Config.Key.MQTT_PORT;
@@ -44,14 +55,22 @@ import static org.beamproject.server.util.Config.Key.MQTT_USERNAME;
 import static org.beamproject.server.util.Config.Key.PRIVATE_KEY;
 import static org.beamproject.server.util.Config.Key.PUBLIC_KEY;
 import static org.beamproject.server.util.Config.Key.SERVER_URL;
+import static org.beamproject.server.util.Config.Key.STATUS_LOG_INTERVAL;
+import org.beamproject.server.util.InboundFilter;
+import org.beamproject.server.util.LaneExecutor;
+import org.beamproject.server.util.RateLimiter;
+import org.beamproject.server.util.StageStatistics;
+import static org.beamproject.server.util.StageStatistics.Stage.DECRYPT;
 import static org.easymock.EasyMock.anyObject;
 import static org.easymock.EasyMock.anyString;
 import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.endsWith;
 import static org.easymock.EasyMock.expectLastCall;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
 import org.junit.After;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import org.junit.Before;
 import org.junit.Test;
@@ -65,23 +84,33 @@ public class MainModelTest {
     private final String TEST_MQTT_USERNAME = "Mr Spock";
     private final String TEST_MQTT_SUBSCRIBER_TOPIC = "in";
     private BusFake busFake;
-    private ExecutorFake executorFake;
     private MainModel model;
     private Config config;
     private Files files;
     private ClientCarrierModel clientCarrierModel;
     private ServerCarrierModel serverCarrierModel;
+    private ExecutorSpy executor, cryptoExecutor;
 
     @Before
     public void setUp() {
         busFake = new BusFake();
         config = new Config(new Properties());
         files = createMock(Files.class);
-        model = new MainModel(busFake.getBus(), executorFake, config, files);
+        executor = new ExecutorSpy();
+        cryptoExecutor = new ExecutorSpy();
+        model = new MainModel(busFake.getBus(), executor, config, files);
         clientCarrierModel = createMock(ClientCarrierModel.class);
         serverCarrierModel = createMock(ServerCarrierModel.class);
         model.clientCarrierModel = clientCarrierModel;
         model.serverCarrierModel = serverCarrierModel;
+        model.packerPool = new CryptoPackerPool(new CryptoPackerPoolFactory());
+        model.cryptoExecutor = cryptoExecutor;
+        model.stageStatistics = new StageStatistics();
+        model.usernameLimiter = new RateLimiter(1, 1);
+        model.publicKeyLimiter = new RateLimiter(1, 1);
+        model.admission = new AdmissionController(new LaneExecutor(new ExecutorFake(), 1), 1, 1, 100);
+        model.filter = new InboundFilter(1, 16, 0, 0);
+        model.log = Logger.getGlobal();
     }
 
     @After
@@ -152,6 +181,24 @@ public class MainModelTest {
         assertEquals(CARRIERS_STARTED, busFake.getNextEvent());
     }
 
+    @Test
+    public void testBootstrapOnPreparingPackerPool() {
+        fillConfig();
+        model.packerPool.setMinIdle(2);
+        clientCarrierModel.startReceiving();
+        expectLastCall();
+        serverCarrierModel.startReceiving();
+        expectLastCall();
+        replay(clientCarrierModel, serverCarrierModel);
+
+        model.bootstrap();
+
+        assertEquals(2, model.getPackerPoolStatistics().getIdle());
+        assertEquals(2, model.getPackerPoolStatistics().getCreated());
+        assertEquals(SERVER_CONFIGURATION_LOADED, busFake.getNextEvent());
+        assertEquals(CARRIERS_STARTED, busFake.getNextEvent());
+    }
+
     @Test
     public void testBootstrapOnClientCarrierException() {
         fillConfig();
@@ -186,6 +233,99 @@ public class MainModelTest {
         assertTrue(model.getExecptions().poll().contains("myException"));
     }
 
+    @Test
+    public void testBootstrapOnStatusLog() throws InterruptedException {
+        fillConfig();
+        config.set(STATUS_LOG_INTERVAL, "10");
+        List<LogRecord> records = captureLog();
+        clientCarrierModel.startReceiving();
+        expectLastCall();
+        serverCarrierModel.startReceiving();
+        expectLastCall();
+        replay(clientCarrierModel, serverCarrierModel);
+
+        model.bootstrap();
+        Thread.sleep(100);
+
+        assertFalse(records.isEmpty());
+        assertEquals(SERVER_CONFIGURATION_LOADED, busFake.getNextEvent());
+        assertEquals(CARRIERS_STARTED, busFake.getNextEvent());
+    }
+
+    @Test
+    public void testGetStatusReport() {
+        model.stageStatistics.record(DECRYPT, System.nanoTime());
+        model.usernameLimiter.tryAcquire("spock");
+        model.usernameLimiter.tryAcquire("spock");
+        model.publicKeyLimiter.tryAcquire("kirk");
+        model.filter.accept(new byte[0], "spock");
+
+        StatusReport report = model.getStatusReport();
+
+        assertEquals(1, report.getStageCount(DECRYPT));
+        assertEquals(1, report.getThrottledByUsername());
+        assertEquals(0, report.getThrottledByPublicKey());
+        assertEquals(0, report.getShed());
+        assertEquals(1, report.getDropped());
+        assertEquals(0, report.getPackerPool().getActive());
+    }
+
+    @Test
+    public void testLogStatus() {
+        List<LogRecord> records = captureLog();
+        model.usernameLimiter.tryAcquire("spock");
+        model.usernameLimiter.tryAcquire("spock");
+
+        model.logStatus();
+
+        assertEquals(1, records.size());
+        String status = records.get(0).getParameters()[0].toString();
+        assertTrue(status.contains("packer pool: [active: 0"));
+        assertTrue(status.contains("decrypt: 0"));
+        assertTrue(status.contains("throttled by username: 1"));
+        assertTrue(status.contains("shed: 0"));
+        assertTrue(status.contains("dropped: 0"));
+    }
+
+    private List<LogRecord> captureLog() {
+        final List<LogRecord> records = new CopyOnWriteArrayList<>();
+        model.log = Logger.getAnonymousLogger();
+        model.log.setUseParentHandlers(false);
+        model.log.addHandler(new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                records.add(record);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        return records;
+    }
+
+    @Test
+    public void testShutdown() {
+        files.storeProperies(config.getProperties(), App.CONFIG_PATH);
+        expectLastCall();
+        clientCarrierModel.shutdown();
+        expectLastCall();
+        serverCarrierModel.shutdown();
+        expectLastCall();
+        replay(files, clientCarrierModel, serverCarrierModel);
+
+        model.shutdown();
+
+        verify(files, clientCarrierModel, serverCarrierModel);
+        assertTrue(executor.isShutdown);
+        assertTrue(cryptoExecutor.isShutdown);
+    }
+
     @Test
     public void testStoreConfig() {
         files.storeProperies(config.getProperties(), App.CONFIG_PATH);
@@ -221,4 +361,58 @@ public class MainModelTest {
         verify(files);
     }
 
+    @Test
+    public void testGenerateKeyPairs() {
+        model.cryptoExecutor = new ExecutorFake();
+        files.storeProperies(anyObject(Properties.class), endsWith("test-1.conf"));
+        expectLastCall();
+        files.storeProperies(anyObject(Properties.class), endsWith("test-2.conf"));
+        expectLastCall();
+        files.storeProperies(anyObject(Properties.class), endsWith("test-3.conf"));
+        expectLastCall();
+        replay(files);
+
+        model.generateKeyPairs("test.conf", 3);
+
+        assertEquals(KEY_PAIRS_STORED, busFake.getNextEvent());
+        assertEquals(3, model.getStoredKeyPairCount());
+        verify(files);
+    }
+
+    @Test
+    public void testGenerateKeyPairsOnIllegalPath() {
+        model.cryptoExecutor = new ExecutorFake();
+        files.storeProperies(anyObject(Properties.class), anyString());
+        expectLastCall().andThrow(new IllegalArgumentException()).times(2);
+        replay(files);
+
+        model.generateKeyPairs("test", 2);
+
+        assertEquals(COMMAND_LINE_EXCEPTION, busFake.getNextEvent());
+        assertEquals(KEY_PAIRS_STORED, busFake.getNextEvent());
+        assertEquals(0, model.getStoredKeyPairCount());
+        assertEquals(2, model.getExecptions().size());
+        verify(files);
+    }
+
+    @Test
+    public void testGenerateKeyPairsOnInvalidCount() {
+        replay(files);
+
+        model.generateKeyPairs("test.conf", 0);
+
+        assertEquals(INVALID_COMMAND_LINE_USAGE, busFake.getNextEvent());
+        verify(files);
+    }
+
+    private class ExecutorSpy extends Executor {
+
+        private boolean isShutdown;
+
+        @Override
+        public void shutdown() {
+            isShutdown = true;
+        }
+    }
+
 }
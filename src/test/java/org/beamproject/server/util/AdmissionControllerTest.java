@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.beamproject.common.util.Executor;
+import org.beamproject.common.util.Task;
+import org.beamproject.server.ExecutorFake;
+import static org.beamproject.server.util.AdmissionController.Priority.HIGH;
+import static org.beamproject.server.util.AdmissionController.Priority.LOW;
+import static org.beamproject.server.util.AdmissionController.Priority.NORMAL;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AdmissionControllerTest {
+
+    private final List<String> runTasks = new ArrayList<>();
+    private final List<Task> pendingTasks = new ArrayList<>();
+    private AdmissionController controller;
+
+    @Before
+    public void setUp() {
+        controller = createController(10, 60000);
+    }
+
+    private AdmissionController createController(int queueSize, long targetLatencyMillis) {
+        Executor executor = new Executor() {
+            @Override
+            public void runAsync(Task task) {
+                pendingTasks.add(task);
+            }
+        };
+
+        return new AdmissionController(new LaneExecutor(executor, 1), queueSize, 1, targetLatencyMillis);
+    }
+
+    private Task createTask(final String name) {
+        return new Task() {
+            @Override
+            public void run() {
+                runTasks.add(name);
+            }
+        };
+    }
+
+    private void runPendingTasks() {
+        while (!pendingTasks.isEmpty()) {
+            pendingTasks.remove(0).run();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorOnZeroQueueSize() {
+        controller = new AdmissionController(new LaneExecutor(new ExecutorFake(), 1), 0, 1, 100);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorOnNegativeLatency() {
+        controller = new AdmissionController(new LaneExecutor(new ExecutorFake(), 1), 1, 1, -1);
+    }
+
+    @Test
+    public void testSubmit() {
+        controller = new AdmissionController(new LaneExecutor(new ExecutorFake(), 4), 10, 1, 100);
+
+        assertTrue(controller.submit("spock", createTask("first")));
+        assertTrue(controller.submit("kirk", createTask("second")));
+
+        assertEquals(2, runTasks.size());
+        assertEquals(0, controller.getQueuedCount());
+    }
+
+    @Test
+    public void testSubmitOnPriorities() {
+        controller.submit("spock", LOW, createTask("running"));
+        controller.submit("kirk", LOW, createTask("low"));
+        controller.submit("uhura", NORMAL, createTask("normal"));
+        controller.submit("chekov", HIGH, createTask("high"));
+        assertEquals(3, controller.getQueuedCount());
+
+        runPendingTasks();
+
+        assertEquals(4, runTasks.size());
+        assertEquals("running", runTasks.get(0));
+        assertEquals("high", runTasks.get(1));
+        assertEquals("normal", runTasks.get(2));
+        assertEquals("low", runTasks.get(3));
+    }
+
+    @Test
+    public void testSubmitOnFullQueue() {
+        controller = createController(1, 60000);
+        controller.submit("spock", LOW, createTask("running"));
+        controller.submit("kirk", LOW, createTask("low"));
+
+        assertTrue(controller.submit("uhura", HIGH, createTask("high")));
+        assertFalse(controller.submit("chekov", NORMAL, createTask("normal")));
+        assertEquals(2, controller.getShedCount());
+
+        runPendingTasks();
+
+        assertEquals(2, runTasks.size());
+        assertEquals("high", runTasks.get(1));
+    }
+
+    @Test
+    public void testSubmitOnExceededLatency() throws InterruptedException {
+        controller = createController(10, 1);
+        controller.submit("spock", LOW, createTask("running"));
+        controller.submit("kirk", LOW, createTask("low"));
+        controller.submit("uhura", HIGH, createTask("high"));
+        Thread.sleep(5);
+
+        runPendingTasks();
+
+        assertEquals(2, runTasks.size());
+        assertEquals("high", runTasks.get(1));
+        assertEquals(1, controller.getShedCount());
+    }
+
+    @Test
+    public void testSubmitOnChangedPriority() {
+        controller.submit("spock", LOW, createTask("running"));
+        controller.submit("spock", LOW, createTask("challenge"));
+        controller.submit("kirk", NORMAL, createTask("kirk"));
+        controller.submit("spock", HIGH, createTask("success"));
+
+        runPendingTasks();
+
+        assertEquals(4, runTasks.size());
+        assertEquals("kirk", runTasks.get(1));
+        assertEquals("challenge", runTasks.get(2));
+        assertEquals("success", runTasks.get(3));
+    }
+
+    @Test
+    public void testSubmitOnChangedPriorityAfterDrain() {
+        controller.submit("spock", LOW, createTask("running"));
+        controller.submit("spock", LOW, createTask("challenge"));
+        runPendingTasks();
+
+        controller.submit("kirk", LOW, createTask("running"));
+        controller.submit("kirk", LOW, createTask("kirk"));
+        controller.submit("spock", HIGH, createTask("success"));
+        runPendingTasks();
+
+        assertEquals(5, runTasks.size());
+        assertEquals("success", runTasks.get(3));
+        assertEquals("kirk", runTasks.get(4));
+    }
+
+    @Test
+    public void testSubmitOnFailingTask() {
+        controller.submit("spock", new Task() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("failed");
+            }
+        });
+        controller.submit("spock", createTask("next"));
+
+        try {
+            runPendingTasks();
+        } catch (IllegalStateException ex) {
+        }
+        runPendingTasks();
+
+        assertEquals(1, runTasks.size());
+    }
+
+    @Test
+    public void testClaimPriority() {
+        controller.setPriority("spock", HIGH);
+        controller.setPriority("kirk", NORMAL);
+
+        assertEquals(HIGH, controller.claimPriority("spock"));
+        assertEquals(LOW, controller.claimPriority("spock"));
+        assertEquals(NORMAL, controller.claimPriority("kirk"));
+        assertEquals(NORMAL, controller.claimPriority("kirk"));
+        assertEquals(LOW, controller.claimPriority(null));
+    }
+
+    @Test
+    public void testPriority() {
+        assertEquals(LOW, controller.getPriority("spock"));
+        assertEquals(LOW, controller.getPriority(null));
+
+        controller.setPriority("spock", HIGH);
+
+        assertEquals(HIGH, controller.getPriority("spock"));
+        assertEquals(LOW, controller.getPriority("kirk"));
+    }
+
+}
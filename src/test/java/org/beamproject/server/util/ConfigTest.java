@@ -19,6 +19,8 @@
 package org.beamproject.server.util;
 
 import java.util.Properties;
+import static org.beamproject.server.util.Config.Key.CRYPTO_PACKER_LANE_AFFINE;
+import static org.beamproject.server.util.Config.Key.HTTP_INGESTION_WORKERS;
 import static org.beamproject.server.util.Config.Key.SERVER_URL;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -49,4 +51,32 @@ public class ConfigTest {
         assertTrue(config.contains(SERVER_URL));
     }
 
+    @Test
+    public void testGetInt() {
+        assertEquals(7, config.getInt(HTTP_INGESTION_WORKERS, 7));
+        config.set(HTTP_INGESTION_WORKERS, " 3 ");
+        assertEquals(3, config.getInt(HTTP_INGESTION_WORKERS, 7));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testGetIntOnInvalidValue() {
+        config.set(HTTP_INGESTION_WORKERS, "many");
+        config.getInt(HTTP_INGESTION_WORKERS, 7);
+    }
+
+    @Test
+    public void testGetBoolean() {
+        assertTrue(config.getBoolean(CRYPTO_PACKER_LANE_AFFINE, true));
+        config.set(CRYPTO_PACKER_LANE_AFFINE, " False ");
+        assertFalse(config.getBoolean(CRYPTO_PACKER_LANE_AFFINE, true));
+        config.set(CRYPTO_PACKER_LANE_AFFINE, "TRUE");
+        assertTrue(config.getBoolean(CRYPTO_PACKER_LANE_AFFINE, false));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testGetBooleanOnInvalidValue() {
+        config.set(CRYPTO_PACKER_LANE_AFFINE, "yes");
+        config.getBoolean(CRYPTO_PACKER_LANE_AFFINE, false);
+    }
+
 }
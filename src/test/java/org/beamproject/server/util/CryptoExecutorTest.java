@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.util;
+
+import java.util.concurrent.CountDownLatch;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import org.beamproject.common.util.Task;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CryptoExecutorTest {
+
+    private CryptoExecutor executor;
+
+    @Before
+    public void setUp() {
+        executor = new CryptoExecutor(2);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorOnZeroThreads() {
+        executor = new CryptoExecutor(0);
+    }
+
+    @Test
+    public void testRunAsync() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(2);
+        final Thread caller = Thread.currentThread();
+        Task task = new Task() {
+            @Override
+            public void run() {
+                if (Thread.currentThread() != caller
+                        && Thread.currentThread().getName().startsWith("crypto-worker-")) {
+                    done.countDown();
+                }
+            }
+        };
+
+        executor.runAsync(task);
+        executor.runAsync(task);
+
+        assertTrue(done.await(5, SECONDS));
+    }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.util;
+
+import org.beamproject.common.crypto.CryptoPacker;
+import org.beamproject.common.crypto.CryptoPackerPool;
+import org.beamproject.common.crypto.CryptoPackerPoolFactory;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CryptoPackerLanesTest {
+
+    private CryptoPackerPool pool;
+    private CryptoPackerLanes packers;
+
+    @Before
+    public void setUp() {
+        pool = new CryptoPackerPool(new CryptoPackerPoolFactory());
+        packers = new CryptoPackerLanes(pool, 4, true);
+    }
+
+    @Test
+    public void testAcquireOnLane() throws Exception {
+        CryptoPacker packer = packers.acquire("spock");
+        packers.release("spock", packer);
+
+        assertSame(packer, packers.acquire("spock"));
+        assertEquals(1, pool.getNumActive());
+    }
+
+    @Test
+    public void testAcquireOnOtherLane() throws Exception {
+        String otherKey = "kirk";
+
+        for (int i = 0; LaneExecutor.indexOf(otherKey, 4) == LaneExecutor.indexOf("spock", 4); i++) {
+            otherKey = "kirk" + i;
+        }
+
+        assertNotSame(packers.acquire("spock"), packers.acquire(otherKey));
+        assertEquals(2, pool.getNumActive());
+    }
+
+    @Test
+    public void testAcquireWithoutLane() throws Exception {
+        CryptoPacker packer = packers.acquire(null);
+        assertEquals(1, pool.getNumActive());
+
+        packers.release(null, packer);
+
+        assertEquals(0, pool.getNumActive());
+        assertEquals(1, pool.getNumIdle());
+    }
+
+    @Test
+    public void testAcquireOnDisabledAffinity() throws Exception {
+        packers = new CryptoPackerLanes(pool, 4, false);
+
+        CryptoPacker packer = packers.acquire("spock");
+        packers.release("spock", packer);
+
+        assertEquals(0, pool.getNumActive());
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+        packers.acquire("spock");
+
+        packers.shutdown();
+
+        assertEquals(0, pool.getNumActive());
+        assertEquals(1, pool.getNumIdle());
+    }
+
+}
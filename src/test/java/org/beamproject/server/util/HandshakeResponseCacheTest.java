@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.util;
+
+import org.beamproject.common.Participant;
+import static org.beamproject.common.message.Field.Cnt.NONCE;
+import static org.beamproject.common.message.Field.Cnt.PUBLIC_KEY;
+import static org.beamproject.common.message.Field.Cnt.Typ.HS_CHALLENGE;
+import org.beamproject.common.message.Message;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HandshakeResponseCacheTest {
+
+    private final byte[] RESPONSE = "response".getBytes();
+    private HandshakeResponseCache cache;
+    private Message challenge;
+
+    @Before
+    public void setUp() {
+        cache = new HandshakeResponseCache(16, 60000);
+        challenge = createChallenge(new byte[]{1, 2, 3}, new byte[]{4, 5, 6});
+    }
+
+    private Message createChallenge(byte[] publicKey, byte[] nonce) {
+        Message message = new Message(HS_CHALLENGE, Participant.generate());
+        message.putContent(PUBLIC_KEY, publicKey);
+        message.putContent(NONCE, nonce);
+        return message;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorOnNegativeSize() {
+        cache = new HandshakeResponseCache(-1, 60000);
+    }
+
+    @Test
+    public void testGet() {
+        assertNull(cache.get(challenge));
+
+        cache.put(challenge, RESPONSE);
+
+        assertArrayEquals(RESPONSE, cache.get(challenge));
+        assertArrayEquals(RESPONSE, cache.get(createChallenge(new byte[]{1, 2, 3}, new byte[]{4, 5, 6})));
+        assertEquals(2, cache.getHitCount());
+    }
+
+    @Test
+    public void testGetOnOtherNonce() {
+        cache.put(challenge, RESPONSE);
+
+        assertNull(cache.get(createChallenge(new byte[]{1, 2, 3}, new byte[]{4, 5, 7})));
+        assertNull(cache.get(createChallenge(new byte[]{1, 2}, new byte[]{3, 4, 5, 6})));
+        assertEquals(0, cache.getHitCount());
+    }
+
+    @Test
+    public void testGetOnMissingNonce() {
+        Message incomplete = new Message(HS_CHALLENGE, Participant.generate());
+        incomplete.putContent(PUBLIC_KEY, new byte[]{1, 2, 3});
+
+        cache.put(incomplete, RESPONSE);
+
+        assertNull(cache.get(incomplete));
+    }
+
+    @Test
+    public void testGetOnZeroSize() {
+        cache = new HandshakeResponseCache(0, 60000);
+
+        cache.put(challenge, RESPONSE);
+
+        assertNull(cache.get(challenge));
+    }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+public class InboundFilterTest {
+
+    private final String USERNAME = "spock";
+    private InboundFilter filter;
+
+    @Before
+    public void setUp() {
+        filter = new InboundFilter(4, 8, 2, 60000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorOnInvalidBounds() {
+        filter = new InboundFilter(8, 4, 2, 60000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorOnNegativeLimit() {
+        filter = new InboundFilter(4, 8, -1, 60000);
+    }
+
+    @Test
+    public void testAccept() {
+        assertTrue(filter.accept(new byte[4], USERNAME));
+        assertTrue(filter.accept(new byte[8], USERNAME));
+        assertEquals(0, filter.getDroppedCount());
+    }
+
+    @Test
+    public void testAcceptOnInvalidSize() {
+        assertFalse(filter.accept(null, USERNAME));
+        assertFalse(filter.accept(new byte[3], USERNAME));
+        assertFalse(filter.accept(new byte[9], USERNAME));
+        assertEquals(3, filter.getDroppedCount());
+    }
+
+    @Test
+    public void testAcceptOnInvalidUsername() {
+        assertFalse(filter.accept(new byte[4], null));
+        assertFalse(filter.accept(new byte[4], ""));
+        assertFalse(filter.accept(new byte[4], "spock/kirk"));
+        assertFalse(filter.accept(new byte[4], "spock+"));
+        assertFalse(filter.accept(new byte[4], "#"));
+        assertFalse(filter.accept(new byte[4], "spock\n"));
+        assertFalse(filter.accept(new byte[4], new String(new char[InboundFilter.MAX_USERNAME_LENGTH + 1]).replace('\0', 'a')));
+    }
+
+    @Test
+    public void testReportFailure() {
+        filter.reportFailure(USERNAME);
+        assertFalse(filter.isBlocked(USERNAME));
+        assertTrue(filter.accept(new byte[4], USERNAME));
+
+        filter.reportFailure(USERNAME);
+        assertTrue(filter.isBlocked(USERNAME));
+        assertFalse(filter.accept(new byte[4], USERNAME));
+        assertTrue(filter.accept(new byte[4], "kirk"));
+    }
+
+    @Test
+    public void testReportFailureOnExpiredBlock() throws InterruptedException {
+        filter = new InboundFilter(4, 8, 1, 1);
+        filter.reportFailure(USERNAME);
+        Thread.sleep(5);
+
+        assertFalse(filter.isBlocked(USERNAME));
+    }
+
+    @Test
+    public void testReportFailureOnFixedWindow() throws InterruptedException {
+        filter = new InboundFilter(4, 8, 2, 200);
+        filter.reportFailure(USERNAME);
+        Thread.sleep(120);
+        filter.reportFailure(USERNAME);
+        assertTrue(filter.isBlocked(USERNAME));
+
+        Thread.sleep(120);
+
+        assertFalse(filter.isBlocked(USERNAME));
+    }
+
+    @Test
+    public void testReportFailureOnHandshake() {
+        filter.reportHandshake(USERNAME);
+
+        for (int i = 0; i < 10; i++) {
+            filter.reportFailure(USERNAME);
+        }
+
+        assertFalse(filter.isBlocked(USERNAME));
+        assertTrue(filter.accept(new byte[4], USERNAME));
+    }
+
+    @Test
+    public void testReportFailureOnDisabledLimit() {
+        filter = new InboundFilter(4, 8, 0, 60000);
+
+        for (int i = 0; i < 10; i++) {
+            filter.reportFailure(USERNAME);
+        }
+
+        assertFalse(filter.isBlocked(USERNAME));
+    }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import org.beamproject.common.util.Executor;
+import org.beamproject.common.util.Task;
+import org.beamproject.server.ExecutorFake;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LaneExecutorTest {
+
+    private final List<String> runTasks = Collections.synchronizedList(new ArrayList<String>());
+    private LaneExecutor lanes;
+
+    @Before
+    public void setUp() {
+        lanes = new LaneExecutor(new ExecutorFake(), 4);
+    }
+
+    private Task createTask(final String name) {
+        return new Task() {
+            @Override
+            public void run() {
+                runTasks.add(name);
+            }
+        };
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorOnZeroLanes() {
+        lanes = new LaneExecutor(new ExecutorFake(), 0);
+    }
+
+    @Test
+    public void testIndexOf() {
+        assertEquals(LaneExecutor.indexOf("spock", 8), LaneExecutor.indexOf("spock", 8));
+        assertEquals(0, LaneExecutor.indexOf(null, 8));
+        assertEquals(0, LaneExecutor.indexOf("spock", 1));
+
+        for (int i = 0; i < 1000; i++) {
+            int index = LaneExecutor.indexOf("user" + i, 8);
+            assertTrue(index >= 0 && index < 8);
+        }
+    }
+
+    @Test
+    public void testRunAsync() {
+        lanes.runAsync("spock", createTask("first"));
+        lanes.runAsync("kirk", createTask("second"));
+
+        assertEquals(2, runTasks.size());
+    }
+
+    @Test
+    public void testRunAsyncOnNestedTask() {
+        lanes.runAsync("spock", new Task() {
+            @Override
+            public void run() {
+                lanes.runAsync("spock", createTask("second"));
+                runTasks.add("first");
+            }
+        });
+
+        assertEquals(2, runTasks.size());
+        assertEquals("first", runTasks.get(0));
+        assertEquals("second", runTasks.get(1));
+    }
+
+    @Test
+    public void testRunAsyncOnFailingTask() {
+        try {
+            lanes.runAsync("spock", new Task() {
+                @Override
+                public void run() {
+                    throw new IllegalStateException("failed");
+                }
+            });
+        } catch (IllegalStateException ex) {
+        }
+
+        lanes.runAsync("spock", createTask("next"));
+
+        assertEquals(1, runTasks.size());
+    }
+
+    @Test
+    public void testRunAsyncOnOrder() throws InterruptedException {
+        final ExecutorService threads = Executors.newFixedThreadPool(4);
+        final CountDownLatch done = new CountDownLatch(1);
+        lanes = new LaneExecutor(new Executor() {
+            @Override
+            public void runAsync(Task task) {
+                threads.execute(task);
+            }
+        }, 4);
+
+        for (int i = 0; i < 500; i++) {
+            lanes.runAsync("spock", createTask(Integer.toString(i)));
+            lanes.runAsync("kirk", createTask("other"));
+        }
+
+        lanes.runAsync("spock", new Task() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+
+        assertTrue(done.await(5, SECONDS));
+        threads.shutdown();
+
+        List<String> spockTasks = new ArrayList<>();
+
+        for (String name : new ArrayList<>(runTasks)) {
+            if (!name.equals("other")) {
+                spockTasks.add(name);
+            }
+        }
+
+        assertEquals(500, spockTasks.size());
+
+        for (int i = 0; i < 500; i++) {
+            assertEquals(Integer.toString(i), spockTasks.get(i));
+        }
+    }
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.util;
+
+import org.beamproject.common.Participant;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParticipantCacheTest {
+
+    private ParticipantCache cache;
+    private byte[] publicKey;
+
+    @Before
+    public void setUp() {
+        cache = new ParticipantCache(1);
+        publicKey = Participant.generate().getPublicKeyAsBytes();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorOnNegativeSize() {
+        cache = new ParticipantCache(-1);
+    }
+
+    @Test
+    public void testGet() {
+        Participant participant = cache.get(publicKey);
+
+        assertArrayEquals(publicKey, participant.getPublicKeyAsBytes());
+        assertSame(participant, cache.get(publicKey.clone()));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testGetOnEviction() {
+        Participant participant = cache.get(publicKey);
+        cache.get(Participant.generate().getPublicKeyAsBytes());
+
+        assertNotSame(participant, cache.get(publicKey));
+    }
+
+    @Test
+    public void testGetOnInvalidKey() {
+        try {
+            cache.get("no key".getBytes());
+            fail("The key should not be decoded.");
+        } catch (IllegalArgumentException | IllegalStateException ex) {
+            assertEquals(0, cache.size());
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.util;
+
+import org.apache.commons.pool2.BasePooledObjectFactory;
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PoolStatisticsTest {
+
+    private GenericObjectPool<Object> pool;
+
+    @Before
+    public void setUp() {
+        pool = new GenericObjectPool<>(new BasePooledObjectFactory<Object>() {
+            @Override
+            public Object create() {
+                return new Object();
+            }
+
+            @Override
+            public PooledObject<Object> wrap(Object object) {
+                return new DefaultPooledObject<>(object);
+            }
+        });
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        Object borrowed = pool.borrowObject();
+        pool.addObject();
+
+        PoolStatistics statistics = new PoolStatistics(pool);
+
+        assertEquals(1, statistics.getActive());
+        assertEquals(1, statistics.getIdle());
+        assertEquals(2, statistics.getCreated());
+        assertEquals(1, statistics.getBorrowed());
+        pool.returnObject(borrowed);
+    }
+
+    @Test
+    public void testGetCreationRate() throws Exception {
+        PoolStatistics earlier = new PoolStatistics(pool);
+        pool.addObject();
+        pool.addObject();
+        Thread.sleep(10);
+
+        PoolStatistics later = new PoolStatistics(pool);
+
+        assertTrue(later.getCreationRate(earlier) > 0);
+        assertEquals(0, earlier.getCreationRate(earlier), 0);
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class RateLimiterTest {
+
+    private RateLimiter limiter;
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorOnNegativeRate() {
+        limiter = new RateLimiter(-1, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorOnZeroBurst() {
+        limiter = new RateLimiter(1, 0);
+    }
+
+    @Test
+    public void testTryAcquire() {
+        limiter = new RateLimiter(1, 3);
+
+        assertTrue(limiter.tryAcquire("spock"));
+        assertTrue(limiter.tryAcquire("spock"));
+        assertTrue(limiter.tryAcquire("spock"));
+        assertFalse(limiter.tryAcquire("spock"));
+        assertTrue(limiter.tryAcquire("kirk"));
+        assertEquals(1, limiter.getThrottledCount());
+    }
+
+    @Test
+    public void testTryAcquireOnBytes() {
+        limiter = new RateLimiter(1, 1);
+
+        assertTrue(limiter.tryAcquire(new byte[]{1, 2, 3}));
+        assertFalse(limiter.tryAcquire(new byte[]{1, 2, 3}));
+        assertTrue(limiter.tryAcquire(new byte[]{3, 2, 1}));
+    }
+
+    @Test
+    public void testTryAcquireOnRefill() throws InterruptedException {
+        limiter = new RateLimiter(60000, 1);
+
+        assertTrue(limiter.tryAcquire("spock"));
+        Thread.sleep(5);
+
+        assertTrue(limiter.tryAcquire("spock"));
+    }
+
+    @Test
+    public void testTryAcquireOnSharedStripe() {
+        limiter = new RateLimiter(1, 1, 1);
+
+        assertTrue(limiter.tryAcquire("spock"));
+        assertFalse(limiter.tryAcquire("kirk"));
+    }
+
+    @Test
+    public void testTryAcquireOnUnlimitedRate() {
+        limiter = new RateLimiter(0, 1);
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limiter.tryAcquire("spock"));
+        }
+
+        assertEquals(0, limiter.getThrottledCount());
+    }
+
+}
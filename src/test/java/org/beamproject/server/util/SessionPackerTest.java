@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.util;
+
+import java.nio.ByteBuffer;
+import org.beamproject.common.Participant;
+import org.beamproject.common.Session;
+import org.beamproject.common.carrier.MessageException;
+import static org.beamproject.common.crypto.BouncyCastleIntegrator.initBouncyCastleProvider;
+import static org.beamproject.common.message.Field.Cnt.MSG;
+import static org.beamproject.common.message.Field.Cnt.Typ.FORWARD;
+import org.beamproject.common.message.Message;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SessionPackerTest {
+
+    private final byte[] KEY = "my session key".getBytes();
+    private final String USERNAME = "spock";
+    private SessionStorage storage;
+    private SessionPacker packer;
+    private Participant server;
+    private Session session;
+    private Message message;
+
+    @Before
+    public void setUp() {
+        initBouncyCastleProvider();
+        storage = new SessionStorage();
+        packer = new SessionPacker(storage);
+        server = Participant.generate();
+        storage.setSession(Participant.generate(), KEY);
+        session = storage.getSessionByKey(KEY);
+        message = new Message(FORWARD, server);
+        message.putContent(MSG, "my message");
+    }
+
+    @Test
+    public void testToSessionId() {
+        assertEquals(SessionPacker.SESSION_ID_LENGTH, SessionPacker.toSessionId(KEY).length);
+        assertArrayEquals(SessionPacker.toSessionId(KEY), SessionPacker.toSessionId("my session key".getBytes()));
+    }
+
+    @Test
+    public void testFindSession() {
+        byte[] frame = packer.packAndEncrypt(message, session, USERNAME);
+
+        assertEquals(SessionPacker.MARKER, frame[0]);
+        assertSame(session, packer.findSession(frame));
+    }
+
+    @Test
+    public void testFindSessionOnOtherFrames() {
+        byte[] frame = packer.packAndEncrypt(message, session, USERNAME);
+        storage.removeSession(KEY);
+
+        assertNull(packer.findSession(frame));
+        assertNull(packer.findSession(null));
+        assertNull(packer.findSession(new byte[]{SessionPacker.MARKER, 1, 2}));
+    }
+
+    @Test
+    public void testPackAndEncrypt() {
+        byte[] first = packer.packAndEncrypt(message, session, USERNAME);
+        byte[] second = packer.packAndEncrypt(message, session, USERNAME);
+
+        assertEquals(SessionPacker.SENDER_SERVER, readSender(first));
+        assertEquals(0, readCounter(first));
+        assertEquals(1, readCounter(second));
+    }
+
+    @Test
+    public void testDecryptAndUnpack() {
+        byte[] frame = packAsClient();
+
+        Message unpacked = packer.decryptAndUnpack(frame, session, USERNAME, server);
+
+        assertArrayEquals("my message".getBytes(), unpacked.getContent(MSG));
+    }
+
+    @Test(expected = MessageException.class)
+    public void testDecryptAndUnpackOnTamperedFrame() {
+        byte[] frame = packAsClient();
+        frame[frame.length - 1] ^= 1;
+
+        packer.decryptAndUnpack(frame, session, USERNAME, server);
+    }
+
+    @Test(expected = MessageException.class)
+    public void testDecryptAndUnpackOnTamperedHeader() {
+        byte[] frame = packAsClient();
+        storage.setSession(Participant.generate(), "other key".getBytes());
+        System.arraycopy(SessionPacker.toSessionId("other key".getBytes()), 0, frame, 1, SessionPacker.SESSION_ID_LENGTH);
+
+        packer.decryptAndUnpack(frame, session, USERNAME, server);
+    }
+
+    @Test
+    public void testDecryptAndUnpackOnOtherUsername() {
+        byte[] frame = packAsClient();
+
+        try {
+            packer.decryptAndUnpack(frame, session, "kirk", server);
+            fail("The frame has been accepted for another username.");
+        } catch (MessageException ex) {
+            // expected
+        }
+
+        Message unpacked = packer.decryptAndUnpack(frame, session, USERNAME, server);
+
+        assertArrayEquals("my message".getBytes(), unpacked.getContent(MSG));
+    }
+
+    @Test(expected = MessageException.class)
+    public void testDecryptAndUnpackOnReplayedFrame() {
+        byte[] frame = packAsClient();
+        packer.decryptAndUnpack(frame, session, USERNAME, server);
+
+        packer.decryptAndUnpack(frame, session, USERNAME, server);
+    }
+
+    @Test(expected = MessageException.class)
+    public void testDecryptAndUnpackOnFrameOfServer() {
+        byte[] frame = packer.packAndEncrypt(message, session, USERNAME);
+
+        packer.decryptAndUnpack(frame, session, USERNAME, server);
+    }
+
+    @Test
+    public void testDecryptAndUnpackOnReorderedFrames() {
+        byte[] first = packAsClient();
+        byte[] second = packAsClient();
+        byte[] third = packAsClient();
+
+        packer.decryptAndUnpack(second, session, USERNAME, server);
+        packer.decryptAndUnpack(first, session, USERNAME, server);
+        packer.decryptAndUnpack(third, session, USERNAME, server);
+
+        try {
+            packer.decryptAndUnpack(first, session, USERNAME, server);
+            fail("The replayed frame has been accepted.");
+        } catch (MessageException ex) {
+            // expected
+        }
+    }
+
+    @Test(expected = MessageException.class)
+    public void testDecryptAndUnpackOnFrameOutsideOfWindow() {
+        byte[] old = packAsClient();
+
+        for (int i = 0; i < SessionPacker.REPLAY_WINDOW; i++) {
+            packer.decryptAndUnpack(packAsClient(), session, USERNAME, server);
+        }
+
+        packer.decryptAndUnpack(old, session, USERNAME, server);
+    }
+
+    private byte[] packAsClient() {
+        return packer.packAndEncrypt(message, session, USERNAME, SessionPacker.SENDER_CLIENT);
+    }
+
+    private int readSender(byte[] frame) {
+        return ByteBuffer.wrap(frame, SessionPacker.HEADER_LENGTH, SessionPacker.NONCE_LENGTH).getInt();
+    }
+
+    private long readCounter(byte[] frame) {
+        return ByteBuffer.wrap(frame, SessionPacker.HEADER_LENGTH + 4, 8).getLong();
+    }
+
+}
@@ -24,6 +24,7 @@ import org.beamproject.common.util.ComparableBytes;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import org.junit.Before;
 import org.junit.Test;
@@ -43,6 +44,7 @@ public class SessionStorageTest {
     @Test
     public void testIsSessionExisting() {
         assertFalse(storage.isSessionExisting(KEY));
+        assertTrue(storage.sessionsById.isEmpty());
         assertFalse(storage.isSessionExisting(null));
 
         storage.sessions.put(new ComparableBytes(KEY), SESSION);
@@ -66,6 +68,16 @@ public class SessionStorageTest {
         storage.getSessionByKey(KEY);
     }
 
+    @Test
+    public void testGetSessionById() {
+        assertNull(storage.getSessionById(SessionPacker.toSessionId(KEY)));
+        assertNull(storage.getSessionById(null));
+
+        storage.setSession(USER, KEY);
+
+        assertEquals(USER, storage.getSessionById(SessionPacker.toSessionId(KEY)).getRemoteParticipant());
+    }
+
     @Test
     public void testRemoveSession() {
         storage.setSession(USER, KEY);
@@ -74,6 +86,7 @@ public class SessionStorageTest {
         storage.removeSession(KEY);
 
         assertFalse(storage.isSessionExisting(KEY));
+        assertTrue(storage.sessionsById.isEmpty());
 
         for (byte b : session.getKey()) {
             assertEquals(0, b);
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2013, 2014 beamproject.org
+ *
+ * This file is part of beam-server.
+ *
+ * beam-server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * beam-server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.beamproject.server.util;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.beamproject.server.util.StageStatistics.Stage.DECRYPT;
+import static org.beamproject.server.util.StageStatistics.Stage.HANDLE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StageStatisticsTest {
+
+    private StageStatistics statistics;
+
+    @Before
+    public void setUp() {
+        statistics = new StageStatistics();
+    }
+
+    @Test
+    public void testGetAverageOnNoRecords() {
+        assertEquals(0, statistics.getCount(DECRYPT));
+        assertEquals(0, statistics.getAverage(DECRYPT, NANOSECONDS));
+        assertEquals(0, statistics.getMax(DECRYPT, NANOSECONDS));
+    }
+
+    @Test
+    public void testRecord() {
+        long now = System.nanoTime();
+
+        long end = statistics.record(DECRYPT, now - MILLISECONDS.toNanos(10));
+        statistics.record(DECRYPT, now - MILLISECONDS.toNanos(30));
+
+        assertTrue(end >= now);
+        assertEquals(2, statistics.getCount(DECRYPT));
+        assertEquals(0, statistics.getCount(HANDLE));
+        assertTrue(statistics.getAverage(DECRYPT, MILLISECONDS) >= 20);
+        assertTrue(statistics.getMax(DECRYPT, MILLISECONDS) >= 30);
+    }
+
+}
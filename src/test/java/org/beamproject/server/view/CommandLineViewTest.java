@@ -61,6 +61,35 @@ public class CommandLineViewTest {
         verify(model);
     }
 
+    @Test
+    public void testParseOnOptions_g_n() {
+        model.generateKeyPairs("file", 8);
+        expectLastCall();
+        replay(model);
+
+        view.parse(new String[]{"-g", "file", "-n", "8"});
+
+        verify(model);
+    }
+
+    @Test
+    public void testParseOnOption_nWithoutNumber() {
+        replay(model);
+
+        view.parse(new String[]{"-g", "file", "-n", "many"});
+
+        verify(model);
+    }
+
+    @Test
+    public void testParseOnOption_nWithout_g() {
+        replay(model);
+
+        view.parse(new String[]{"-n", "8"});
+
+        verify(model);
+    }
+
     @Test
     public void testParseOnBootstrapping() {
         model.bootstrap();